@@ -0,0 +1,112 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.io.BytesInputStream;
+import io.zfunny.j2dlt.dlt645.io.BytesOutputStream;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645DataDictionary;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645DataItem;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of single read frames, without any I/O
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private ReadRequest request;
+    private BytesOutputStream requestOut;
+    private byte[] responseFrame;
+    private BytesInputStream responseIn;
+    private Dlt645FrameDecoder decoder;
+    private Dlt645DataItem voltage;
+    private byte[] voltageData;
+
+    @Setup
+    public void setup() throws IOException {
+        request = new ReadRequest(SimulatedMeter.VOLTAGE_A);
+        request.setUnitID(SimulatedMeter.ADDRESS);
+        requestOut = new BytesOutputStream(Dlt645.MAX_MESSAGE_LENGTH);
+
+        byte[] out = new byte[Dlt645FrameDecoder.MAX_FRAME_LENGTH + Dlt645.wakeBytes.length];
+        Dlt645FrameDecoder requestDecoder = new Dlt645FrameDecoder();
+        byte[] frame = request.getFrame();
+        requestDecoder.decode(frame, 0, frame.length);
+        int length = SimulatedMeter.respond(requestDecoder.getFrame(), out);
+        responseFrame = new byte[length];
+        System.arraycopy(out, 0, responseFrame, 0, length);
+        responseIn = new BytesInputStream(responseFrame.length);
+        decoder = new Dlt645FrameDecoder();
+
+        voltage = Dlt645DataDictionary.getDefault().get(0x02010100);
+        voltageData = new byte[]{0x22, 0x22};
+    }
+
+    /**
+     * Serialises the request the way the transports did before frames were cached
+     */
+    @Benchmark
+    public int encodeRequest() throws IOException {
+        requestOut.reset();
+        request.writeTo(requestOut);
+        return requestOut.size();
+    }
+
+    /**
+     * Fetches the cached frame of an unchanged request
+     */
+    @Benchmark
+    public byte[] cachedRequestFrame() throws IOException {
+        return request.getFrame();
+    }
+
+    /**
+     * Finds the frame boundaries in the raw bytes and checks the checksum
+     */
+    @Benchmark
+    public int decodeFrame() {
+        decoder.reset();
+        decoder.decode(responseFrame, 0, responseFrame.length);
+        return decoder.getFrameLength();
+    }
+
+    /**
+     * Parses the response message from a frame found by the decoder
+     */
+    @Benchmark
+    public ReadResponse decodeResponse() throws IOException {
+        decoder.reset();
+        decoder.decode(responseFrame, 0, responseFrame.length);
+        responseIn.reset(decoder.getFrame(), decoder.getFrameLength());
+        ReadResponse response = new ReadResponse();
+        response.readFrom(responseIn);
+        return response;
+    }
+
+    /**
+     * Turns the BCD value into a number
+     */
+    @Benchmark
+    public long decodeValue() {
+        return voltage.decode(voltageData, 0);
+    }
+}
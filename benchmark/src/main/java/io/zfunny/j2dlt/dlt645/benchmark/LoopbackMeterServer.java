@@ -0,0 +1,89 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serial-to-Ethernet gateway stand-in on the loopback interface with a
+ * {@link SimulatedMeter} behind it
+ */
+class LoopbackMeterServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    LoopbackMeterServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this, "Loopback meter server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "Loopback meter connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void serve(Socket socket) {
+        Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+        byte[] in = new byte[1024];
+        byte[] out = new byte[Dlt645FrameDecoder.MAX_FRAME_LENGTH + 4];
+        try {
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+            int count;
+            while ((count = input.read(in)) > 0) {
+                int pos = 0;
+                while (pos < count) {
+                    pos += decoder.decode(in, pos, count - pos);
+                    if (decoder.hasFrame()) {
+                        output.write(out, 0, SimulatedMeter.respond(decoder.getFrame(), out));
+                    }
+                }
+                output.flush();
+            }
+        }
+        catch (IOException e) {
+            // Connection closed by the benchmark
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
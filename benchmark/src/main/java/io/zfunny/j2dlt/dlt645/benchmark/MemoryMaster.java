@@ -0,0 +1,40 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.facade.AbstractDlt645Master;
+import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
+
+/**
+ * Master driving a {@link MemoryMeterConnection} through the normal bus worker
+ */
+class MemoryMaster extends AbstractDlt645Master {
+
+    private final MemoryMeterConnection connection = new MemoryMeterConnection();
+
+    @Override
+    public synchronized void connect() throws Exception {
+        if (!connection.isOpen()) {
+            connection.open();
+            setTransaction(connection.getDlt645Transport().createTransaction());
+            startBusWorker("Dlt645 Memory Master");
+        }
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        if (connection.isOpen()) {
+            stopBusWorker();
+            connection.close();
+            setTransaction(null);
+        }
+    }
+
+    @Override
+    public AbstractDlt645Transport getTransport() {
+        return connection.getDlt645Transport();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connection.isOpen();
+    }
+}
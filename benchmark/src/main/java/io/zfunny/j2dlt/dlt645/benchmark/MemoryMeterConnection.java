@@ -0,0 +1,127 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+import io.zfunny.j2dlt.dlt645.io.Dlt645RTUTransport;
+import io.zfunny.j2dlt.dlt645.net.AbstractSerialConnection;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Serial connection stand-in with a {@link SimulatedMeter} on the other end.
+ * The response to a request is available as soon as the request is written,
+ * so only the cost of the master stack is measured.
+ */
+class MemoryMeterConnection extends AbstractSerialConnection {
+
+    private final Dlt645RTUTransport transport = new Dlt645RTUTransport();
+    private final Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+    private final byte[] response = new byte[Dlt645FrameDecoder.MAX_FRAME_LENGTH + 4];
+    private int responsePos;
+    private int responseLen;
+    private boolean open;
+    private int timeout;
+    private int baudRate = 115200;
+
+    @Override
+    public void open() throws IOException {
+        transport.setCommPort(this);
+        open = true;
+    }
+
+    @Override
+    public AbstractDlt645Transport getDlt645Transport() {
+        return transport;
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, long bytesToRead) {
+        int count = (int)Math.min(bytesToRead, responseLen - responsePos);
+        System.arraycopy(response, responsePos, buffer, 0, count);
+        responsePos += count;
+        return count;
+    }
+
+    @Override
+    public int writeBytes(byte[] buffer, long bytesToWrite) {
+        decoder.decode(buffer, 0, (int)bytesToWrite);
+        if (decoder.hasFrame()) {
+            responseLen = SimulatedMeter.respond(decoder.getFrame(), response);
+            responsePos = 0;
+        }
+        return (int)bytesToWrite;
+    }
+
+    @Override
+    public int bytesAvailable() {
+        return responseLen - responsePos;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+        // No line to switch, the rate is only reported back
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public int getNumDataBits() {
+        return 8;
+    }
+
+    @Override
+    public int getNumStopBits() {
+        return 1;
+    }
+
+    @Override
+    public int getParity() {
+        return EVEN_PARITY;
+    }
+
+    @Override
+    public String getPortName() {
+        return "memory";
+    }
+
+    @Override
+    public String getDescriptivePortName() {
+        return "In-memory meter";
+    }
+
+    @Override
+    public void setComPortTimeouts(int newTimeoutMode, int newReadTimeout, int newWriteTimeout) {
+        timeout = newReadTimeout;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Set<String> getCommPorts() {
+        return Collections.singleton(getPortName());
+    }
+}
@@ -0,0 +1,80 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.facade.PollPriority;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls per second through a master and its bus worker, from queueing the
+ * request to completing its future
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollingBenchmark {
+
+    private static final int BATCH = 100;
+
+    private MemoryMaster master;
+    private ReadRequest request;
+
+    @SuppressWarnings("unchecked")
+    private final CompletableFuture<ReadResponse>[] futures = new CompletableFuture[BATCH];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        master = new MemoryMaster();
+        master.connect();
+        request = new ReadRequest(SimulatedMeter.VOLTAGE_A);
+        request.setUnitID(SimulatedMeter.ADDRESS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        master.disconnect();
+    }
+
+    /**
+     * Waits for each poll before queueing the next, like a synchronous caller
+     */
+    @Benchmark
+    public ReadResponse sequential() throws Exception {
+        return master.readDataAsync(request, PollPriority.NORMAL, 0).get();
+    }
+
+    /**
+     * Queues a batch of polls and then waits for all of them, like a
+     * poll scheduler
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public ReadResponse batched() throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            futures[i] = master.readDataAsync(request, PollPriority.NORMAL, 0);
+        }
+        ReadResponse last = null;
+        for (int i = 0; i < BATCH; i++) {
+            last = futures[i].get();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,50 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+
+/**
+ * Meter stand-in that answers every read with a fixed two byte value
+ * (222.2 for a voltage). Responses are built without allocating so the
+ * stand-in does not distort the measurements of the master side.
+ */
+class SimulatedMeter {
+
+    static final byte[] ADDRESS = {0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+    static final byte[] VOLTAGE_A = {0x00, 0x01, 0x01, 0x02};
+
+    private static final byte[] VALUE = {0x22, 0x22};
+
+    /**
+     * Builds the response to a request frame
+     *
+     * @param request Request frame as returned by the frame decoder
+     * @param out     Buffer to write the response to
+     * @return Length of the response
+     */
+    static int respond(byte[] request, byte[] out) {
+        int pos = 0;
+        for (byte b : Dlt645.wakeBytes) {
+            out[pos++] = b;
+        }
+        int start = pos;
+        System.arraycopy(request, 0, out, pos, 8);
+        pos += 8;
+        out[pos++] = (byte)(request[Dlt645FrameDecoder.CONTROL_OFFSET] | Dlt645.RESPONSE_FLAG);
+        out[pos++] = (byte)(4 + VALUE.length);
+
+        // The data identity is sent back as received, still scrambled
+        System.arraycopy(request, Dlt645FrameDecoder.DATA_OFFSET, out, pos, 4);
+        pos += 4;
+        for (byte b : VALUE) {
+            out[pos++] = (byte)(b + 0x33);
+        }
+        int cs = 0;
+        for (int i = start; i < pos; i++) {
+            cs += out[i];
+        }
+        out[pos++] = (byte)cs;
+        out[pos++] = Dlt645.endByte;
+        return pos;
+    }
+}
@@ -0,0 +1,78 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.facade.Dlt645NIOTCPMaster;
+import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.net.NIOTCPMasterConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of a read through the transports. The serial transport runs
+ * over an in-memory port, the TCP master against a meter stand-in on the
+ * loopback interface, so the figures are the cost of the stack rather than
+ * of any line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+    private MemoryMeterConnection serialConnection;
+    private AbstractDlt645Transport serialTransport;
+    private LoopbackMeterServer server;
+    private Dlt645NIOTCPMaster tcpMaster;
+    private NIOTCPMasterConnection gateway;
+    private ReadRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        request = new ReadRequest(SimulatedMeter.VOLTAGE_A);
+        request.setUnitID(SimulatedMeter.ADDRESS);
+
+        serialConnection = new MemoryMeterConnection();
+        serialConnection.open();
+        serialTransport = serialConnection.getDlt645Transport();
+
+        server = new LoopbackMeterServer();
+        tcpMaster = new Dlt645NIOTCPMaster();
+        tcpMaster.connect();
+        gateway = tcpMaster.addGateway(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tcpMaster.disconnect();
+        server.close();
+        serialConnection.close();
+    }
+
+    @Benchmark
+    public Dlt645Response serialRoundTrip() throws Exception {
+        serialTransport.writeRequest(request);
+        return serialTransport.readResponse();
+    }
+
+    @Benchmark
+    public ReadResponse tcpRoundTrip() throws Exception {
+        return tcpMaster.readDataAsync(gateway, SimulatedMeter.ADDRESS, SimulatedMeter.VOLTAGE_A).get();
+    }
+}
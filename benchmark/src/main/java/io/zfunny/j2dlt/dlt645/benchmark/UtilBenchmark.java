@@ -0,0 +1,86 @@
+package io.zfunny.j2dlt.dlt645.benchmark;
+
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers run for every frame: checksum, 0x33 offset, hex dumps for logging
+ * and address and data identity conversions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    /**
+     * Frame length, from a short read to the largest frame
+     */
+    @Param({"16", "64", "267"})
+    public int length;
+
+    private byte[] frame;
+    private byte[] data;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        frame = new byte[length];
+        new Random(645).nextBytes(frame);
+        data = new byte[length];
+        buffer = ByteBuffer.wrap(frame.clone());
+    }
+
+    @Benchmark
+    public int checksum() {
+        return Dlt645Util.calculateCS(frame, 0, frame.length - 1);
+    }
+
+    @Benchmark
+    public int checksumBuffer() {
+        return Dlt645Util.calculateCS(buffer, 0, length - 1);
+    }
+
+    @Benchmark
+    public ByteBuffer addOffset() {
+        Dlt645Util.addOffset(frame, 0, buffer, 0, length);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] removeOffset() {
+        Dlt645Util.removeOffset(frame, 0, data, 0, length);
+        return data;
+    }
+
+    @Benchmark
+    public String hex() {
+        return Dlt645Util.toHex(frame);
+    }
+
+    @Benchmark
+    public long address() throws Exception {
+        return Dlt645Util.bytes2long(SimulatedMeter.ADDRESS);
+    }
+
+    @Benchmark
+    public int dataIdentity() {
+        return Dlt645Util.dataIdentityToInt(SimulatedMeter.VOLTAGE_A);
+    }
+}
@@ -3,14 +3,60 @@ package io.zfunny.j2dlt.dlt645;
 public interface Dlt645 {
 
 
+    int BROADCAST_TIME = 8;
+
     int READ_DATA = 17;
 
     int READ_SUB_DATA = 18;
 
+    int READ_ADDRESS = 19;
+
     int WRITE_DATA = 20;
 
+    int CHANGE_BAUD_RATE = 23;
+
     int CONTROL = 28;
 
+    /**
+     * Control code bit set on every frame sent by a slave (D7).
+     */
+    int RESPONSE_FLAG = 0x80;
+
+    /**
+     * Control code bit set by a slave that cannot execute the request (D6).
+     */
+    int ABNORMAL_RESPONSE_FLAG = 0x40;
+
+    /**
+     * Control code bit set by a slave that has follow-up frames to send (D5).
+     */
+    int FOLLOW_UP_FLAG = 0x20;
+
+    /**
+     * Mask of the function code part of a control code (D4-D0).
+     */
+    int FUNCTION_CODE_MASK = 0x1F;
+
+    /**
+     * Error byte bit of an abnormal response: other error.
+     */
+    int ERROR_OTHER = 0x01;
+
+    /**
+     * Error byte bit of an abnormal response: no requested data.
+     */
+    int ERROR_NO_DATA = 0x02;
+
+    /**
+     * Error byte bit of an abnormal response: wrong password or unauthorised.
+     */
+    int ERROR_UNAUTHORIZED = 0x04;
+
+    /**
+     * Error byte bit of an abnormal response: communication rate cannot be changed.
+     */
+    int ERROR_BAUD_RATE = 0x08;
+
     byte[] A_VALTAGE_DATA_IDENTITY = {(byte)0x00,(byte)0x01,(byte)0x01,(byte)0x02};
 
 
@@ -19,6 +65,21 @@ public interface Dlt645 {
     byte startByte = 0x68;
     byte endByte = 0x16;
 
+    /**
+     * Address accepted by every meter on a bus, frames sent to it are never answered.
+     */
+    byte[] BROADCAST_ADDRESS = {(byte)0x99, (byte)0x99, (byte)0x99, (byte)0x99, (byte)0x99, (byte)0x99};
+
+    /**
+     * Address byte that matches any byte of a meter address.
+     */
+    byte WILDCARD = (byte)0xAA;
+
+    /**
+     * Address matched by every meter, used to read the address of a meter that is not known yet.
+     */
+    byte[] WILDCARD_ADDRESS = {WILDCARD, WILDCARD, WILDCARD, WILDCARD, WILDCARD, WILDCARD};
+
     byte[][] dataIdentity = {
             new byte[]{(byte)0x00, (byte)0xff, (byte)0x01, (byte)0x02},
             new byte[]{(byte)0x00,(byte)0x00,(byte)0x00,(byte)0x00},
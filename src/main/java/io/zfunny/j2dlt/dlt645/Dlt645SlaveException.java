@@ -4,6 +4,16 @@ public class Dlt645SlaveException extends Dlt645Exception {
 
     private static final long serialVersionUID = 1L;
 
+    private static final String[] ERROR_MESSAGES = {
+            "Other Error",
+            "No Requested Data",
+            "Wrong Password or Unauthorised",
+            "Communication Rate Cannot Be Changed",
+            "Annual Time Zones Exceeded",
+            "Daily Time Periods Exceeded",
+            "Tariffs Exceeded"
+    };
+
     private final int type;
 
     public Dlt645SlaveException(int type) {
@@ -11,29 +21,21 @@ public class Dlt645SlaveException extends Dlt645Exception {
         this.type = type;
     }
 
+    /**
+     * Describes the error byte of an abnormal response, in which each bit
+     * stands for one error
+     *
+     * @param type Error byte
+     * @return Description of the errors flagged
+     */
     public static String getMessage(int type) {
-        switch (type) {
-            case 1:
-                return "Illegal Function";
-            case 2:
-                return "Illegal Data Address";
-            case 3:
-                return "Illegal Data Value";
-            case 4:
-                return "Slave Device Failure";
-            case 5:
-                return "Acknowledge";
-            case 6:
-                return "Slave Device Busy";
-            case 8:
-                return "Memory Parity Error";
-            case 10:
-                return "Gateway Path Unavailable";
-            case 11:
-                return "Gateway Target Device Failed to Respond";
-            default:
-                return "Error Code = " + type;
+        StringBuilder message = new StringBuilder();
+        for (int bit = 0; bit < ERROR_MESSAGES.length; bit++) {
+            if ((type & 1 << bit) != 0) {
+                message.append(message.length() == 0 ? "" : ", ").append(ERROR_MESSAGES[bit]);
+            }
         }
+        return message.length() == 0 ? "Error Code = " + type : message.toString();
     }
 
     public int getType() {
@@ -4,7 +4,21 @@ import io.zfunny.j2dlt.dlt645.Dlt645;
 import io.zfunny.j2dlt.dlt645.Dlt645Exception;
 import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
 import io.zfunny.j2dlt.dlt645.io.Dlt645Transaction;
+import io.zfunny.j2dlt.dlt645.msg.BroadcastTimeRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressResponse;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645DataBlock;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645DataDictionary;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.net.AbstractSerialConnection;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import io.zfunny.j2dlt.dlt645.util.LongObjectMap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Modbus/TCP Master facade - common methods for all the facade implementations
@@ -21,6 +35,11 @@ public abstract class AbstractDlt645Master {
 
     protected Dlt645Transaction transaction;
     protected int timeout = Dlt645.DEFAULT_TIMEOUT;
+    private Dlt645BusWorker busWorker;
+    private Dlt645MeterPolicy meterPolicy = new Dlt645MeterPolicy();
+
+    // Outlives the bus worker, so meters moved to another rate are found after a reconnect
+    private final LongObjectMap<MeterHealth> meterHealth = new LongObjectMap<MeterHealth>();
 
     /**
      * Sets the transaction to use
@@ -44,21 +63,408 @@ public abstract class AbstractDlt645Master {
     public abstract void disconnect();
 
     /**
-     * Reads the response from the transaction
+     * Reads a data item from a meter, blocking until the response arrives.
+     * The request is queued behind any asynchronous reads already waiting
+     * for the bus.
+     *
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Response from the meter
+     *
+     * @throws Dlt645Exception If the read fails or there is no transaction
+     */
+    public ReadResponse readData(byte[] unitId, byte[] dataIdentity) throws Dlt645Exception {
+        return getAndCheckResponse(readDataAsync(unitId, dataIdentity));
+    }
+
+    /**
+     * Reads a data item from a meter, blocking until the response arrives.
+     *
+     * @param unitId       Meter address as a 12 digit string
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Response from the meter
+     *
+     * @throws Dlt645Exception If the read fails or there is no transaction
+     */
+    public ReadResponse readData(String unitId, byte[] dataIdentity) throws Dlt645Exception {
+        return readData(Dlt645Util.unitIdString2Bytes(unitId), dataIdentity);
+    }
+
+    /**
+     * Queues a read of a data item on the bus of this master and returns
+     * immediately. The future is completed from the I/O thread of the bus,
+     * so no caller thread is held while the request is on the wire.
+     *
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Future of the response
+     */
+    public CompletableFuture<ReadResponse> readDataAsync(byte[] unitId, byte[] dataIdentity) {
+        return readDataAsync(unitId, dataIdentity, PollPriority.NORMAL, 0);
+    }
+
+    /**
+     * Queues a read of a data item on the bus of this master with a priority
+     * and a deadline. Requests of a higher priority are always sent first,
+     * within a priority the earliest deadline goes first. If the deadline has
+     * passed by the time the bus is free the request is failed without being sent.
+     *
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @param priority     Priority class of the read
+     * @param deadline     <tt>System.nanoTime()</tt> after which the read is no
+     *                     longer worth sending, or 0 for no deadline
+     * @return Future of the response
+     */
+    public CompletableFuture<ReadResponse> readDataAsync(byte[] unitId, byte[] dataIdentity, PollPriority priority, long deadline) {
+        ReadRequest request = new ReadRequest(dataIdentity);
+        request.setUnitID(unitId);
+        return submit(request, ReadResponse.class, priority, deadline);
+    }
+
+    /**
+     * Reads a block of data items from a meter with a single request,
+     * blocking until all frames of the response have arrived.
+     *
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Block data identity with <tt>FF</tt> in the
+     *                     enumerated byte (4 bytes, as sent on the wire)
+     * @return Response holding the values of all items of the block
+     *
+     * @throws Dlt645Exception If the read fails or there is no transaction
+     * @see #readBlockAsync(byte[], byte[], PollPriority, long)
+     */
+    public ReadResponse readBlock(byte[] unitId, byte[] dataIdentity) throws Dlt645Exception {
+        return getAndCheckResponse(readBlockAsync(unitId, dataIdentity, PollPriority.NORMAL, 0));
+    }
+
+    /**
+     * Queues a block read on the bus of this master. If the meter splits the
+     * response over several frames, the follow-up frames are fetched with
+     * control code 0x12 before the bus is released, and the future completes
+     * with a single response holding the data of all frames. Use
+     * {@link ReadResponse#getMantissas(Dlt645DataBlock, long[])} with the block from
+     * {@link Dlt645DataDictionary#getBlock(int)} to split it per data item.
+     *
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Block data identity (4 bytes, as sent on the wire)
+     * @param priority     Priority class of the read
+     * @param deadline     <tt>System.nanoTime()</tt> after which the read is no
+     *                     longer worth sending, or 0 for no deadline
+     * @return Future of the joined response
+     */
+    public CompletableFuture<ReadResponse> readBlockAsync(byte[] unitId, byte[] dataIdentity, PollPriority priority, long deadline) {
+
+        // Follow-up frames are handled by the bus worker for every read, a
+        // block read only differs in the data identity it asks for
+        return readDataAsync(unitId, dataIdentity, priority, deadline);
+    }
+
+    /**
+     * Queues a prepared read request on the bus of this master. A request
+     * keeps its encoded frame, so callers that read the same data item over
+     * and over can hold on to the request and avoid encoding it every time.
+     * The request must not be changed while it is queued.
+     *
+     * @param request  Read request with the meter address set
+     * @param priority Priority class of the read
+     * @param deadline <tt>System.nanoTime()</tt> after which the read is no
+     *                 longer worth sending, or 0 for no deadline
+     * @return Future of the response
+     */
+    public CompletableFuture<ReadResponse> readDataAsync(ReadRequest request, PollPriority priority, long deadline) {
+        return submit(request, ReadResponse.class, priority, deadline);
+    }
+
+    /**
+     * Queues a prepared read request whose response is handed to a handler
+     * frame by frame instead of being decoded. The handler gets a view into
+     * the receive buffer on the I/O thread of the bus, so values can be
+     * taken from the frames without creating a response per read. Buses
+     * whose transport cannot hand out frames decode the response and encode
+     * it again for the view.
+     *
+     * @param request  Read request with the meter address set
+     * @param handler  Handler of the response frames
+     * @param priority Priority class of the read
+     * @param deadline <tt>System.nanoTime()</tt> after which the read is no
+     *                 longer worth sending, or 0 for no deadline
+     * @return Future completed once every frame has been handled
+     */
+    public synchronized CompletableFuture<Void> readFramesAsync(ReadRequest request, Dlt645FrameHandler handler, PollPriority priority, long deadline) {
+        if (busWorker == null) {
+            CompletableFuture<Void> future = new CompletableFuture<Void>();
+            future.completeExceptionally(new Dlt645Exception("No transaction created, probably not connected"));
+            return future;
+        }
+        return busWorker.submitFrames(request, handler, priority, deadline);
+    }
+
+    /**
+     * Queues a read of a data item on the bus of this master and returns
+     * immediately.
+     *
+     * @param unitId       Meter address as a 12 digit string
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Future of the response
+     */
+    public CompletableFuture<ReadResponse> readDataAsync(String unitId, byte[] dataIdentity) {
+        return readDataAsync(Dlt645Util.unitIdString2Bytes(unitId), dataIdentity);
+    }
+
+    /**
+     * Reads the address of the only meter on a line, e.g. a meter connected
+     * on its own for commissioning. Use a {@link Dlt645MeterDiscovery} on a
+     * bus with several meters.
+     *
+     * @return Address of the meter (6 bytes, as sent on the wire)
+     *
+     * @throws Dlt645Exception If the read fails or there is no transaction
+     */
+    public byte[] readAddress() throws Dlt645Exception {
+        return getAndCheckResponse(submit(new ReadAddressRequest(), ReadAddressResponse.class, PollPriority.NORMAL, 0)).getAddress();
+    }
+
+    /**
+     * Sets the clock of every meter on the bus of this master with a single
+     * broadcast frame, blocking until the frame has been sent. The time sent
+     * is the time at which the frame goes on the wire, not the time of the call.
+     *
+     * @throws Dlt645Exception If the frame cannot be sent or there is no transaction
+     */
+    public void broadcastTime() throws Dlt645Exception {
+        waitFor(broadcastTimeAsync(PollPriority.NORMAL, 0));
+    }
+
+    /**
+     * Queues a broadcast time synchronisation on the bus of this master. The
+     * frame waits for its turn like a read, so it never collides with the
+     * polling of the bus, and carries the time at which it is sent.
+     *
+     * @param priority Priority class of the broadcast
+     * @param deadline <tt>System.nanoTime()</tt> after which the broadcast is
+     *                 no longer worth sending, or 0 for no deadline
+     * @return Future completed once the frame has been sent
+     */
+    public CompletableFuture<Void> broadcastTimeAsync(PollPriority priority, long deadline) {
+        return broadcastAsync(new BroadcastTimeRequest(), priority, deadline);
+    }
+
+    /**
+     * Queues a request to the broadcast address on the bus of this master.
+     * No meter answers it, the future completes once the frame has been sent.
+     *
+     * @param request  Request addressed to {@link Dlt645#BROADCAST_ADDRESS}
+     * @param priority Priority class of the broadcast
+     * @param deadline <tt>System.nanoTime()</tt> after which the broadcast is
+     *                 no longer worth sending, or 0 for no deadline
+     * @return Future completed once the frame has been sent
+     */
+    public synchronized CompletableFuture<Void> broadcastAsync(Dlt645Request request, PollPriority priority, long deadline) {
+        if (busWorker == null) {
+            CompletableFuture<Void> future = new CompletableFuture<Void>();
+            future.completeExceptionally(new Dlt645Exception("No transaction created, probably not connected"));
+            return future;
+        }
+        return busWorker.submitBroadcast(request, priority, deadline);
+    }
+
+    /**
+     * Queues a request on the bus worker of this master
+     *
+     * @param request      Request to send
+     * @param responseType Type of response expected
+     * @param priority     Priority class of the request
+     * @param deadline     <tt>System.nanoTime()</tt> after which the request is
+     *                     no longer worth sending, or 0 for no deadline
+     * @param <T>          Type of response expected
+     * @return Future of the response
+     */
+    protected synchronized <T extends Dlt645Response> CompletableFuture<T> submit(Dlt645Request request, Class<T> responseType, PollPriority priority, long deadline) {
+        if (busWorker == null) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            future.completeExceptionally(new Dlt645Exception("No transaction created, probably not connected"));
+            return future;
+        }
+        return busWorker.submit(request, responseType, priority, deadline);
+    }
+
+    /**
+     * Queues a read created by {@link Dlt645BusWorker#createRepeatedRead}
+     * once more on the bus worker of this master
+     *
+     * @param pending  Read to queue
+     * @param deadline <tt>System.nanoTime()</tt> after which the read is no
+     *                 longer worth sending, or 0 for no deadline
+     */
+    synchronized void resubmit(Dlt645BusWorker.PendingRequest<?> pending, long deadline) {
+        if (busWorker == null) {
+            pending.fail(new Dlt645Exception("No transaction created, probably not connected"));
+            return;
+        }
+        busWorker.resubmit(pending, deadline);
+    }
+
+    /**
+     * Queues a task that needs the bus to itself on the bus worker of this master
+     *
+     * @param task     Task to run on the I/O thread
+     * @param priority Priority class of the task
+     * @param deadline <tt>System.nanoTime()</tt> after which the task is no
+     *                 longer worth running, or 0 for no deadline
+     * @param <T>      Type of result
+     * @return Future of the result
+     */
+    synchronized <T> CompletableFuture<T> submitTask(Dlt645BusWorker.Task<T> task, PollPriority priority, long deadline) {
+        if (busWorker == null) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            future.completeExceptionally(new Dlt645Exception("No transaction created, probably not connected"));
+            return future;
+        }
+        return busWorker.submitTask(task, priority, deadline);
+    }
+
+    /**
+     * Queues a change of the baud rate of a meter on the bus worker of this master
+     *
+     * @param unitId   Meter address (6 bytes, as sent on the wire)
+     * @param baudRate New rate
+     * @param priority Priority class of the change
+     * @param deadline <tt>System.nanoTime()</tt> after which the change is no
+     *                 longer worth making, or 0 for no deadline
+     * @return Future completed with true once the meter runs at the rate, or
+     * false if it refused the rate
+     */
+    synchronized CompletableFuture<Boolean> submitBaudRateChange(byte[] unitId, int baudRate, PollPriority priority, long deadline) {
+        if (busWorker == null) {
+            CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+            future.completeExceptionally(new Dlt645Exception("No transaction created, probably not connected"));
+            return future;
+        }
+        return busWorker.submitBaudRateChange(unitId, baudRate, priority, deadline);
+    }
+
+    /**
+     * Starts the I/O thread that executes queued requests using the current transaction
+     *
+     * @param name Name to give the I/O thread
+     */
+    protected synchronized void startBusWorker(String name) {
+        startBusWorker(name, null);
+    }
+
+    /**
+     * Starts the I/O thread of a serial bus whose meters can be moved to
+     * another baud rate
+     *
+     * @param name Name to give the I/O thread
+     * @param line Open serial connection of the bus, or null if the rate
+     *             cannot be changed
+     */
+    protected synchronized void startBusWorker(String name, AbstractSerialConnection line) {
+        stopBusWorker();
+        if (transaction != null) {
+            busWorker = new Dlt645BusWorker(transaction, meterPolicy, line, meterHealth);
+            busWorker.start(name);
+        }
+    }
+
+    /**
+     * Stops the I/O thread, failing any requests still queued
+     */
+    protected synchronized void stopBusWorker() {
+        if (busWorker != null) {
+            busWorker.stop();
+            busWorker = null;
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for the bus
+     *
+     * @return Number of queued requests
+     */
+    public synchronized int getPendingRequests() {
+        return busWorker == null ? 0 : busWorker.getQueueSize();
+    }
+
+    /**
+     * Returns the timeout and retry policy applied per meter
+     *
+     * @return Policy
+     */
+    public synchronized Dlt645MeterPolicy getMeterPolicy() {
+        return meterPolicy;
+    }
+
+    /**
+     * Sets the timeout and retry policy applied per meter
+     *
+     * @param meterPolicy Policy to use from the next request on
+     */
+    public synchronized void setMeterPolicy(Dlt645MeterPolicy meterPolicy) {
+        this.meterPolicy = meterPolicy;
+        if (busWorker != null) {
+            busWorker.setPolicy(meterPolicy);
+        }
+    }
+
+    /**
+     * Returns the latency and failure history of a meter on the bus. The
+     * history, including the rate the meter was moved to, is kept when the
+     * master disconnects and connects again.
+     *
+     * @param unitId Meter address (6 bytes, as sent on the wire)
+     * @return History or null if the meter has not been polled yet
+     */
+    public MeterHealth getMeterHealth(byte[] unitId) {
+        return meterHealth.get(Dlt645BusWorker.toAddress(unitId));
+    }
+
+    /**
+     * Waits for the response of a queued request
      * If there is no response, then it throws an error
      *
-     * @return Modbus response
+     * @param future Future of the response
+     * @param <T>    Type of response
+     * @return Dlt645 response
      *
-     * @throws ModbusException If response is null
+     * @throws Dlt645Exception If response is null or the request failed
      */
-    private Dlt645Response getAndCheckResponse() throws Dlt645Exception {
-        Dlt645Response res = transaction.getResponse();
+    private <T extends Dlt645Response> T getAndCheckResponse(CompletableFuture<T> future) throws Dlt645Exception {
+        T res = waitFor(future);
         if (res == null) {
             throw new Dlt645Exception("No response");
         }
         return res;
     }
 
+    /**
+     * Waits for a queued request to be executed
+     *
+     * @param future Future of the request
+     * @param <T>    Type of result
+     * @return Result of the request
+     *
+     * @throws Dlt645Exception If the request failed
+     */
+    private static <T> T waitFor(CompletableFuture<T> future) throws Dlt645Exception {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new Dlt645Exception("Interrupted waiting for response", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Dlt645Exception) {
+                throw (Dlt645Exception)e.getCause();
+            }
+            throw new Dlt645Exception(String.valueOf(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
     /**
      * Checks to make sure there is a transaction to use
      *
@@ -80,12 +486,13 @@ public abstract class AbstractDlt645Master {
     }
 
     /**
-     * Sets the receive timeout
+     * Sets the receive timeout, the upper bound of the adaptive per meter timeouts
      *
      * @param timeout Timeout in milliseconds
      */
     public void setTimeout(int timeout) {
         this.timeout = timeout;
+        getMeterPolicy().setMaxTimeout(timeout);
     }
 
     /**
@@ -95,9 +502,7 @@ public abstract class AbstractDlt645Master {
      * @param retries the amount of retries as <tt>int</tt>.
      */
     public synchronized void setRetries(int retries) {
-        if (transaction != null) {
-            transaction.setRetries(retries);
-        }
+        meterPolicy.setRetries(retries);
     }
 
     /**
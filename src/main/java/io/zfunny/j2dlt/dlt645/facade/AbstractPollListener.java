@@ -0,0 +1,58 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+
+/**
+ * Receives the outcome of the reads issued for a {@link PollPlan}.
+ * <p>
+ * Methods are called from the I/O thread of the bus and must not block.
+ * <p>
+ * A listener that returns true from {@link #isReadingFrames()} gets the
+ * frames of each read through {@link #onFrame} instead of a decoded
+ * response through {@link #onResponse}, which keeps polling free of
+ * per-read garbage.
+ */
+public abstract class AbstractPollListener {
+
+    public void onResponse(PollPlan plan, byte[] dataIdentity, ReadResponse response) {
+    }
+
+    /**
+     * Called for each frame of a successful read if the listener reads frames
+     *
+     * @param plan         Plan the read belongs to
+     * @param dataIdentity Data identity read
+     * @param frame        View of the frame, only valid during the call
+     */
+    public void onFrame(PollPlan plan, byte[] dataIdentity, Dlt645FrameView frame) {
+    }
+
+    public void onFailure(PollPlan plan, byte[] dataIdentity, Throwable cause) {
+    }
+
+    public void onMissed(PollPlan plan, byte[] dataIdentity) {
+    }
+
+    /**
+     * Returns true to get reads as frames through {@link #onFrame} rather
+     * than as responses through {@link #onResponse}
+     *
+     * @return True to read frames, false by default
+     */
+    public boolean isReadingFrames() {
+        return false;
+    }
+
+    /**
+     * Returns true if the listener does not keep the responses handed to
+     * {@link #onResponse} beyond the call. Each read of a data identity is
+     * then decoded into the same response, so polling does not create a
+     * response per read.
+     *
+     * @return True to reuse responses, false by default
+     */
+    public boolean isReusingResponses() {
+        return false;
+    }
+}
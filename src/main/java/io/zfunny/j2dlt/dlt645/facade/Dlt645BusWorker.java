@@ -0,0 +1,980 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
+import io.zfunny.j2dlt.dlt645.Dlt645IOException;
+import io.zfunny.j2dlt.dlt645.Dlt645SlaveException;
+import io.zfunny.j2dlt.dlt645.io.Dlt645SerialTransaction;
+import io.zfunny.j2dlt.dlt645.io.Dlt645Transaction;
+import io.zfunny.j2dlt.dlt645.msg.ChangeBaudRateRequest;
+import io.zfunny.j2dlt.dlt645.msg.ChangeBaudRateResponse;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadSubsequentRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadSubsequentResponse;
+import io.zfunny.j2dlt.dlt645.net.AbstractSerialConnection;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import io.zfunny.j2dlt.dlt645.util.LongObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single I/O thread that owns the transaction of one physical bus.
+ * <p>
+ * Requests are queued by any number of callers and executed strictly one
+ * after the other, which is all an RS485 bus can do anyway. Whenever the bus
+ * becomes free the most valuable request is taken next: the highest
+ * {@link PollPriority} first and, within a priority, the earliest deadline,
+ * with requests that have none last.
+ * Requests whose deadline has passed before they reach the bus are failed
+ * without being sent, so a saturated bus sheds stale reads instead of
+ * building up a backlog. Each request is
+ * paired with a <tt>CompletableFuture</tt> that is completed from the I/O
+ * thread, so the number of reads in flight is only bounded by memory and
+ * not by the number of parked caller threads.
+ * <p>
+ * Timeouts, retries and meters that stop answering are handled as set out
+ * by a {@link Dlt645MeterPolicy}. A failed attempt is put back in the queue
+ * after a backoff rather than retried on the spot, so one dead meter costs
+ * the bus a few short timeouts instead of holding it for the full retry
+ * cycle, and the meters behind it keep being served.
+ * <p>
+ * Meters on a serial line may be moved to a faster baud rate one at a
+ * time. The worker keeps the rate of each meter and sets the line to it
+ * before talking to the meter, so a bus can mix meters that were moved and
+ * meters that could not be, and runs at the faster rate throughout once all
+ * of them have been moved. A meter that stops answering at its new rate is
+ * also tried at the rate the line was opened at, as that is the rate it
+ * comes back at after losing power. Broadcasts are sent once at every rate
+ * in use.
+ * <p>
+ * Reads queued with a {@link Dlt645FrameHandler} are not decoded into
+ * responses. Their frames are handed to the handler as a
+ * {@link Dlt645FrameView} into the receive buffer of the transport, so a
+ * poll that takes the values it needs from the view leaves no garbage
+ * behind per frame.
+ * <p>
+ * Callbacks attached with the non-async <tt>CompletableFuture</tt> methods
+ * run on the I/O thread and must not block.
+ */
+class Dlt645BusWorker implements Runnable {
+
+    /**
+     * Receives the outcome of a read queued over and over with
+     * {@link #resubmit}, on the I/O thread
+     *
+     * @param <T> Type of response expected
+     */
+    interface Callback<T> {
+
+        /**
+         * Called once the request has been executed
+         *
+         * @param result Response to the request
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called if the request failed or could not be queued
+         *
+         * @param cause Failure
+         */
+        void onFailure(Throwable cause);
+    }
+
+    /**
+     * Work that needs the bus to itself for a moment, e.g. a probe that
+     * several meters answer, run on the I/O thread between two requests at
+     * the rate the line was opened at
+     *
+     * @param <T> Type of result
+     */
+    interface Task<T> {
+
+        /**
+         * Runs the task
+         *
+         * @param transaction Transaction of the bus
+         * @return Result of the task
+         * @throws Dlt645Exception If the task fails
+         */
+        T execute(Dlt645Transaction transaction) throws Dlt645Exception;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645BusWorker.class);
+
+    /**
+     * Upper bound on the follow-up frames of a single read, guards against a
+     * meter that never clears the follow-up flag
+     */
+    private static final int MAX_FOLLOW_UP_FRAMES = 64;
+
+    private final BlockingQueue<PendingRequest<?>> queue = new PriorityBlockingQueue<PendingRequest<?>>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Dlt645Transaction transaction;
+    private final AbstractSerialConnection line;
+    private final int defaultBaudRate;
+    private final LongObjectMap<MeterHealth> health;
+    private final Random random = new Random(System.nanoTime());
+    private volatile Dlt645MeterPolicy policy;
+    private volatile boolean running;
+    private int currentTimeout = -1;
+    private int currentBaudRate;
+
+    // Rates broadcasts go out at, rebuilt when a meter changes its rate
+    private int[] baudRatesInUse;
+
+    // Reused for every frame read, only touched by the I/O thread
+    private final Dlt645FrameView view = new Dlt645FrameView();
+    private byte[] frameBuffer;
+    private ByteBuffer frameBytes;
+
+    // Retries waiting for their backoff to pass, only touched by the I/O thread
+    private final PriorityQueue<PendingRequest<?>> delayed = new PriorityQueue<PendingRequest<?>>(16, new Comparator<PendingRequest<?>>() {
+        @Override
+        public int compare(PendingRequest<?> a, PendingRequest<?> b) {
+            return a.notBefore - b.notBefore < 0 ? -1 : (a.notBefore == b.notBefore ? 0 : 1);
+        }
+    });
+    private Thread thread;
+
+    /**
+     * Constructs a worker for the bus served by the given transaction
+     *
+     * @param transaction Transaction bound to the bus transport
+     * @param policy      Timeout and retry policy
+     */
+    Dlt645BusWorker(Dlt645Transaction transaction, Dlt645MeterPolicy policy) {
+        this(transaction, policy, null, new LongObjectMap<MeterHealth>());
+    }
+
+    /**
+     * Constructs a worker for a serial bus whose baud rate can be changed
+     *
+     * @param transaction Transaction bound to the bus transport
+     * @param policy      Timeout and retry policy
+     * @param line        Open serial connection of the bus, or null if the
+     *                    rate cannot be changed
+     * @param health      History of the meters by address, kept by the master
+     *                    so the rates meters were moved to outlive a reconnect
+     */
+    Dlt645BusWorker(Dlt645Transaction transaction, Dlt645MeterPolicy policy, AbstractSerialConnection line, LongObjectMap<MeterHealth> health) {
+        this.transaction = transaction;
+        this.policy = policy;
+        this.line = line;
+        this.health = health;
+        defaultBaudRate = line == null ? 0 : line.getBaudRate();
+        currentBaudRate = defaultBaudRate;
+
+        // Attempts are scheduled by the worker
+        transaction.setRetries(1);
+    }
+
+    /**
+     * Starts the I/O thread
+     *
+     * @param name Name to give the thread
+     */
+    synchronized void start(String name) {
+        if (!running) {
+            running = true;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the I/O thread and fails every request that has not been executed yet
+     */
+    synchronized void stop() {
+        if (running) {
+            running = false;
+            thread.interrupt();
+            thread = null;
+        }
+        failPending(new Dlt645Exception("Master disconnected"));
+    }
+
+    /**
+     * Returns true if the I/O thread is accepting requests
+     *
+     * @return True if running
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of requests waiting for the bus
+     *
+     * @return Queue depth
+     */
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Replaces the timeout and retry policy
+     *
+     * @param policy Policy to use from the next request on
+     */
+    void setPolicy(Dlt645MeterPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a request for execution on the bus
+     *
+     * @param request      Request to send
+     * @param responseType Type of response expected
+     * @param priority     Priority class of the request
+     * @param deadline     <tt>System.nanoTime()</tt> after which the request is
+     *                     no longer worth sending, or 0 for no deadline
+     * @param <T>          Type of response expected
+     * @return Future completed with the response once the request has been executed
+     */
+    <T extends Dlt645Response> CompletableFuture<T> submit(Dlt645Request request, Class<T> responseType, PollPriority priority, long deadline) {
+        return enqueue(new PendingRequest<T>(request, responseType, false, priority, deadline, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Queues a read whose response frames are handed to a handler rather
+     * than decoded. The read is retried and counts towards meter health
+     * like any other; a retry after a failed follow-up frame hands the
+     * frames over again from the first one.
+     *
+     * @param request  Read request with the meter address set
+     * @param handler  Handler of the response frames, called on the I/O thread
+     * @param priority Priority class of the read
+     * @param deadline <tt>System.nanoTime()</tt> after which the read is no
+     *                 longer worth sending, or 0 for no deadline
+     * @return Future completed once every frame of the response has been handled
+     */
+    CompletableFuture<Void> submitFrames(ReadRequest request, Dlt645FrameHandler handler, PollPriority priority, long deadline) {
+        PendingRequest<Void> pending = new PendingRequest<Void>(request, Void.class, false, priority, deadline, sequence.getAndIncrement());
+        pending.handler = handler;
+        return enqueue(pending);
+    }
+
+    /**
+     * Queues a request that no meter answers, e.g. a broadcast. It takes
+     * its turn on the bus like any other request, so it never cuts into a
+     * read, and the bus is kept quiet for the settle time of the policy
+     * after it has been sent.
+     *
+     * @param request  Request to send
+     * @param priority Priority class of the request
+     * @param deadline <tt>System.nanoTime()</tt> after which the request is
+     *                 no longer worth sending, or 0 for no deadline
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> submitBroadcast(Dlt645Request request, PollPriority priority, long deadline) {
+        return enqueue(new PendingRequest<Void>(request, Void.class, true, priority, deadline, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Queues a task to run on the I/O thread once the bus is free. Tasks are
+     * run once, without retries, and do not count towards meter health.
+     *
+     * @param task     Task to run
+     * @param priority Priority class of the task
+     * @param deadline <tt>System.nanoTime()</tt> after which the task is no
+     *                 longer worth running, or 0 for no deadline
+     * @param <T>      Type of result
+     * @return Future completed with the result of the task
+     */
+    <T> CompletableFuture<T> submitTask(Task<T> task, PollPriority priority, long deadline) {
+        PendingRequest<T> pending = new PendingRequest<T>(null, null, false, priority, deadline, sequence.getAndIncrement());
+        pending.task = task;
+        return enqueue(pending);
+    }
+
+    /**
+     * Queues a change of the baud rate of a meter. The meter is asked at the
+     * rate it runs at and, once it has agreed, is only talked to at the new
+     * rate. If the answer is lost the meter is looked for at the new rate
+     * before the change is given up on.
+     *
+     * @param unitId   Meter address (6 bytes, as sent on the wire)
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     * @param priority Priority class of the change
+     * @param deadline <tt>System.nanoTime()</tt> after which the change is no
+     *                 longer worth making, or 0 for no deadline
+     * @return Future completed with true once the meter runs at the rate, or
+     * false if it refused the rate
+     */
+    CompletableFuture<Boolean> submitBaudRateChange(byte[] unitId, final int baudRate, PollPriority priority, long deadline) {
+        ChangeBaudRateRequest.toFeatureByte(baudRate);
+        final byte[] address = Arrays.copyOf(unitId, 6);
+        return submitTask(new Task<Boolean>() {
+            @Override
+            public Boolean execute(Dlt645Transaction transaction) throws Dlt645Exception {
+                return changeBaudRate(address, baudRate);
+            }
+        }, priority, deadline);
+    }
+
+    /**
+     * Creates a read that is queued again every cycle of a poll, see
+     * {@link #resubmit}. Its outcome goes to a callback rather than a new
+     * future, so a warmed up poll queues its reads without allocating.
+     *
+     * @param request       Read request with the meter address set, sent every time
+     * @param priority      Priority class of the read
+     * @param handler       Handler of the response frames, or null to decode a response
+     * @param reuseResponse True to decode every response into the same
+     *                      instance, which the callback must not keep
+     * @param callback      Callback of the outcome, called on the I/O thread.
+     *                      The response is null if a frame handler is given.
+     * @return Read to queue with {@link #resubmit}
+     */
+    static PendingRequest<ReadResponse> createRepeatedRead(ReadRequest request, PollPriority priority, Dlt645FrameHandler handler, boolean reuseResponse, Callback<ReadResponse> callback) {
+        PendingRequest<ReadResponse> pending = new PendingRequest<ReadResponse>(request, ReadResponse.class, false, priority, callback);
+        pending.handler = handler;
+        if (handler == null && reuseResponse) {
+            pending.target = new ReadResponse();
+        }
+        return pending;
+    }
+
+    /**
+     * Queues a read created by {@link #createRepeatedRead} once more. It
+     * must have completed since it was last queued.
+     *
+     * @param pending  Read to queue
+     * @param deadline <tt>System.nanoTime()</tt> after which the read is no
+     *                 longer worth sending, or 0 for no deadline
+     */
+    void resubmit(PendingRequest<?> pending, long deadline) {
+        pending.deadline = deadline;
+        pending.sequence = sequence.getAndIncrement();
+        pending.attempt = 0;
+        pending.notBefore = 0;
+        enqueue(pending);
+    }
+
+    private <T> CompletableFuture<T> enqueue(PendingRequest<T> pending) {
+        if (!running) {
+            pending.fail(new Dlt645Exception("No transaction created, probably not connected"));
+        }
+        else {
+            queue.add(pending);
+            if (!running && queue.remove(pending)) {
+                pending.fail(new Dlt645Exception("Master disconnected"));
+            }
+        }
+        return pending.future;
+    }
+
+    @Override
+    public void run() {
+        logger.debug("Bus worker started");
+        while (running) {
+            PendingRequest<?> pending;
+            try {
+                long wait = promoteDelayed();
+                pending = wait < 0 ? queue.take() : queue.poll(wait, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            if (pending != null) {
+                execute(pending);
+            }
+        }
+        Dlt645Exception cause = new Dlt645Exception("Master disconnected");
+        PendingRequest<?> pending;
+        while ((pending = delayed.poll()) != null) {
+            pending.fail(cause);
+        }
+
+        // stop() may have drained the queue before a due retry was moved into it
+        failPending(cause);
+        logger.debug("Bus worker stopped");
+    }
+
+    /**
+     * Moves retries whose backoff has passed back into the queue
+     *
+     * @return Nanoseconds until the next retry is due, -1 if there is none
+     */
+    private long promoteDelayed() {
+        long now = System.nanoTime();
+        PendingRequest<?> next;
+        while ((next = delayed.peek()) != null) {
+            long wait = next.notBefore - now;
+            if (wait > 0) {
+                return wait;
+            }
+            queue.add(delayed.poll());
+        }
+        return -1;
+    }
+
+    /**
+     * Executes a single request, completing its future either way
+     *
+     * @param pending Request to execute
+     */
+    private void execute(PendingRequest<?> pending) {
+
+        // The caller may have given up on it while it was queued
+        if (pending.isDone()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pending.deadline != 0 && now - pending.deadline > 0) {
+            pending.fail(new Dlt645Exception("Deadline passed before the bus was free"));
+            return;
+        }
+        if (pending.task != null) {
+            runTask(pending);
+            return;
+        }
+        if (pending.broadcast) {
+            broadcast(pending);
+            return;
+        }
+        Dlt645MeterPolicy currentPolicy = policy;
+        MeterHealth meter = getOrCreateHealth(pending.request.getUnitID());
+        if (!meter.allowRequest(now)) {
+            pending.fail(new Dlt645Exception("Meter %012X is not responding, requests suspended", meter.getAddress()));
+            return;
+        }
+        pending.attempt++;
+        setTimeout(meter.getTimeout(currentPolicy, pending.attempt));
+
+        // Every other retry of a moved meter goes out at the rate it powers up at
+        boolean fallback = meter.getBaudRate() != 0 && pending.attempt % 2 == 0;
+        long start = System.nanoTime();
+        try {
+            setBaudRate(fallback ? defaultBaudRate : meter.getBaudRate());
+            Dlt645Response response = null;
+            boolean framed = pending.handler != null || (pending.target != null && canReadFrames());
+            if (framed) {
+                exchange(pending.request, view);
+            }
+            else {
+                response = exchange(pending.request);
+            }
+            meter.recordSuccess(System.nanoTime() - start);
+            if (fallback) {
+                logger.info("Meter {} is back at {} baud", String.format("%012X", meter.getAddress()), defaultBaudRate);
+                meter.setBaudRate(0);
+                baudRatesInUse = null;
+            }
+            if (pending.handler != null) {
+                handleFrames(pending.request, pending.handler);
+                pending.complete(null);
+                return;
+            }
+            if (framed) {
+                response = decode(view, pending.target);
+            }
+            if (response instanceof ReadResponse && response.hasFollowUp()) {
+                response = readFollowUps((ReadResponse)response);
+            }
+            pending.completeWith(response);
+        }
+        catch (Dlt645SlaveException e) {
+
+            // The meter answered, it just did not like the request
+            meter.recordSuccess(System.nanoTime() - start);
+            pending.fail(e);
+        }
+        catch (Dlt645Exception e) {
+            retryOrFail(pending, meter, currentPolicy, e);
+        }
+        catch (RuntimeException e) {
+            logger.error("Unexpected failure executing request", e);
+            pending.fail(e);
+        }
+    }
+
+    private <T> void runTask(PendingRequest<T> pending) {
+        try {
+            setBaudRate(defaultBaudRate);
+            pending.complete(pending.task.execute(transaction));
+        }
+        catch (Dlt645Exception e) {
+            pending.fail(e);
+        }
+        catch (RuntimeException e) {
+            logger.error("Unexpected failure running bus task", e);
+            pending.fail(e);
+        }
+        finally {
+            // The task may have changed the timeout behind our back
+            currentTimeout = -1;
+        }
+    }
+
+    /**
+     * Sends a request without waiting for an answer. Nothing tells whether
+     * the meters got it, so it is sent once and never retried, and it does
+     * not count towards the health of any meter.
+     *
+     * @param pending Broadcast to send
+     */
+    private void broadcast(PendingRequest<?> pending) {
+        try {
+            transaction.setRequest(pending.request);
+            for (int baudRate : getBaudRatesInUse()) {
+                setBaudRate(baudRate);
+                transaction.send();
+            }
+            long settle = policy.getBroadcastSettleTime();
+            if (settle > 0) {
+                Thread.sleep(settle);
+            }
+            pending.complete(null);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.complete(null);
+        }
+        catch (Dlt645Exception e) {
+            pending.fail(e);
+        }
+        catch (RuntimeException e) {
+            logger.error("Unexpected failure sending broadcast", e);
+            pending.fail(e);
+        }
+    }
+
+    /**
+     * Queues another attempt after a backoff, or fails the request if it is
+     * out of attempts or the retry would miss its deadline
+     *
+     * @param pending       Request whose attempt failed
+     * @param meter         History of the meter addressed
+     * @param currentPolicy Policy in force for the attempt
+     * @param cause         Failure of the attempt
+     */
+    private void retryOrFail(PendingRequest<?> pending, MeterHealth meter, Dlt645MeterPolicy currentPolicy, Dlt645Exception cause) {
+        long now = System.nanoTime();
+        if (pending.attempt < currentPolicy.getRetries() && !meter.isProbing()) {
+            long backoff = Math.min((long)currentPolicy.getBackoff() << Math.min(pending.attempt - 1, 16), currentPolicy.getMaxBackoff());
+
+            // Jitter keeps retries of meters that failed together apart
+            backoff = TimeUnit.MILLISECONDS.toNanos(backoff / 2 + (long)(random.nextDouble() * backoff / 2));
+            pending.notBefore = now + backoff;
+            if (pending.deadline == 0 || pending.notBefore - pending.deadline < 0) {
+                logger.debug("{} - retrying (try: {})", cause.getMessage(), pending.attempt);
+                delayed.add(pending);
+                return;
+            }
+        }
+        if (meter.recordFailure(currentPolicy, now)) {
+            logger.warn("Suspending requests to meter {} after {} failures in a row", String.format("%012X", meter.getAddress()), meter.getConsecutiveFailures());
+        }
+        pending.fail(cause);
+    }
+
+    /**
+     * Asks a meter to change its rate, see {@link #submitBaudRateChange}
+     *
+     * @param address  Meter address
+     * @param baudRate New rate
+     * @return True if the meter runs at the new rate, false if it refused
+     * @throws Dlt645Exception If the meter cannot be reached
+     */
+    private boolean changeBaudRate(byte[] address, int baudRate) throws Dlt645Exception {
+        if (line == null) {
+            throw new Dlt645Exception("The baud rate can only be changed on a serial line");
+        }
+        MeterHealth meter = getOrCreateHealth(address);
+        int from = meter.getBaudRate() == 0 ? defaultBaudRate : meter.getBaudRate();
+        if (from == baudRate) {
+            return true;
+        }
+        ChangeBaudRateRequest request = new ChangeBaudRateRequest(baudRate);
+        request.setUnitID(address);
+        setBaudRate(from);
+        setTimeout(meter.getTimeout(policy, 1));
+        try {
+            Dlt645Response response = exchange(request);
+            if (!(response instanceof ChangeBaudRateResponse) || ((ChangeBaudRateResponse)response).getBaudRate() != baudRate) {
+                throw new Dlt645Exception("Meter %012X answered the change to %d baud with %s", meter.getAddress(), baudRate, response.getHexMessage());
+            }
+        }
+        catch (Dlt645SlaveException e) {
+            if ((e.getType() & Dlt645.ERROR_BAUD_RATE) == 0) {
+                throw e;
+            }
+            logger.info("Meter {} cannot run at {} baud", String.format("%012X", meter.getAddress()), baudRate);
+            meter.recordRefusedBaudRate(baudRate);
+            return false;
+        }
+        catch (Dlt645Exception e) {
+
+            // The meter may have switched and only its answer got lost
+            if (!answersAt(address, baudRate)) {
+                throw e;
+            }
+        }
+        logger.debug("Meter {} moved from {} to {} baud", String.format("%012X", meter.getAddress()), from, baudRate);
+        meter.setBaudRate(baudRate == defaultBaudRate ? 0 : baudRate);
+        baudRatesInUse = null;
+        return true;
+    }
+
+    /**
+     * Checks whether a meter answers a read of its address at a rate
+     */
+    private boolean answersAt(byte[] address, int baudRate) {
+        try {
+            setBaudRate(baudRate);
+            return exchange(new ReadAddressRequest(address)) instanceof ReadAddressResponse;
+        }
+        catch (Dlt645Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the rates of the meters on the line, starting with the rate
+     * the line was opened at
+     */
+    private int[] getBaudRatesInUse() {
+        int[] rates = baudRatesInUse;
+        if (rates == null) {
+            List<MeterHealth> meters = health.values();
+            rates = new int[meters.size() + 1];
+            rates[0] = defaultBaudRate;
+            int n = 1;
+            for (MeterHealth meter : meters) {
+                int baudRate = meter.getBaudRate();
+                if (baudRate != 0 && indexOf(rates, n, baudRate) < 0) {
+                    rates[n++] = baudRate;
+                }
+            }
+            rates = Arrays.copyOf(rates, n);
+            baudRatesInUse = rates;
+        }
+        return rates;
+    }
+
+    private static int indexOf(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the line to a rate, 0 standing for the rate it was opened at
+     */
+    private void setBaudRate(int baudRate) throws Dlt645Exception {
+        if (baudRate == 0) {
+            baudRate = defaultBaudRate;
+        }
+        if (line != null && baudRate != currentBaudRate) {
+            try {
+                line.setBaudRate(baudRate);
+            }
+            catch (IOException e) {
+                throw new Dlt645IOException("Cannot set %s to %d baud - %s", line.getPortName(), baudRate, e.getMessage());
+            }
+            currentBaudRate = baudRate;
+        }
+    }
+
+    private void setTimeout(int timeout) {
+        if (timeout != currentTimeout) {
+            transaction.setTimeout(timeout);
+            currentTimeout = timeout;
+        }
+    }
+
+    private MeterHealth getOrCreateHealth(byte[] unitId) {
+        long address = toAddress(unitId);
+        MeterHealth meter = health.get(address);
+        if (meter == null) {
+            meter = new MeterHealth(address);
+            health.put(address, meter);
+        }
+        return meter;
+    }
+
+    static long toAddress(byte[] unitId) {
+        long address = 0;
+        if (unitId != null) {
+            for (byte b : unitId) {
+                address = (address << 8) | (b & 0xFFL);
+            }
+        }
+        return address;
+    }
+
+    private Dlt645Response exchange(Dlt645Request request) throws Dlt645Exception {
+        transaction.setRequest(request);
+        transaction.execute();
+        Dlt645Response response = transaction.getResponse();
+        if (response == null) {
+            throw new Dlt645Exception("No response");
+        }
+        return response;
+    }
+
+    /**
+     * Executes a request and points a view at the frame of the response.
+     * Transports that cannot hand out their frames decode the response,
+     * which is then encoded again for the view.
+     *
+     * @param request Request to send
+     * @param target  View to point at the response
+     * @throws Dlt645Exception If the request fails
+     */
+    private void exchange(Dlt645Request request, Dlt645FrameView target) throws Dlt645Exception {
+        if (canReadFrames()) {
+            transaction.setRequest(request);
+            ((Dlt645SerialTransaction)transaction).execute(target);
+            return;
+        }
+        Dlt645Response response = exchange(request);
+        if (frameBuffer == null) {
+            frameBuffer = new byte[Dlt645.MAX_MESSAGE_LENGTH + Dlt645.wakeBytes.length + 2];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frameBuffer);
+        response.writeTo(buffer);
+        buffer.put((byte)Dlt645Util.calculateCS(buffer, Dlt645.wakeBytes.length, buffer.position() - 1));
+        buffer.put(Dlt645.endByte);
+        target.wrap(frameBuffer, Dlt645.wakeBytes.length, buffer.position() - Dlt645.wakeBytes.length);
+    }
+
+    private boolean canReadFrames() {
+        return transaction instanceof Dlt645SerialTransaction && ((Dlt645SerialTransaction)transaction).canReadFrames();
+    }
+
+    /**
+     * Decodes the frame a view points at into a response that is reused for
+     * every read of a data item
+     *
+     * @param frame    View of the frame
+     * @param response Response to decode into
+     * @return The response
+     * @throws Dlt645IOException If the frame cannot be decoded
+     */
+    private Dlt645Response decode(Dlt645FrameView frame, Dlt645Response response) throws Dlt645IOException {
+        if (frameBytes == null || frameBytes.array() != frame.getBuffer()) {
+            frameBytes = ByteBuffer.wrap(frame.getBuffer());
+        }
+        frameBytes.limit(frame.getOffset() + frame.getLength());
+        frameBytes.position(frame.getOffset());
+        try {
+            response.setHeadless();
+            response.readFrom(frameBytes);
+        }
+        catch (IOException e) {
+            throw new Dlt645IOException("Cannot decode response %s - %s", frame, e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * Hands the frame the view points at to a handler and then fetches and
+     * hands over the follow-up frames of the read, while the bus is still held
+     *
+     * @param first   Read request that was answered
+     * @param handler Handler of the frames
+     * @throws Dlt645Exception If a follow-up frame cannot be read
+     */
+    private void handleFrames(Dlt645Request first, Dlt645FrameHandler handler) throws Dlt645Exception {
+        handler.onFrame(view);
+        if (!view.hasFollowUp()) {
+            return;
+        }
+        int dataIdentity = view.getDataIdentityAsInt();
+        int sequence = 0;
+        while (view.hasFollowUp()) {
+            if (++sequence > MAX_FOLLOW_UP_FRAMES) {
+                throw new Dlt645Exception("Too many follow-up frames for data identity %08X", dataIdentity);
+            }
+            ReadSubsequentRequest request = new ReadSubsequentRequest(Dlt645Util.intToDataIdentity(dataIdentity), sequence);
+            request.setUnitID(first.getUnitID());
+            exchange(request, view);
+            if (view.getFunctionCode() != Dlt645.READ_SUB_DATA || view.getDataLength() < 5) {
+                throw new Dlt645Exception("Unexpected response %s to follow-up frame %d", view, sequence);
+            }
+            if (view.getSequence() != (sequence & 0xFF)) {
+                throw new Dlt645Exception("Follow-up frame %d answered with frame %d", sequence, view.getSequence());
+            }
+            handler.onFrame(view);
+        }
+        logger.debug("Handled {} frames of {}", sequence + 1, String.format("%08X", dataIdentity));
+    }
+
+    /**
+     * Fetches the remaining frames of a read that the meter flagged as
+     * continued, while the bus is still held, and joins their data to the
+     * data of the first frame.
+     *
+     * @param first First response of the read
+     * @return Response holding the data of all frames
+     * @throws Dlt645Exception If a follow-up frame cannot be read
+     */
+    private ReadResponse readFollowUps(ReadResponse first) throws Dlt645Exception {
+        byte[] dataIdentity = first.getDataIdentity();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(Dlt645.MAX_MESSAGE_LENGTH * 2);
+        byte[] chunk = first.getData();
+        data.write(chunk, 0, chunk.length);
+        Dlt645Response last = first;
+        int sequence = 0;
+        while (last.hasFollowUp()) {
+            if (++sequence > MAX_FOLLOW_UP_FRAMES) {
+                throw new Dlt645Exception("Too many follow-up frames for data identity %08X", first.getDataIdentityAsInt());
+            }
+            ReadSubsequentRequest request = new ReadSubsequentRequest(dataIdentity, sequence);
+            request.setUnitID(first.getUnitID());
+            last = exchange(request);
+            if (!(last instanceof ReadSubsequentResponse)) {
+                throw new Dlt645Exception("Unexpected response type %s to follow-up frame %d", last.getClass().getSimpleName(), sequence);
+            }
+            ReadSubsequentResponse next = (ReadSubsequentResponse)last;
+            if (next.getSequence() != (sequence & 0xFF)) {
+                throw new Dlt645Exception("Follow-up frame %d answered with frame %d", sequence, next.getSequence());
+            }
+            chunk = next.getData();
+            data.write(chunk, 0, chunk.length);
+        }
+        logger.debug("Read {} bytes of {} in {} frames", data.size(), String.format("%08X", first.getDataIdentityAsInt()), sequence + 1);
+        ReadResponse combined = new ReadResponse();
+        combined.setUnitID(first.getUnitID());
+        combined.setDataIdentity(dataIdentity);
+        combined.setData(data.toByteArray());
+        combined.setHeadless();
+        return combined;
+    }
+
+    private void failPending(Dlt645Exception cause) {
+        List<PendingRequest<?>> drained = new ArrayList<PendingRequest<?>>();
+        queue.drainTo(drained);
+        for (PendingRequest<?> pending : drained) {
+            pending.fail(cause);
+        }
+    }
+
+    /**
+     * A request waiting for the bus and the future of its response, or the
+     * callback of a request that is queued over and over
+     *
+     * @param <T> Type of response expected, <tt>Void</tt> for a broadcast
+     */
+    static final class PendingRequest<T> implements Comparable<PendingRequest<?>> {
+
+        private final Dlt645Request request;
+        private final Class<T> responseType;
+        private final boolean broadcast;
+        private final PollPriority priority;
+        private final CompletableFuture<T> future;
+        private final Callback<T> callback;
+        private long deadline;
+        private long sequence;
+        private Task<T> task;
+        private Dlt645FrameHandler handler;
+        private Dlt645Response target;
+        private int attempt;
+        private long notBefore;
+
+        private PendingRequest(Dlt645Request request, Class<T> responseType, boolean broadcast, PollPriority priority, long deadline, long sequence) {
+            this(request, responseType, broadcast, priority, null);
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        private PendingRequest(Dlt645Request request, Class<T> responseType, boolean broadcast, PollPriority priority, Callback<T> callback) {
+            this.request = request;
+            this.responseType = responseType;
+            this.broadcast = broadcast;
+            this.priority = priority == null ? PollPriority.NORMAL : priority;
+            this.callback = callback;
+            future = callback == null ? new CompletableFuture<T>() : null;
+        }
+
+        @Override
+        public int compareTo(PendingRequest<?> other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+
+            // No deadline counts as the latest one, so such requests wait behind
+            // those with a deadline and keep the order they were submitted in
+            if (deadline != other.deadline) {
+                if (deadline == 0) {
+                    return 1;
+                }
+                if (other.deadline == 0) {
+                    return -1;
+                }
+                return deadline - other.deadline < 0 ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        /**
+         * Returns true if the caller has given up on the request
+         */
+        private boolean isDone() {
+            return future != null && future.isDone();
+        }
+
+        private void complete(T result) {
+            if (future != null) {
+                future.complete(result);
+                return;
+            }
+            try {
+                callback.onSuccess(result);
+            }
+            catch (RuntimeException e) {
+                logger.error("Request callback failed", e);
+            }
+        }
+
+        void fail(Throwable cause) {
+            if (future != null) {
+                future.completeExceptionally(cause);
+                return;
+            }
+            try {
+                callback.onFailure(cause);
+            }
+            catch (RuntimeException e) {
+                logger.error("Request callback failed", e);
+            }
+        }
+
+        private void completeWith(Dlt645Response response) {
+            if (responseType.isInstance(response)) {
+                complete(responseType.cast(response));
+            }
+            else {
+                fail(new Dlt645Exception("Unexpected response type %s", response.getClass().getSimpleName()));
+            }
+        }
+    }
+}
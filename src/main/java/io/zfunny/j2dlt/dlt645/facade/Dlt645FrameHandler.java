@@ -0,0 +1,22 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
+
+/**
+ * Receives the response frames of a read queued with
+ * {@link AbstractDlt645Master#readFramesAsync}.
+ * <p>
+ * Frames are handed over on the I/O thread of the bus while it is still
+ * held, as views into the receive buffer of the transport. The handler must
+ * take what it needs from the view before it returns and must not block.
+ */
+public interface Dlt645FrameHandler {
+
+    /**
+     * Called for the first frame of the response and then for each
+     * follow-up frame in order
+     *
+     * @param frame View of the frame, only valid during the call
+     */
+    void onFrame(Dlt645FrameView frame);
+}
@@ -0,0 +1,323 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
+import io.zfunny.j2dlt.dlt645.io.Dlt645SerialTransaction;
+import io.zfunny.j2dlt.dlt645.io.Dlt645Transaction;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressRequest;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds the addresses of all meters on RS485 buses.
+ * <p>
+ * The search sends reads of the address (control code 0x13) to address
+ * patterns with {@link Dlt645#WILDCARD} bytes, starting with all six bytes
+ * open. A pattern that no meter matches stays silent, one that a single
+ * meter matches gets a clean answer carrying the full address. If several
+ * meters match, their answers collide on the line and arrive garbled, or
+ * one after the other on a line that serialises them. Answers that all
+ * arrived intact are taken as the complete list. A garbled answer means
+ * meters collided: the pattern is then split on one open byte into the 100
+ * BCD values that byte can take and each is searched in turn. The byte
+ * split is the one that varies most among the meters found so far, or A0,
+ * the least significant byte, before any is known. As meters on a bus are
+ * usually numbered in sequence, this separates them after one level.
+ * <p>
+ * Every probe is queued on the bus worker like a read, so discovery can run
+ * while the bus is polled, and each bus is searched by its own worker, so
+ * any number of buses are searched in parallel. Probes go out at the rate
+ * the bus was opened at, so meters already moved to another baud rate are
+ * not found.
+ */
+public class Dlt645MeterDiscovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645MeterDiscovery.class);
+
+    private int probeTimeout = 200;
+    private int quietTime = 50;
+    private PollPriority priority = PollPriority.NORMAL;
+
+    /**
+     * Returns how long a probe waits for the first answer
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Sets how long a probe waits for the first answer. Most probes of a
+     * search get no answer at all, so this sets the pace of the search.
+     *
+     * @param probeTimeout Timeout in milliseconds
+     */
+    public void setProbeTimeout(int probeTimeout) {
+        this.probeTimeout = probeTimeout;
+    }
+
+    /**
+     * Returns how long the line must stay quiet after an answer before a probe ends
+     *
+     * @return Time in milliseconds
+     */
+    public int getQuietTime() {
+        return quietTime;
+    }
+
+    /**
+     * Sets how long the line must stay quiet after an answer before a probe ends
+     *
+     * @param quietTime Time in milliseconds
+     */
+    public void setQuietTime(int quietTime) {
+        this.quietTime = quietTime;
+    }
+
+    /**
+     * Returns the priority class of the probes
+     *
+     * @return Priority
+     */
+    public PollPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority class of the probes against the polling of the bus
+     *
+     * @param priority Priority
+     */
+    public void setPriority(PollPriority priority) {
+        this.priority = priority == null ? PollPriority.NORMAL : priority;
+    }
+
+    /**
+     * Searches the bus of a master for meters
+     *
+     * @param master Connected master of the bus
+     * @return Future of the addresses found (6 bytes each, as sent on the wire)
+     */
+    public CompletableFuture<List<byte[]>> discover(AbstractDlt645Master master) {
+        Search search = new Search(master);
+        search.next();
+        return search.result;
+    }
+
+    /**
+     * Searches the buses of a set of masters for meters, all buses at the same time
+     *
+     * @param masters Connected masters of the buses
+     * @return Future of the addresses found per master, completed once every
+     * bus has been searched, or failed as soon as the search of a bus fails
+     */
+    public CompletableFuture<Map<AbstractDlt645Master, List<byte[]>>> discover(List<? extends AbstractDlt645Master> masters) {
+        final Map<AbstractDlt645Master, List<byte[]>> found = new LinkedHashMap<AbstractDlt645Master, List<byte[]>>();
+        final CompletableFuture<Map<AbstractDlt645Master, List<byte[]>>> result = new CompletableFuture<Map<AbstractDlt645Master, List<byte[]>>>();
+        if (masters.isEmpty()) {
+            result.complete(found);
+            return result;
+        }
+        final int[] remaining = {masters.size()};
+
+        // Keeps the results in the order of the masters
+        for (AbstractDlt645Master master : masters) {
+            found.put(master, null);
+        }
+        for (final AbstractDlt645Master master : masters) {
+            discover(master).whenComplete(new BiConsumer<List<byte[]>, Throwable>() {
+                @Override
+                public void accept(List<byte[]> addresses, Throwable cause) {
+                    synchronized (found) {
+                        if (cause != null) {
+                            result.completeExceptionally(cause);
+                            return;
+                        }
+                        found.put(master, addresses);
+                        if (--remaining[0] == 0) {
+                            result.complete(found);
+                        }
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Sends a single probe and collects what comes back
+     */
+    private Probe probe(Dlt645Transaction transaction, byte[] pattern) throws Dlt645Exception {
+        if (!(transaction instanceof Dlt645SerialTransaction)) {
+            throw new Dlt645Exception("Meter discovery needs a serial bus");
+        }
+        transaction.setRequest(new ReadAddressRequest(pattern));
+        transaction.setTimeout(probeTimeout);
+        Probe probe = new Probe();
+        probe.garbled = ((Dlt645SerialTransaction)transaction).executeAll(probe.responses, quietTime);
+        return probe;
+    }
+
+    private static boolean matches(byte[] pattern, byte[] address) {
+        if (address == null || address.length != 6) {
+            return false;
+        }
+        for (int i = 0; i < 6; i++) {
+            if (pattern[i] != Dlt645.WILDCARD && pattern[i] != address[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answers to one probe
+     */
+    private static class Probe {
+
+        private final List<Dlt645Response> responses = new ArrayList<Dlt645Response>();
+        private int garbled;
+    }
+
+    /**
+     * State of the search of one bus, advanced from the I/O thread of the
+     * bus as each probe completes
+     */
+    private class Search implements BiConsumer<Probe, Throwable> {
+
+        private final AbstractDlt645Master master;
+        private final Deque<byte[]> patterns = new ArrayDeque<byte[]>();
+        private final Map<Long, byte[]> found = new LinkedHashMap<Long, byte[]>();
+        private final CompletableFuture<List<byte[]>> result = new CompletableFuture<List<byte[]>>();
+        private byte[] current;
+        private int probes;
+        private long started = System.nanoTime();
+
+        private Search(AbstractDlt645Master master) {
+            this.master = master;
+            patterns.push(Arrays.copyOf(Dlt645.WILDCARD_ADDRESS, 6));
+        }
+
+        private void next() {
+            current = patterns.poll();
+            if (current == null) {
+                logger.debug("Found {} meters with {} probes in {} ms", found.size(), probes, (System.nanoTime() - started) / 1000000);
+                result.complete(new ArrayList<byte[]>(found.values()));
+                return;
+            }
+            probes++;
+            final byte[] pattern = current;
+            master.submitTask(new Dlt645BusWorker.Task<Probe>() {
+                @Override
+                public Probe execute(Dlt645Transaction transaction) throws Dlt645Exception {
+                    return probe(transaction, pattern);
+                }
+            }, priority, 0).whenComplete(this);
+        }
+
+        @Override
+        public void accept(Probe probe, Throwable cause) {
+            if (cause != null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            List<byte[]> answered = new ArrayList<byte[]>(probe.responses.size());
+            for (Dlt645Response response : probe.responses) {
+                byte[] address = response.getUnitID();
+                if (matches(current, address)) {
+                    answered.add(address);
+                }
+            }
+            for (byte[] address : answered) {
+                add(address);
+            }
+
+            // Answers that arrived intact are all there is, a garbled one
+            // means meters collided and the pattern has to be narrowed
+            if (probe.garbled > 0) {
+                split();
+            }
+            next();
+        }
+
+        /**
+         * Picks the open byte of the current pattern to search next: the one
+         * that takes the most values among the meters found so far, as it
+         * is the most likely to tell the colliding meters apart. Before
+         * anything is known the lowest open byte is taken, A0 being the
+         * least significant byte of an address.
+         *
+         * @param local True to only look at the meters matching the current pattern
+         * @return Index of the byte, or -1 if the pattern has no open byte or,
+         * if local, the meters found tell nothing
+         */
+        private int chooseOpenByte(boolean local) {
+            int best = -1;
+            int bestValues = local ? 1 : 0;
+            for (int i = 0; i < 6; i++) {
+                if (current[i] != Dlt645.WILDCARD) {
+                    continue;
+                }
+                boolean[] seen = new boolean[256];
+                int values = 0;
+                for (byte[] address : found.values()) {
+                    if ((!local || matches(current, address)) && !seen[address[i] & 0xFF]) {
+                        seen[address[i] & 0xFF] = true;
+                        values++;
+                    }
+                }
+                if (values > bestValues || (best < 0 && !local)) {
+                    best = i;
+                    bestValues = values;
+                }
+            }
+            return best;
+        }
+
+        private void add(byte[] address) {
+            long key = 0;
+            for (byte b : address) {
+                key = (key << 8) | (b & 0xFFL);
+            }
+            if (!found.containsKey(key)) {
+                logger.debug("Found meter {}", Dlt645Util.toHex(address));
+                found.put(key, address);
+            }
+        }
+
+        private void split() {
+            int open = chooseOpenByte(true);
+            if (open < 0) {
+                open = chooseOpenByte(false);
+            }
+            if (open < 0) {
+                logger.warn("Several meters answer to address {}", Dlt645Util.toHex(current));
+                return;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Meters collide on {}, searching byte {}", Dlt645Util.toHex(current), open);
+            }
+
+            // Pushed in reverse so the values are searched in ascending order
+            for (int value = 99; value >= 0; value--) {
+                byte[] pattern = Arrays.copyOf(current, 6);
+                pattern[open] = (byte)(((value / 10) << 4) | (value % 10));
+                patterns.push(pattern);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+
+/**
+ * Settings for how a bus worker times out, retries and gives up on meters.
+ * <p>
+ * The timeout of a request follows the latency observed for its meter,
+ * within the minimum and maximum given here, and doubles with each retry.
+ * Retries are not sent straight away but queued again after a backoff, so
+ * the bus serves other meters in between. A meter that fails a number of
+ * requests in a row is no longer polled for a while, its requests fail
+ * immediately, and is then probed with a single request.
+ */
+public class Dlt645MeterPolicy {
+
+    private int minTimeout = 100;
+    private int maxTimeout = Dlt645.DEFAULT_TIMEOUT;
+    private int retries = 3;
+    private int backoff = 200;
+    private int maxBackoff = 5000;
+    private int failureThreshold = 3;
+    private int openPeriod = 30000;
+    private int maxOpenPeriod = 600000;
+    private int broadcastSettleTime = 200;
+
+    /**
+     * Returns the lowest timeout used for a meter with a fast response history
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getMinTimeout() {
+        return minTimeout;
+    }
+
+    /**
+     * Sets the lowest timeout used for a meter with a fast response history
+     *
+     * @param minTimeout Timeout in milliseconds
+     */
+    public void setMinTimeout(int minTimeout) {
+        this.minTimeout = minTimeout;
+    }
+
+    /**
+     * Returns the timeout used for meters without a response history, and
+     * the upper bound of all timeouts
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    /**
+     * Sets the timeout used for meters without a response history, and the
+     * upper bound of all timeouts
+     *
+     * @param maxTimeout Timeout in milliseconds
+     */
+    public void setMaxTimeout(int maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Returns the number of attempts per request
+     *
+     * @return Attempts
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of attempts per request
+     *
+     * @param retries Attempts, at least 1
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(1, retries);
+    }
+
+    /**
+     * Returns the delay before the first retry, doubled for each further retry
+     *
+     * @return Delay in milliseconds
+     */
+    public int getBackoff() {
+        return backoff;
+    }
+
+    /**
+     * Sets the delay before the first retry, doubled for each further retry
+     *
+     * @param backoff Delay in milliseconds
+     */
+    public void setBackoff(int backoff) {
+        this.backoff = backoff;
+    }
+
+    /**
+     * Returns the longest delay before a retry
+     *
+     * @return Delay in milliseconds
+     */
+    public int getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the longest delay before a retry
+     *
+     * @param maxBackoff Delay in milliseconds
+     */
+    public void setMaxBackoff(int maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the number of requests in a row a meter may fail before it is
+     * taken off the bus
+     *
+     * @return Failed requests, 0 if meters are never taken off the bus
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of requests in a row a meter may fail before it is
+     * taken off the bus
+     *
+     * @param failureThreshold Failed requests, 0 to never take meters off the bus
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Returns how long a meter is first taken off the bus. The period doubles
+     * each time the probe after it fails.
+     *
+     * @return Period in milliseconds
+     */
+    public int getOpenPeriod() {
+        return openPeriod;
+    }
+
+    /**
+     * Sets how long a meter is first taken off the bus
+     *
+     * @param openPeriod Period in milliseconds
+     */
+    public void setOpenPeriod(int openPeriod) {
+        this.openPeriod = openPeriod;
+    }
+
+    /**
+     * Returns the longest period a meter is taken off the bus
+     *
+     * @return Period in milliseconds
+     */
+    public int getMaxOpenPeriod() {
+        return maxOpenPeriod;
+    }
+
+    /**
+     * Sets the longest period a meter is taken off the bus
+     *
+     * @param maxOpenPeriod Period in milliseconds
+     */
+    public void setMaxOpenPeriod(int maxOpenPeriod) {
+        this.maxOpenPeriod = maxOpenPeriod;
+    }
+
+    /**
+     * Returns how long the bus is kept quiet after a broadcast, so the
+     * meters can act on it before the next request
+     *
+     * @return Time in milliseconds
+     */
+    public int getBroadcastSettleTime() {
+        return broadcastSettleTime;
+    }
+
+    /**
+     * Sets how long the bus is kept quiet after a broadcast
+     *
+     * @param broadcastSettleTime Time in milliseconds
+     */
+    public void setBroadcastSettleTime(int broadcastSettleTime) {
+        this.broadcastSettleTime = broadcastSettleTime;
+    }
+}
@@ -0,0 +1,190 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.net.NIOTCPMasterConnection;
+import io.zfunny.j2dlt.dlt645.net.NIOTCPMasterLoop;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Dlt645 master facade for large numbers of serial-to-Ethernet gateways.
+ * <p>
+ * Every gateway socket is non-blocking and driven by one of a small, fixed
+ * number of selector loops, so polling hundreds of gateways needs no more
+ * threads than there are loops. Gateways are spread over the loops round robin.
+ */
+public class Dlt645NIOTCPMaster {
+
+    private final NIOTCPMasterLoop[] loops;
+    private int nextLoop;
+    private int timeout = Dlt645.DEFAULT_TIMEOUT;
+    private int retries = Dlt645.DEFAULT_RETRIES;
+    private int maxInFlight = 1;
+
+    /**
+     * Constructs a master with a single event loop
+     */
+    public Dlt645NIOTCPMaster() {
+        this(1);
+    }
+
+    /**
+     * Constructs a master with the given number of event loops
+     *
+     * @param loopCount Number of selector threads
+     */
+    public Dlt645NIOTCPMaster(int loopCount) {
+        loops = new NIOTCPMasterLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NIOTCPMasterLoop();
+            loops[i].setThreadName(String.format("Dlt645 NIO TCP Master [loop:%d]", i));
+        }
+    }
+
+    /**
+     * Starts the event loops
+     *
+     * @throws IOException If a selector cannot be opened
+     */
+    public synchronized void connect() throws IOException {
+        try {
+            for (NIOTCPMasterLoop loop : loops) {
+                loop.start();
+            }
+        }
+        catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the event loops, closing every gateway connection. The gateways
+     * stay added and are reconnected by their next request after {@link #connect()}.
+     * This may also be called from a callback of a response.
+     */
+    public void disconnect() {
+        for (NIOTCPMasterLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    /**
+     * Returns true if the event loops are running
+     *
+     * @return True if connected
+     */
+    public boolean isConnected() {
+        return loops[0].isRunning();
+    }
+
+    /**
+     * Adds a gateway using the default port
+     *
+     * @param address Address of the gateway
+     * @return Handle to use for requests to meters behind the gateway
+     */
+    public NIOTCPMasterConnection addGateway(InetAddress address) {
+        return addGateway(address, Dlt645.DEFAULT_PORT);
+    }
+
+    /**
+     * Adds a gateway. The socket is opened lazily with the first request.
+     *
+     * @param address Address of the gateway
+     * @param port    Port of the gateway
+     * @return Handle to use for requests to meters behind the gateway
+     */
+    public synchronized NIOTCPMasterConnection addGateway(InetAddress address, int port) {
+        NIOTCPMasterConnection connection = new NIOTCPMasterConnection(new InetSocketAddress(address, port));
+        connection.setTimeout(timeout);
+        connection.setRetries(retries);
+        connection.setMaxInFlight(maxInFlight);
+        loops[nextLoop].register(connection);
+        nextLoop = (nextLoop + 1) % loops.length;
+        return connection;
+    }
+
+    /**
+     * Removes a gateway, failing its outstanding requests
+     *
+     * @param gateway Gateway to remove
+     */
+    public void removeGateway(NIOTCPMasterConnection gateway) {
+        gateway.close();
+    }
+
+    /**
+     * Queues a read of a data item from a meter behind a gateway
+     *
+     * @param gateway      Gateway the meter is connected to
+     * @param unitId       Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Future of the response, completed from the loop thread
+     */
+    public CompletableFuture<ReadResponse> readDataAsync(NIOTCPMasterConnection gateway, byte[] unitId, byte[] dataIdentity) {
+        ReadRequest request = new ReadRequest(dataIdentity);
+        request.setUnitID(unitId);
+        return gateway.execute(request).thenCompose(new Function<Dlt645Response, CompletableFuture<ReadResponse>>() {
+            @Override
+            public CompletableFuture<ReadResponse> apply(Dlt645Response response) {
+                CompletableFuture<ReadResponse> result = new CompletableFuture<ReadResponse>();
+                if (response instanceof ReadResponse) {
+                    result.complete((ReadResponse)response);
+                }
+                else {
+                    result.completeExceptionally(new Dlt645Exception("Unexpected response type %s", response.getClass().getSimpleName()));
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Returns the timeout given to new gateways
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout given to new gateways
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the number of attempts given to new gateways
+     *
+     * @param retries Number of attempts per request
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Sets the number of requests new gateways may have awaiting a response
+     * at the same time, see {@link NIOTCPMasterConnection#setMaxInFlight(int)}
+     *
+     * @param maxInFlight Window size, at least 1
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+}
@@ -0,0 +1,293 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Polling engine that keeps the buses of a set of masters busy with the
+ * reads of their poll plans.
+ * <p>
+ * A single timer thread releases the reads of each plan once per interval
+ * onto the bus of its master. Every read carries the priority of its plan
+ * and a deadline of one interval, the bus worker then sends the highest
+ * priority, earliest deadline read whenever the bus is free. On a bus that
+ * cannot keep up the low priority reads are the ones that expire, and a read
+ * that is still outstanding when it is due again is counted as missed rather
+ * than queued twice. Start times are spread randomly over the first interval
+ * so plans with the same interval do not all hit the bus at once.
+ * <p>
+ * The read of each data identity is created once with its plan and queued
+ * again every cycle, with callbacks instead of a new future. Together with
+ * a listener that reuses its responses or reads frames, see
+ * {@link AbstractPollListener}, a warmed up poll does not allocate per read.
+ * <p>
+ * The same timer also drives the broadcast time synchronisation of buses,
+ * see {@link #scheduleTimeSync}.
+ */
+public class Dlt645PollScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645PollScheduler.class);
+
+    private final ScheduledExecutorService timer;
+    private final Random random = new Random(System.nanoTime());
+
+    /**
+     * Constructs a scheduler with its own timer thread
+     */
+    public Dlt645PollScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Dlt645 Poll Scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        timer = executor;
+    }
+
+    /**
+     * Schedules the periodic read of a list of data identities from a meter
+     *
+     * @param master         Master of the bus the meter is connected to
+     * @param unitId         Meter address (6 bytes, as sent on the wire)
+     * @param dataIdentities Data identities to read each cycle
+     * @param intervalMillis Poll interval in milliseconds
+     * @param priority       Priority class of the reads
+     * @param listener       Listener for the results, may be null
+     * @return The scheduled plan
+     */
+    public PollPlan schedule(AbstractDlt645Master master, byte[] unitId, List<byte[]> dataIdentities, long intervalMillis, PollPriority priority, AbstractPollListener listener) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + intervalMillis);
+        }
+        final PollPlan plan = new PollPlan(master, unitId, dataIdentities, intervalMillis, priority, listener);
+        final PlannedRead[] reads = new PlannedRead[plan.getDataIdentities().size()];
+        for (int i = 0; i < reads.length; i++) {
+            reads[i] = new PlannedRead(plan, i);
+        }
+        long initialDelay;
+        synchronized (random) {
+            initialDelay = (long)(random.nextDouble() * intervalMillis);
+        }
+        ScheduledFuture<?> schedule = timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                release(plan, reads);
+            }
+        }, initialDelay, intervalMillis, TimeUnit.MILLISECONDS);
+        plan.setSchedule(schedule);
+        return plan;
+    }
+
+    /**
+     * Schedules a broadcast time synchronisation on each of a set of buses.
+     * <p>
+     * One frame per bus sets every meter on it. The broadcast takes its turn
+     * on the bus like a read, so it never collides with polling, and the
+     * buses are started at even steps over the spread rather than all at
+     * once, which keeps the load on shared gateways and on the timer thread
+     * flat.
+     *
+     * @param masters        Masters of the buses to synchronise
+     * @param intervalMillis Interval between synchronisations of a bus in milliseconds
+     * @param spreadMillis   Period over which the buses are spread, at most one interval
+     * @param priority       Priority class of the broadcasts
+     * @return The scheduled plans, one per bus
+     */
+    public List<TimeSyncPlan> scheduleTimeSync(List<? extends AbstractDlt645Master> masters, long intervalMillis, long spreadMillis, PollPriority priority) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + intervalMillis);
+        }
+        long spread = Math.max(0, Math.min(spreadMillis, intervalMillis));
+        long start;
+        synchronized (random) {
+            start = (long)(random.nextDouble() * (intervalMillis - spread));
+        }
+        List<TimeSyncPlan> plans = new ArrayList<TimeSyncPlan>(masters.size());
+        for (int i = 0; i < masters.size(); i++) {
+            final TimeSyncPlan plan = new TimeSyncPlan(masters.get(i), intervalMillis, priority);
+            ScheduledFuture<?> schedule = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    release(plan);
+                }
+            }, start + spread * i / masters.size(), intervalMillis, TimeUnit.MILLISECONDS);
+            plan.setSchedule(schedule);
+            plans.add(plan);
+        }
+        return plans;
+    }
+
+    /**
+     * Stops polling a plan. Reads already queued on the bus are still executed.
+     *
+     * @param plan Plan to cancel
+     */
+    public void cancel(PollPlan plan) {
+        ScheduledFuture<?> schedule = plan.getSchedule();
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the synchronisation of a bus. A broadcast already queued is still sent.
+     *
+     * @param plan Plan to cancel
+     */
+    public void cancel(TimeSyncPlan plan) {
+        ScheduledFuture<?> schedule = plan.getSchedule();
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the timer thread and with it all plans
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Queues one cycle of reads of a plan on its bus
+     *
+     * @param plan  Plan that is due
+     * @param reads Reads of the plan
+     */
+    private void release(PollPlan plan, PlannedRead[] reads) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plan.getIntervalMillis());
+        for (PlannedRead read : reads) {
+            if (!read.outstanding.compareAndSet(false, true)) {
+                plan.missed();
+                notifyMissed(plan, read.dataIdentity);
+                continue;
+            }
+            // The read is reused every cycle, it is only queued again once
+            // the previous read of the same data identity has completed
+            plan.getMaster().resubmit(read.pending, deadline);
+        }
+    }
+
+    /**
+     * Queues the broadcast of a time synchronisation plan on its bus
+     *
+     * @param plan Plan that is due
+     */
+    private void release(final TimeSyncPlan plan) {
+        final AtomicBoolean outstanding = plan.getOutstanding();
+        if (!outstanding.compareAndSet(false, true)) {
+            plan.missed();
+            logger.debug("Time synchronisation of the bus of {} still queued, skipping a cycle", plan.getMaster());
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plan.getIntervalMillis());
+        plan.getMaster().broadcastTimeAsync(plan.getPriority(), deadline)
+                .whenComplete(new BiConsumer<Void, Throwable>() {
+                    @Override
+                    public void accept(Void result, Throwable cause) {
+                        outstanding.set(false);
+                        if (cause == null) {
+                            plan.sent();
+                        }
+                        else {
+                            plan.failed();
+                            logger.warn("Time synchronisation of the bus of {} failed - {}", plan.getMaster(), cause.getMessage());
+                        }
+                    }
+                });
+    }
+
+    private void notifyResult(PollPlan plan, byte[] dataIdentity, ReadResponse response, Throwable cause) {
+        AbstractPollListener listener = plan.getListener();
+        if (listener == null) {
+            return;
+        }
+        try {
+            if (cause == null) {
+                listener.onResponse(plan, dataIdentity, response);
+            }
+            else {
+                listener.onFailure(plan, dataIdentity, cause);
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Poll listener failed", e);
+        }
+    }
+
+    private void notifyMissed(PollPlan plan, byte[] dataIdentity) {
+        AbstractPollListener listener = plan.getListener();
+        if (listener != null) {
+            try {
+                listener.onMissed(plan, dataIdentity);
+            }
+            catch (RuntimeException e) {
+                logger.warn("Poll listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * The read of one data identity of a plan and its callbacks, created
+     * with the plan and queued again every cycle
+     */
+    private class PlannedRead implements Dlt645FrameHandler, Dlt645BusWorker.Callback<ReadResponse> {
+
+        private final PollPlan plan;
+        private final byte[] dataIdentity;
+        private final AtomicBoolean outstanding;
+        private final Dlt645BusWorker.PendingRequest<ReadResponse> pending;
+
+        private PlannedRead(PollPlan plan, int index) {
+            this.plan = plan;
+            dataIdentity = plan.getDataIdentities().get(index);
+            outstanding = plan.getOutstanding(index);
+            AbstractPollListener listener = plan.getListener();
+            boolean frames = listener != null && listener.isReadingFrames();
+            boolean reuse = listener == null || listener.isReusingResponses();
+            pending = Dlt645BusWorker.createRepeatedRead(plan.getRequest(index), plan.getPriority(), frames ? this : null, reuse, this);
+        }
+
+        @Override
+        public void onFrame(Dlt645FrameView frame) {
+            try {
+                plan.getListener().onFrame(plan, dataIdentity, frame);
+            }
+            catch (RuntimeException e) {
+                logger.warn("Poll listener failed", e);
+            }
+        }
+
+        @Override
+        public void onSuccess(ReadResponse response) {
+            outstanding.set(false);
+            plan.completed();
+            if (response != null) {
+                notifyResult(plan, dataIdentity, response, null);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            outstanding.set(false);
+            plan.failed();
+            notifyResult(plan, dataIdentity, null, cause);
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package io.zfunny.j2dlt.dlt645.facade;
 
 import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
 import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
 import io.zfunny.j2dlt.dlt645.io.Dlt645SerialTransaction;
 import io.zfunny.j2dlt.dlt645.net.AbstractSerialConnection;
 import io.zfunny.j2dlt.dlt645.net.SerialConnection;
+import io.zfunny.j2dlt.dlt645.util.Dlt645FrameTrace;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 import io.zfunny.j2dlt.dlt645.util.SerialParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Modbus/Serial Master facade.
@@ -17,8 +27,12 @@ import io.zfunny.j2dlt.dlt645.util.SerialParameters;
  */
 public class Dlt645SerialMaster extends AbstractDlt645Master {
 
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645SerialMaster.class);
+
     private final AbstractSerialConnection connection;
     private final int transDelay;
+    private Dlt645FrameTrace frameTrace;
+    private int frameTraceBusId;
 
     /**
      * Constructs a new master facade instance for communication
@@ -64,10 +78,49 @@ public class Dlt645SerialMaster extends AbstractDlt645Master {
         }
     }
 
+    /**
+     * Constructs a new master facade instance on a given serial connection,
+     * e.g. a port of a {@link io.zfunny.j2dlt.dlt645.net.VirtualMeterBus}
+     *
+     * @param connection Serial connection to use
+     * @param timeout    Receive timeout in milliseconds
+     * @param transDelay The transmission delay to use between frames (milliseconds)
+     */
+    public Dlt645SerialMaster(AbstractSerialConnection connection, int timeout, int transDelay) {
+        this.transDelay = transDelay > -1 ? transDelay : Dlt645.DEFAULT_TRANSMIT_DELAY;
+        this.connection = connection;
+        connection.setTimeout(timeout);
+        this.timeout = timeout;
+    }
+
     public AbstractSerialConnection getConnection() {
         return connection;
     }
 
+    /**
+     * Records every frame sent and received on the bus in a trace, from now
+     * on and after every reconnect
+     *
+     * @param trace Trace to record in, or null to stop recording
+     * @param busId ID of the bus in the trace
+     */
+    public synchronized void setFrameTrace(Dlt645FrameTrace trace, int busId) {
+        frameTrace = trace;
+        frameTraceBusId = busId;
+        if (connection.isOpen()) {
+            connection.getDlt645Transport().setFrameTrace(trace, busId);
+        }
+    }
+
+    /**
+     * Returns the trace frames are recorded in
+     *
+     * @return Trace or null if frames are not recorded
+     */
+    public synchronized Dlt645FrameTrace getFrameTrace() {
+        return frameTrace;
+    }
+
     /**
      * Connects this <tt>ModbusSerialMaster</tt> with the slave.
      *
@@ -77,9 +130,11 @@ public class Dlt645SerialMaster extends AbstractDlt645Master {
     public synchronized void connect() throws Exception {
         if (connection != null && !connection.isOpen()) {
             connection.open();
+            connection.getDlt645Transport().setFrameTrace(frameTrace, frameTraceBusId);
             transaction = connection.getDlt645Transport().createTransaction();
             ((Dlt645SerialTransaction) transaction).setTransDelayMS(transDelay);
             setTransaction(transaction);
+            startBusWorker(String.format("Dlt645 Serial Master [port:%s]", connection.getPortName()), connection);
         }
     }
 
@@ -89,12 +144,131 @@ public class Dlt645SerialMaster extends AbstractDlt645Master {
     @Override
     public synchronized void disconnect() {
         if (connection != null && connection.isOpen()) {
+            stopBusWorker();
             connection.close();
             transaction = null;
             setTransaction(null);
         }
     }
 
+    /**
+     * Finds the addresses of all meters on the bus, blocking until the
+     * search is complete. Polling of the bus carries on during the search.
+     *
+     * @return Addresses found (6 bytes each, as sent on the wire)
+     *
+     * @throws Dlt645Exception If the bus cannot be searched
+     * @see Dlt645MeterDiscovery
+     */
+    public List<byte[]> discoverMeters() throws Dlt645Exception {
+        try {
+            return discoverMetersAsync().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Dlt645Exception("Interrupted searching for meters", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Dlt645Exception) {
+                throw (Dlt645Exception)e.getCause();
+            }
+            throw new Dlt645Exception(String.valueOf(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    /**
+     * Starts a search for the addresses of all meters on the bus with the
+     * default probe timings
+     *
+     * @return Future of the addresses found (6 bytes each, as sent on the wire)
+     * @see Dlt645MeterDiscovery
+     */
+    public CompletableFuture<List<byte[]>> discoverMetersAsync() {
+        return new Dlt645MeterDiscovery().discover(this);
+    }
+
+    /**
+     * Moves a meter to another baud rate, blocking until it has agreed or
+     * refused. From then on the meter is only talked to at the new rate.
+     *
+     * @param unitId   Meter address (6 bytes, as sent on the wire)
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     * @return True if the meter runs at the rate, false if it refused it
+     *
+     * @throws Dlt645Exception If the meter cannot be reached or there is no transaction
+     */
+    public boolean changeBaudRate(byte[] unitId, int baudRate) throws Dlt645Exception {
+        try {
+            return changeBaudRateAsync(unitId, baudRate, PollPriority.NORMAL, 0).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Dlt645Exception("Interrupted changing the baud rate", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Dlt645Exception) {
+                throw (Dlt645Exception)e.getCause();
+            }
+            throw new Dlt645Exception(String.valueOf(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    /**
+     * Queues a change of the baud rate of a meter. The change takes its
+     * turn on the bus like a read.
+     *
+     * @param unitId   Meter address (6 bytes, as sent on the wire)
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     * @param priority Priority class of the change
+     * @param deadline <tt>System.nanoTime()</tt> after which the change is no
+     *                 longer worth making, or 0 for no deadline
+     * @return Future completed with true once the meter runs at the rate, or
+     * false if it refused the rate
+     */
+    public CompletableFuture<Boolean> changeBaudRateAsync(byte[] unitId, int baudRate, PollPriority priority, long deadline) {
+        return submitBaudRateChange(unitId, baudRate, priority, deadline);
+    }
+
+    /**
+     * Moves every meter of a list that can run at a baud rate to it, e.g.
+     * the meters found by {@link #discoverMeters()}. Meters that refuse the
+     * rate or cannot be reached stay at the rate they run at, and the line
+     * is switched between the rates as each meter is polled. Once every
+     * meter has been moved the bus runs at the new rate only.
+     *
+     * @param unitIds  Meter addresses (6 bytes each, as sent on the wire)
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     * @return Addresses of the meters that run at the rate
+     *
+     * @throws Dlt645Exception If there is no transaction
+     */
+    public List<byte[]> changeBaudRate(List<byte[]> unitIds, int baudRate) throws Dlt645Exception {
+        if (!isConnected()) {
+            throw new Dlt645Exception("No transaction created, probably not connected");
+        }
+        List<CompletableFuture<Boolean>> changes = new ArrayList<CompletableFuture<Boolean>>(unitIds.size());
+        for (byte[] unitId : unitIds) {
+            changes.add(changeBaudRateAsync(unitId, baudRate, PollPriority.NORMAL, 0));
+        }
+        List<byte[]> moved = new ArrayList<byte[]>(unitIds.size());
+        for (int i = 0; i < unitIds.size(); i++) {
+            try {
+                if (changes.get(i).get()) {
+                    moved.add(unitIds.get(i));
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Dlt645Exception("Interrupted changing the baud rate", e);
+            }
+            catch (ExecutionException e) {
+                logger.warn("Cannot move meter {} to {} baud - {}", Dlt645Util.toHex(unitIds.get(i)), baudRate, e.getCause().getMessage());
+            }
+        }
+        logger.info("{} of {} meters on {} run at {} baud", moved.size(), unitIds.size(), connection.getPortName(), baudRate);
+        return moved;
+    }
+
     @Override
     public synchronized void setTimeout(int timeout) {
         super.setTimeout(timeout);
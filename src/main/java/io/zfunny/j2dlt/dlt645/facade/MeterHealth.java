@@ -0,0 +1,247 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response history of a single meter as seen by a bus worker.
+ * <p>
+ * The latency is smoothed the way TCP estimates round trip times: an
+ * exponentially weighted mean and mean deviation, from which the timeout is
+ * derived as mean plus four deviations. The same record drives the circuit
+ * breaker that takes a meter off the bus after repeated failures.
+ * <p>
+ * The record is only updated by the I/O thread of the bus, other threads
+ * may read it at any time.
+ */
+public class MeterHealth {
+
+    /**
+     * State of the circuit breaker of a meter
+     */
+    public enum State {
+
+        /**
+         * The meter is polled normally
+         */
+        CLOSED,
+
+        /**
+         * The meter failed too often, its requests fail without being sent
+         */
+        OPEN,
+
+        /**
+         * The off period has passed, the next request is a probe
+         */
+        HALF_OPEN
+    }
+
+    private final long address;
+    private volatile long smoothedLatency;
+    private volatile long latencyDeviation;
+    private volatile long successCount;
+    private volatile long failureCount;
+    private volatile int consecutiveFailures;
+    private volatile int openCount;
+    private volatile long openUntil;
+    private volatile State state = State.CLOSED;
+    private volatile int baudRate;
+    private volatile int refusedBaudRate;
+
+    MeterHealth(long address) {
+        this.address = address;
+    }
+
+    /**
+     * Returns the meter address
+     *
+     * @return Address with the first byte on the wire as the most significant byte
+     */
+    public long getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the smoothed response latency
+     *
+     * @return Latency in milliseconds, 0 before the first response
+     */
+    public long getSmoothedLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(smoothedLatency);
+    }
+
+    /**
+     * Returns the smoothed mean deviation of the response latency
+     *
+     * @return Deviation in milliseconds
+     */
+    public long getLatencyDeviation() {
+        return TimeUnit.NANOSECONDS.toMillis(latencyDeviation);
+    }
+
+    /**
+     * Returns the number of requests that got a response
+     *
+     * @return Successful requests
+     */
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Returns the number of requests that failed after all attempts
+     *
+     * @return Failed requests
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the number of requests failed since the last response
+     *
+     * @return Failures in a row
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Returns the state of the circuit breaker
+     *
+     * @return State
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the rate the meter was moved to by a change of the baud rate
+     *
+     * @return Baud rate, 0 if the meter runs at the rate the bus was opened at
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Returns the lowest rate the meter refused to change to
+     *
+     * @return Baud rate, 0 if the meter has not refused a change
+     */
+    public int getRefusedBaudRate() {
+        return refusedBaudRate;
+    }
+
+    /**
+     * Records the rate the meter now runs at
+     *
+     * @param baudRate Baud rate, 0 for the rate the bus was opened at
+     */
+    void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * Records a rate the meter refused to change to
+     *
+     * @param baudRate Baud rate refused
+     */
+    void recordRefusedBaudRate(int baudRate) {
+        if (refusedBaudRate == 0 || baudRate < refusedBaudRate) {
+            refusedBaudRate = baudRate;
+        }
+    }
+
+    /**
+     * Works out the timeout of an attempt
+     *
+     * @param policy  Policy of the bus
+     * @param attempt Attempt number, starting at 1
+     * @return Timeout in milliseconds
+     */
+    int getTimeout(Dlt645MeterPolicy policy, int attempt) {
+        long timeout;
+        if (successCount == 0) {
+            timeout = policy.getMaxTimeout();
+        }
+        else {
+            timeout = TimeUnit.NANOSECONDS.toMillis(smoothedLatency + 4 * latencyDeviation);
+            timeout = Math.max(policy.getMinTimeout(), timeout) << Math.min(attempt - 1, 16);
+        }
+        return (int)Math.min(timeout, policy.getMaxTimeout());
+    }
+
+    /**
+     * Checks the circuit breaker before a request is sent
+     *
+     * @param now Current <tt>System.nanoTime()</tt>
+     * @return True if the request may be sent
+     */
+    boolean allowRequest(long now) {
+        if (state == State.OPEN) {
+            if (now - openUntil < 0) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the next request only probes whether the meter is back
+     *
+     * @return True if half open
+     */
+    boolean isProbing() {
+        return state == State.HALF_OPEN;
+    }
+
+    /**
+     * Records a response
+     *
+     * @param latency Time from sending the request to the response in nanoseconds
+     */
+    void recordSuccess(long latency) {
+        if (successCount == 0) {
+            smoothedLatency = latency;
+            latencyDeviation = latency / 2;
+        }
+        else {
+            latencyDeviation += (Math.abs(smoothedLatency - latency) - latencyDeviation) / 4;
+            smoothedLatency += (latency - smoothedLatency) / 8;
+        }
+        successCount++;
+        consecutiveFailures = 0;
+        openCount = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a request that failed after all attempts, opening the circuit
+     * if the meter has failed too often
+     *
+     * @param policy Policy of the bus
+     * @param now    Current <tt>System.nanoTime()</tt>
+     * @return True if the circuit was opened
+     */
+    boolean recordFailure(Dlt645MeterPolicy policy, long now) {
+        failureCount++;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN
+                || (policy.getFailureThreshold() > 0 && consecutiveFailures >= policy.getFailureThreshold())) {
+            long period = Math.min((long)policy.getOpenPeriod() << Math.min(openCount, 16), policy.getMaxOpenPeriod());
+            openUntil = now + TimeUnit.MILLISECONDS.toNanos(period);
+            openCount++;
+            state = State.OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%012X %s latency=%dms deviation=%dms ok=%d failed=%d%s", address, state, getSmoothedLatency(), getLatencyDeviation(), successCount, failureCount,
+                baudRate == 0 ? "" : String.format(" baud=%d", baudRate));
+    }
+}
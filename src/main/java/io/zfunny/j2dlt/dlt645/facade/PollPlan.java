@@ -0,0 +1,166 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A meter address and the data identities to read from it at a fixed interval.
+ * <p>
+ * Plans are created by {@link Dlt645PollScheduler#schedule}. Besides the
+ * configuration they carry counters of what happened to their reads.
+ */
+public class PollPlan {
+
+    private final AbstractDlt645Master master;
+    private final byte[] unitId;
+    private final List<byte[]> dataIdentities;
+    private final long intervalMillis;
+    private final PollPriority priority;
+    private final AbstractPollListener listener;
+    private final ReadRequest[] requests;
+    private final AtomicBoolean[] outstanding;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private volatile ScheduledFuture<?> schedule;
+
+    PollPlan(AbstractDlt645Master master, byte[] unitId, List<byte[]> dataIdentities, long intervalMillis, PollPriority priority, AbstractPollListener listener) {
+        this.master = master;
+        this.unitId = unitId.clone();
+        List<byte[]> copy = new ArrayList<byte[]>(dataIdentities.size());
+        for (byte[] di : dataIdentities) {
+            copy.add(di.clone());
+        }
+        this.dataIdentities = Collections.unmodifiableList(copy);
+        this.intervalMillis = intervalMillis;
+        this.priority = priority == null ? PollPriority.NORMAL : priority;
+        this.listener = listener;
+        requests = new ReadRequest[copy.size()];
+        outstanding = new AtomicBoolean[copy.size()];
+        for (int i = 0; i < outstanding.length; i++) {
+            requests[i] = new ReadRequest(copy.get(i));
+            requests[i].setUnitID(this.unitId);
+            outstanding[i] = new AtomicBoolean();
+        }
+    }
+
+    /**
+     * Returns the master of the bus the meter is connected to
+     *
+     * @return Master
+     */
+    public AbstractDlt645Master getMaster() {
+        return master;
+    }
+
+    /**
+     * Returns the meter address
+     *
+     * @return Address as sent on the wire
+     */
+    public byte[] getUnitId() {
+        return unitId.clone();
+    }
+
+    /**
+     * Returns the data identities read each cycle
+     *
+     * @return Unmodifiable list of data identities
+     */
+    public List<byte[]> getDataIdentities() {
+        return dataIdentities;
+    }
+
+    /**
+     * Returns the poll interval
+     *
+     * @return Interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Returns the priority class of the reads
+     *
+     * @return Priority
+     */
+    public PollPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the number of reads that returned a response
+     *
+     * @return Completed reads
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of reads that failed, including those whose deadline passed
+     *
+     * @return Failed reads
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of cycles skipped because the previous read was still outstanding
+     *
+     * @return Missed reads
+     */
+    public long getMissedCount() {
+        return missed.get();
+    }
+
+    /**
+     * Returns true while the plan is scheduled
+     *
+     * @return True if active
+     */
+    public boolean isActive() {
+        ScheduledFuture<?> s = schedule;
+        return s != null && !s.isCancelled();
+    }
+
+    AbstractPollListener getListener() {
+        return listener;
+    }
+
+    ReadRequest getRequest(int index) {
+        return requests[index];
+    }
+
+    AtomicBoolean getOutstanding(int index) {
+        return outstanding[index];
+    }
+
+    void setSchedule(ScheduledFuture<?> schedule) {
+        this.schedule = schedule;
+    }
+
+    ScheduledFuture<?> getSchedule() {
+        return schedule;
+    }
+
+    void completed() {
+        completed.incrementAndGet();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    void missed() {
+        missed.incrementAndGet();
+    }
+}
@@ -0,0 +1,30 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+/**
+ * Priority classes for requests competing for a bus, most valuable first.
+ * <p>
+ * A request is only sent once no request of a higher class is waiting, so
+ * on a saturated bus the lower classes are the ones that miss their deadline.
+ */
+public enum PollPriority {
+
+    /**
+     * Reads that must not be lost, e.g. billing energy registers
+     */
+    CRITICAL,
+
+    /**
+     * Reads with a business value, e.g. demand and event counters
+     */
+    HIGH,
+
+    /**
+     * Default class, used by ad-hoc reads
+     */
+    NORMAL,
+
+    /**
+     * Best effort reads, e.g. instantaneous voltages and currents
+     */
+    LOW
+}
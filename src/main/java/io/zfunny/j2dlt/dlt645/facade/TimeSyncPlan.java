@@ -0,0 +1,117 @@
+package io.zfunny.j2dlt.dlt645.facade;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bus whose meters are set by a broadcast time synchronisation at a fixed interval.
+ * <p>
+ * Plans are created by {@link Dlt645PollScheduler#scheduleTimeSync}. Besides
+ * the configuration they carry counters of what happened to their broadcasts.
+ */
+public class TimeSyncPlan {
+
+    private final AbstractDlt645Master master;
+    private final long intervalMillis;
+    private final PollPriority priority;
+    private final AtomicBoolean outstanding = new AtomicBoolean();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private volatile ScheduledFuture<?> schedule;
+
+    TimeSyncPlan(AbstractDlt645Master master, long intervalMillis, PollPriority priority) {
+        this.master = master;
+        this.intervalMillis = intervalMillis;
+        this.priority = priority == null ? PollPriority.NORMAL : priority;
+    }
+
+    /**
+     * Returns the master of the bus
+     *
+     * @return Master
+     */
+    public AbstractDlt645Master getMaster() {
+        return master;
+    }
+
+    /**
+     * Returns the synchronisation interval
+     *
+     * @return Interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Returns the priority class of the broadcasts
+     *
+     * @return Priority
+     */
+    public PollPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the number of broadcasts sent
+     *
+     * @return Sent broadcasts
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * Returns the number of broadcasts that failed, including those whose deadline passed
+     *
+     * @return Failed broadcasts
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of cycles skipped because the previous broadcast was still queued
+     *
+     * @return Missed broadcasts
+     */
+    public long getMissedCount() {
+        return missed.get();
+    }
+
+    /**
+     * Returns true while the plan is scheduled
+     *
+     * @return True if active
+     */
+    public boolean isActive() {
+        ScheduledFuture<?> s = schedule;
+        return s != null && !s.isCancelled();
+    }
+
+    AtomicBoolean getOutstanding() {
+        return outstanding;
+    }
+
+    void setSchedule(ScheduledFuture<?> schedule) {
+        this.schedule = schedule;
+    }
+
+    ScheduledFuture<?> getSchedule() {
+        return schedule;
+    }
+
+    void sent() {
+        sent.incrementAndGet();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    void missed() {
+        missed.incrementAndGet();
+    }
+}
@@ -5,17 +5,75 @@ import io.zfunny.j2dlt.dlt645.Dlt645IOException;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
 import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.util.Dlt645FrameTrace;
 
 import java.io.IOException;
 
 public abstract class AbstractDlt645Transport {
 
     protected int timeout = Dlt645.DEFAULT_TIMEOUT;
+    protected volatile Dlt645FrameTrace frameTrace;
+    protected volatile int frameTraceBusId;
 
     public void setTimeout(int time) {
         timeout = time;
     }
 
+    /**
+     * Returns the receive timeout
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Records every frame sent and received by this transport in a trace
+     *
+     * @param trace Trace to record in, or null to stop recording
+     * @param busId ID of the bus in the trace
+     */
+    public void setFrameTrace(Dlt645FrameTrace trace, int busId) {
+        frameTraceBusId = busId;
+        frameTrace = trace;
+    }
+
+    /**
+     * Returns the trace frames are recorded in
+     *
+     * @return Trace or null if frames are not recorded
+     */
+    public Dlt645FrameTrace getFrameTrace() {
+        return frameTrace;
+    }
+
+    /**
+     * Records a frame in the trace, if there is one
+     *
+     * @param direction {@link Dlt645FrameTrace#SENT} or {@link Dlt645FrameTrace#RECEIVED}
+     * @param frame     Buffer holding the frame
+     * @param offset    Offset of the frame in the buffer
+     * @param length    Length of the frame
+     */
+    protected void traceFrame(int direction, byte[] frame, int offset, int length) {
+        Dlt645FrameTrace trace = frameTrace;
+        if (trace != null) {
+            trace.record(frameTraceBusId, direction, frame, offset, length);
+        }
+    }
+
+    /**
+     * Returns the last frames of the trace as text, for a failure report
+     *
+     * @param maxFrames Number of frames to return
+     * @return Frames, or an empty string if frames are not recorded
+     */
+    protected String dumpFrameTrace(int maxFrames) {
+        Dlt645FrameTrace trace = frameTrace;
+        return trace == null ? "" : trace.dump(frameTraceBusId, maxFrames);
+    }
+
     public abstract void close() throws IOException;
 
     public abstract Dlt645Transaction createTransaction();
@@ -0,0 +1,149 @@
+package io.zfunny.j2dlt.dlt645.io;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ExceptionResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadSubsequentRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadSubsequentResponse;
+
+import java.util.Arrays;
+
+/**
+ * Matches responses to requests.
+ * <p>
+ * DL/T 645 frames carry no transaction ID, so a response is tied to its
+ * request by the meter address, the function code and, for reads, the data
+ * identity echoed by the meter. A late answer to an earlier request or a
+ * frame from another master on the bus can so be told apart from the
+ * answer that is awaited and dropped without sending the request again.
+ * An address byte of {@link Dlt645#WILDCARD} in a request matches any byte
+ * of the address of the meter that answers.
+ * <p>
+ * Abnormal responses carry no data identity. They are taken as the answer
+ * to any request to the same meter and function, which is right as long as
+ * only one such request is outstanding.
+ * <p>
+ * Frames are compared as sent, with the 0x33 offset still applied, and are
+ * given with the offset of their first start byte.
+ */
+public final class Dlt645Correlation {
+
+    private Dlt645Correlation() {}
+
+    /**
+     * Checks a decoded response against a request
+     *
+     * @param request  Request sent
+     * @param response Response received
+     * @return True if the response answers the request
+     */
+    public static boolean isResponseTo(Dlt645Request request, Dlt645Response response) {
+        if (request == null || response == null) {
+            return false;
+        }
+        if (!sameMeter(request.getUnitID(), 0, response.getUnitID(), 0)
+                || ((request.getFunctionCode() ^ response.getFunctionCode()) & Dlt645.FUNCTION_CODE_MASK) != 0) {
+            return false;
+        }
+        if (!request.isHeadless() && !response.isHeadless() && request.getTransactionID() != response.getTransactionID()) {
+            return false;
+        }
+        if (response instanceof ExceptionResponse) {
+            return true;
+        }
+        if (request instanceof ReadSubsequentRequest && response instanceof ReadSubsequentResponse) {
+            ReadSubsequentRequest subsequent = (ReadSubsequentRequest)request;
+            return ((ReadSubsequentResponse)response).getSequence() == subsequent.getSequence()
+                    && Arrays.equals(subsequent.getDataIdentity(), ((ReadResponse)response).getDataIdentity());
+        }
+        if (request instanceof ReadRequest && response instanceof ReadResponse) {
+            return Arrays.equals(((ReadRequest)request).getDataIdentity(), ((ReadResponse)response).getDataIdentity());
+        }
+        return true;
+    }
+
+    /**
+     * Checks a received frame against the frame of a request
+     *
+     * @param request        Request frame
+     * @param requestOffset  Offset of the first start byte of the request
+     * @param response       Response frame
+     * @param responseOffset Offset of the first start byte of the response
+     * @return True if the response answers the request
+     */
+    public static boolean isResponseTo(byte[] request, int requestOffset, byte[] response, int responseOffset) {
+        int controlCode = response[responseOffset + Dlt645FrameDecoder.CONTROL_OFFSET] & 0xFF;
+        if ((controlCode & Dlt645.RESPONSE_FLAG) == 0 || !sameMeterAndFunction(request, requestOffset, response, responseOffset)) {
+            return false;
+        }
+        if ((controlCode & Dlt645.ABNORMAL_RESPONSE_FLAG) != 0 || !hasDataIdentity(request, requestOffset)) {
+            return true;
+        }
+        return (response[responseOffset + Dlt645FrameDecoder.LENGTH_OFFSET] & 0xFF) >= 4
+                && sameDataIdentity(request, requestOffset, response, responseOffset);
+    }
+
+    /**
+     * Checks whether a response could answer either of two request frames,
+     * in which case they must not be outstanding at the same time
+     *
+     * @param a       First request frame
+     * @param aOffset Offset of the first start byte of the first request
+     * @param b       Second request frame
+     * @param bOffset Offset of the first start byte of the second request
+     * @return True if the requests cannot be told apart by their responses
+     */
+    public static boolean isSameKey(byte[] a, int aOffset, byte[] b, int bOffset) {
+        if (!sameMeterAndFunction(a, aOffset, b, bOffset)) {
+            return false;
+        }
+        return !hasDataIdentity(a, aOffset) || sameDataIdentity(a, aOffset, b, bOffset);
+    }
+
+    /**
+     * Returns true if the response to a request frame echoes its data identity
+     *
+     * @param request Request frame
+     * @param offset  Offset of the first start byte
+     * @return True for reads with a data identity
+     */
+    public static boolean hasDataIdentity(byte[] request, int offset) {
+        int functionCode = request[offset + Dlt645FrameDecoder.CONTROL_OFFSET] & Dlt645.FUNCTION_CODE_MASK;
+        return (functionCode == Dlt645.READ_DATA || functionCode == Dlt645.READ_SUB_DATA)
+                && (request[offset + Dlt645FrameDecoder.LENGTH_OFFSET] & 0xFF) >= 4;
+    }
+
+    private static boolean sameMeterAndFunction(byte[] a, int aOffset, byte[] b, int bOffset) {
+        return sameMeter(a, aOffset + 1, b, bOffset + 1)
+                && ((a[aOffset + Dlt645FrameDecoder.CONTROL_OFFSET] ^ b[bOffset + Dlt645FrameDecoder.CONTROL_OFFSET]) & Dlt645.FUNCTION_CODE_MASK) == 0;
+    }
+
+    /**
+     * Compares two addresses, a wildcard byte on either side matches any byte
+     */
+    private static boolean sameMeter(byte[] a, int aOffset, byte[] b, int bOffset) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        for (int i = 0; i < 6; i++) {
+            byte x = a[aOffset + i];
+            byte y = b[bOffset + i];
+            if (x != y && x != Dlt645.WILDCARD && y != Dlt645.WILDCARD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameDataIdentity(byte[] a, int aOffset, byte[] b, int bOffset) {
+        for (int i = Dlt645FrameDecoder.DATA_OFFSET; i < Dlt645FrameDecoder.DATA_OFFSET + 4; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
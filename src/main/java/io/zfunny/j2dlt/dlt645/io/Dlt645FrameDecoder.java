@@ -0,0 +1,295 @@
+package io.zfunny.j2dlt.dlt645.io;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder for DL/T 645 frames.
+ * <p>
+ * Bytes can be fed in chunks of any size as they arrive from a channel. The
+ * decoder skips wake-up bytes and line noise until it finds
+ * <tt>0x68 A0..A5 0x68</tt>, then collects the control code, length, data,
+ * checksum and end byte. Frames with a bad checksum or end byte are dropped
+ * and the bytes following their first start byte are rescanned, so a frame
+ * that starts inside the rubbish is not lost.
+ * <p>
+ * The completed frame is held in an internal buffer that starts at the first
+ * start byte and ends with the end byte. It stays valid until the next call
+ * to one of the <tt>decode</tt> methods. Instances are not thread safe.
+ */
+public class Dlt645FrameDecoder {
+
+    /**
+     * Offset of the control code within a frame
+     */
+    public static final int CONTROL_OFFSET = 8;
+
+    /**
+     * Offset of the data length within a frame
+     */
+    public static final int LENGTH_OFFSET = 9;
+
+    /**
+     * Offset of the first data byte within a frame
+     */
+    public static final int DATA_OFFSET = 10;
+
+    /**
+     * Longest possible frame - header, 255 data bytes, checksum and end byte
+     */
+    public static final int MAX_FRAME_LENGTH = DATA_OFFSET + 255 + 2;
+
+    private static final int STATE_SYNC = 0;
+    private static final int STATE_ADDRESS = 1;
+    private static final int STATE_SECOND_START = 2;
+    private static final int STATE_CONTROL = 3;
+    private static final int STATE_LENGTH = 4;
+    private static final int STATE_DATA = 5;
+    private static final int STATE_CS = 6;
+    private static final int STATE_END = 7;
+
+    private final byte[] frame = new byte[MAX_FRAME_LENGTH];
+    private final byte[] replay = new byte[MAX_FRAME_LENGTH * 2];
+    private int replayPos;
+    private int replayLen;
+    private int state = STATE_SYNC;
+    private int count;
+    private int dataLength;
+    private int cs;
+    private int frameLength;
+    private long errorCount;
+
+    /**
+     * Consumes bytes from the buffer until a frame is complete or the buffer
+     * is exhausted. On return the buffer position is just after the last byte
+     * consumed, so any bytes of the next frame remain in the buffer.
+     *
+     * @param in Buffer in read mode
+     * @return True if a complete frame is available
+     */
+    public boolean decode(ByteBuffer in) {
+        frameLength = 0;
+        while (true) {
+            byte b;
+            if (replayPos < replayLen) {
+                b = replay[replayPos++];
+            }
+            else if (in.hasRemaining()) {
+                b = in.get();
+            }
+            else {
+                return false;
+            }
+            if (step(b)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Consumes bytes from the array until a frame is complete or the bytes
+     * are exhausted.
+     *
+     * @param in  Bytes received
+     * @param off Offset of the first byte
+     * @param len Number of bytes available
+     * @return Number of bytes consumed, check {@link #hasFrame()} for a result
+     */
+    public int decode(byte[] in, int off, int len) {
+        frameLength = 0;
+        int pos = off;
+        int end = off + len;
+        while (true) {
+            byte b;
+            if (replayPos < replayLen) {
+                b = replay[replayPos++];
+            }
+            else if (pos < end) {
+                b = in[pos++];
+            }
+            else {
+                return pos - off;
+            }
+            if (step(b)) {
+                return pos - off;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the last call to <tt>decode</tt> completed a frame
+     *
+     * @return True if a frame is available
+     */
+    public boolean hasFrame() {
+        return frameLength > 0;
+    }
+
+    /**
+     * Returns the buffer holding the last complete frame
+     *
+     * @return Frame buffer, starting with the first start byte
+     */
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the length of the last complete frame including checksum and end byte
+     *
+     * @return Frame length or 0 if no frame is available
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns the control code of the last complete frame
+     *
+     * @return Control code
+     */
+    public int getControlCode() {
+        return frame[CONTROL_OFFSET] & 0xFF;
+    }
+
+    /**
+     * Returns the address of the last complete frame as a number, with the
+     * first address byte on the wire as the most significant byte
+     *
+     * @return Address
+     */
+    public long getAddress() {
+        long address = 0;
+        for (int i = 1; i <= 6; i++) {
+            address = (address << 8) | (frame[i] & 0xFFL);
+        }
+        return address;
+    }
+
+    /**
+     * Returns true if a frame has been started but is not complete yet
+     *
+     * @return True if part of a frame is buffered
+     */
+    public boolean isInFrame() {
+        return state != STATE_SYNC || replayPos < replayLen;
+    }
+
+    /**
+     * Returns the number of frames dropped because of checksum or framing errors
+     *
+     * @return Error count
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Discards any partially received frame
+     */
+    public void reset() {
+        state = STATE_SYNC;
+        count = 0;
+        replayPos = 0;
+        replayLen = 0;
+        frameLength = 0;
+    }
+
+    /**
+     * Advances the state machine by one byte
+     *
+     * @param b Byte received
+     * @return True if the byte completed a frame
+     */
+    private boolean step(byte b) {
+        switch (state) {
+            case STATE_SYNC:
+                if (b == Dlt645.startByte) {
+                    frame[0] = b;
+                    count = 1;
+                    cs = b;
+                    state = STATE_ADDRESS;
+                }
+                return false;
+
+            case STATE_ADDRESS:
+                frame[count++] = b;
+                cs += b;
+                if (count == 7) {
+                    state = STATE_SECOND_START;
+                }
+                return false;
+
+            case STATE_SECOND_START:
+                frame[count++] = b;
+                cs += b;
+                if (b == Dlt645.startByte) {
+                    state = STATE_CONTROL;
+                }
+                else {
+                    resync();
+                }
+                return false;
+
+            case STATE_CONTROL:
+                frame[count++] = b;
+                cs += b;
+                state = STATE_LENGTH;
+                return false;
+
+            case STATE_LENGTH:
+                frame[count++] = b;
+                cs += b;
+                dataLength = b & 0xFF;
+                state = dataLength == 0 ? STATE_CS : STATE_DATA;
+                return false;
+
+            case STATE_DATA:
+                frame[count++] = b;
+                cs += b;
+                if (count == DATA_OFFSET + dataLength) {
+                    state = STATE_CS;
+                }
+                return false;
+
+            case STATE_CS:
+                frame[count++] = b;
+                if ((cs & 0xFF) == (b & 0xFF)) {
+                    state = STATE_END;
+                }
+                else {
+                    resync();
+                }
+                return false;
+
+            default:
+                frame[count++] = b;
+                if (b == Dlt645.endByte) {
+                    frameLength = count;
+                    state = STATE_SYNC;
+                    count = 0;
+                    return true;
+                }
+                resync();
+                return false;
+        }
+    }
+
+    /**
+     * Drops the frame being collected and queues every byte after its first
+     * start byte to be scanned again
+     */
+    private void resync() {
+        errorCount++;
+        int pending = replayLen - replayPos;
+        if (pending > 0) {
+            System.arraycopy(replay, replayPos, replay, count - 1, pending);
+        }
+        System.arraycopy(frame, 1, replay, 0, count - 1);
+        replayLen = count - 1 + pending;
+        replayPos = 0;
+        state = STATE_SYNC;
+        count = 0;
+    }
+}
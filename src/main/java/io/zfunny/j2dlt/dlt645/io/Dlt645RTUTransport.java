@@ -2,16 +2,20 @@ package io.zfunny.j2dlt.dlt645.io;
 
 import io.zfunny.j2dlt.dlt645.Dlt645;
 import io.zfunny.j2dlt.dlt645.Dlt645IOException;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Message;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
 import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.util.Dlt645FrameTrace;
 import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that implements the Dlt645RTU transport flavor.
@@ -26,84 +30,65 @@ public class Dlt645RTUTransport extends Dlt645SerialTransport {
 
     private static final Logger logger = LoggerFactory.getLogger(Dlt645RTUTransport.class);
 
-    private final byte[] inBuffer = new byte[Dlt645.MAX_MESSAGE_LENGTH];
-    private final BytesInputStream byteInputStream = new BytesInputStream(inBuffer); // to read message from
-    private final BytesOutputStream byteInputOutputStream = new BytesOutputStream(inBuffer); // to buffer message to
-    private final BytesOutputStream byteOutputStream = new BytesOutputStream(Dlt645.MAX_MESSAGE_LENGTH); // write frames
+    private static final int TRACE_DUMP_FRAMES = 16;
+
+    private final Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+    private final byte[] receiveBuffer = new byte[Dlt645FrameDecoder.MAX_FRAME_LENGTH];
+    private int receivePos;
+    private int receiveLen;
+    private final BytesInputStream byteInputStream = new BytesInputStream(decoder.getFrame()); // to read message from
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(Dlt645.MAX_MESSAGE_LENGTH + Dlt645.wakeBytes.length + 2); // write frames
     private byte[] lastRequest = null;
 
     /**
-     * Read the data for a request of a given fixed size
+     * Feeds received bytes to the frame decoder until it has a complete frame.
+     * <p>
+     * Whatever the port has buffered is read in one call, so a frame usually
+     * arrives in a handful of reads rather than one read per byte. Bytes that
+     * follow a complete frame are kept for the next call.
      *
-     * @param byteCount Byte count excluding the 2 byte CRC
-     * @param out       Output buffer to populate
-     * @throws IOException If data cannot be read from the port
+     * @param deadline System.nanoTime value after which to give up, 0 to wait forever
+     * @throws IOException If the port times out or fails
      */
-    private void readRequestData(int byteCount, BytesOutputStream out) throws IOException {
-        byteCount += 2;
-        byte[] inpBuf = new byte[byteCount];
-        readBytes(inpBuf, byteCount);
-        out.write(inpBuf, 0, byteCount);
+    private void readFrame(long deadline) throws IOException {
+        while (true) {
+            if (receivePos == receiveLen) {
+                receiveLen = readAvailableBytes(receiveBuffer);
+                receivePos = 0;
+            }
+            receivePos += decoder.decode(receiveBuffer, receivePos, receiveLen - receivePos);
+            if (decoder.hasFrame()) {
+                traceFrame(Dlt645FrameTrace.RECEIVED, decoder.getFrame(), 0, decoder.getFrameLength());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received: {}", Dlt645Util.toHex(decoder.getFrame(), 0, decoder.getFrameLength()));
+                }
+                return;
+            }
+            if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                throw new IOException("Timeout waiting for a valid frame");
+            }
+        }
     }
 
     /**
-     * getRequest - Read a request, after the unit and function code
-     *
-     * @param function - Dlt645 function code
-     * @param out      - Byte stream buffer to hold actual message
+     * Logs the frames that led up to a failure, if they are recorded
      */
-    private void getRequest(int function, BytesOutputStream out) throws IOException {
-        int byteCount;
-        byte[] inpBuf = new byte[256];
-        try {
-            if ((function & 0x80) == 0) {
-                switch (function) {
-                    case Dlt645.READ_DATA:
-                        //FIXME
-                        break;
-                    default:
-                        throw new IOException(String.format("getResponse unrecognised function code [%s]", function));
-                }
-            }
-        }
-        catch (IOException e) {
-            throw new IOException("getResponse serial port exception");
+    private void logFrameTrace() {
+        if (frameTrace != null && logger.isDebugEnabled()) {
+            logger.debug("Last frames on bus {}:\n{}", frameTraceBusId, dumpFrameTrace(TRACE_DUMP_FRAMES));
         }
     }
 
     /**
-     * getResponse - Read a <tt>Dlt645Response</tt> from a slave.
+     * Drops any buffered input, including a partly decoded frame
      *
-     * @param function The function code of the request
-     * @param out      The output buffer to put the result
-     * @throws IOException If data cannot be read from the port
+     * @throws IOException If the port cannot be read
      */
-    private void getResponse(int function, BytesOutputStream out) throws IOException {
-        byte[] inpBuf = new byte[256];
-        try {
-            if ((function & 0x80) == 0) {
-                switch (function) {
-                    case Dlt645.READ_DATA:
-                        // Read the data payload byte count. There will be two
-                        // additional CRC bytes afterwards.
-                        int cnt = readByte();
-                        out.write(cnt);
-                        readRequestData(cnt, out);
-                        break;
-                    default:
-                        throw new IOException(String.format("getResponse unrecognised function code [%s]", function));
-
-                }
-            }
-            else {
-                // read the exception code, plus two CRC bytes.
-                readRequestData(1, out);
-
-            }
-        }
-        catch (IOException e) {
-            throw new IOException(String.format("getResponse serial port exception - %s", e.getMessage()));
-        }
+    private void discardInput() throws IOException {
+        clearInput();
+        decoder.reset();
+        receivePos = 0;
+        receiveLen = 0;
     }
 
     /**
@@ -115,33 +100,40 @@ public class Dlt645RTUTransport extends Dlt645SerialTransport {
     @Override
     protected void writeMessageOut(Dlt645Message msg) throws Dlt645IOException {
         try {
-            int len;
-            synchronized (byteOutputStream) {
+            synchronized (sendBuffer) {
                 // first clear any input from the receive buffer to prepare
-                // for the reply since RTU doesn't have message delimiters
-                clearInput();
-                // write message to byte out
-                byteOutputStream.reset();
+                // for the reply, so stale bytes cannot be mistaken for it
+                discardInput();
                 msg.setHeadless();
-                msg.writeTo(byteOutputStream);
-                len = byteOutputStream.size();
-                int cs = Dlt645Util.calculateCS(byteOutputStream.getBuffer(), 4, len - 1);
-                byteOutputStream.writeByte(cs);
-                byteOutputStream.writeByte(0x16);
+                byte[] frame;
+                int len;
+                if (msg instanceof Dlt645Request) {
+                    // Requests keep their encoded frame, so a poll that is
+                    // repeated every cycle is written without re-encoding
+                    frame = ((Dlt645Request)msg).getFrame();
+                    len = frame.length;
+                    lastRequest = frame;
+                }
+                else {
+                    sendBuffer.clear();
+                    msg.writeTo(sendBuffer);
+                    sendBuffer.put((byte)Dlt645Util.calculateCS(sendBuffer, Dlt645.wakeBytes.length, sendBuffer.position() - 1));
+                    sendBuffer.put(Dlt645.endByte);
+                    frame = sendBuffer.array();
+                    len = sendBuffer.position();
+                }
 
-                System.out.println(Dlt645Util.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
                 // write message
-                writeBytes(byteOutputStream.getBuffer(), byteOutputStream.size());
+                writeBytes(frame, len);
+                traceFrame(Dlt645FrameTrace.SENT, frame, 0, len);
                 if (logger.isDebugEnabled()) {
-                    logger.debug("Sent: {}", Dlt645Util.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
+                    logger.debug("Sent: {}", Dlt645Util.toHex(frame, 0, len));
                 }
                 // clears out the echoed message
                 // for RS485
                 if (echo) {
-                    readEcho(len + 2);
+                    readEcho(len);
                 }
-                lastRequest = new byte[len];
-                System.arraycopy(byteOutputStream.getBuffer(), 0, lastRequest, 0, len);
             }
         }
         catch (IOException ex) {
@@ -151,125 +143,106 @@ public class Dlt645RTUTransport extends Dlt645SerialTransport {
 
     @Override
     protected Dlt645Request readRequestIn(AbstractDlt645Listener listener) throws Dlt645IOException {
-        Dlt645Request request = null;
-
         try {
-            while (request == null) {
-                synchronized (byteInputStream) {
-                    int uid = readByte();
-
-                    byteInputOutputStream.reset();
-                    byteInputOutputStream.writeByte(uid);
-
-                    if (listener.getProcessImage(uid) != null) {
-                        // Read a proper request
-
-                        int fc = readByte();
-                        byteInputOutputStream.writeByte(fc);
-
-                        // create request to acquire length of message
-                        request = Dlt645Request.createDlt645Request(fc, 0);
-                        request.setHeadless();
-
-                        /*
-                         * With Dlt645 RTU, there is no end frame. Either we
-                         * assume the message is complete as is or we must do
-                         * function specific processing to know the correct
-                         * length. To avoid moving frame timing to the serial
-                         * input functions, we set the timeout and to message
-                         * specific parsing to read a response.
-                         */
-                        getRequest(fc, byteInputOutputStream);
-                        int dlength = byteInputOutputStream.size() - 2; // less the crc
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Request: {}", Dlt645Util.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
-                        }
-
-                        byteInputStream.reset(inBuffer, dlength);
-
-                        // check CRC
-                        //int[] crc = Dlt645Util.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        int[] crc = {0,0}; // FIXME
-                        if (Dlt645Util.unsignedByteToInt(inBuffer[dlength]) != crc[0] || Dlt645Util.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("CRC should be {}, {}", Integer.toHexString(crc[0]), Integer.toHexString(crc[1]));
-                            }
-
-                            // Drain the input in case the frame was misread and more
-                            // was to follow.
-                            clearInput();
-                            throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + Dlt645Util.toHex(byteInputStream.getBuffer(), 0, dlength));
-                        }
-
-                        // read request
-                        byteInputStream.reset(inBuffer, dlength);
-                        request.readFrom(byteInputStream);
-
-                        return request;
-
+            synchronized (byteInputStream) {
+                while (true) {
+                    readFrame(0);
+                    int controlCode = decoder.getControlCode();
+                    if ((controlCode & Dlt645.RESPONSE_FLAG) != 0) {
+                        // Another slave answering on the same bus
+                        continue;
                     }
-                    else {
-                        // This message is not for us, read and wait for the 3.5t delay
-
-                        // Wait for max 1.5t for data to be available
-                        while (true) {
-                            boolean bytesAvailable = availableBytes() > 0;
-                            if (!bytesAvailable) {
-                                // Sleep the 1.5t to see if there will be more data
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("Waiting for {} microsec", getMaxCharDelay());
-                                }
-                                bytesAvailable = spinUntilBytesAvailable(getMaxCharDelay());
-                            }
-
-                            if (bytesAvailable) {
-                                // Read the available data
-                                while (availableBytes() > 0) {
-                                    byteInputOutputStream.writeByte(readByte());
-                                }
-                            }
-                            else {
-                                // Transition to wait for the 3.5t interval
-                                break;
-                            }
-                        }
-
-                        // Wait for 2t to complete the 3.5t wait
-                        // Is there is data available the interval was not respected, we should discard the message
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Waiting for {} microsec", getCharIntervalMicro(2));
-                        }
-                        if (spinUntilBytesAvailable(getCharIntervalMicro(2))) {
-                            // Discard the message
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("Discarding message (More than 1.5t between characters!) - {}", Dlt645Util.toHex(byteInputOutputStream.getBuffer(), 0, byteInputOutputStream.size()));
-                            }
-                        }
-                        else {
-                            // This message is complete
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("Read message not meant for us: {}", Dlt645Util.toHex(byteInputOutputStream.getBuffer(), 0, byteInputOutputStream.size()));
-                            }
-                        }
+                    if (listener.getProcessImage(decoder.getAddress()) == null) {
+                        logger.debug("Read message not meant for us");
+                        continue;
+                    }
+                    Dlt645Request request = Dlt645Request.createDlt645Request(controlCode, 0);
+                    if (request == null) {
+                        logger.debug("Ignoring request with unsupported control code {}", String.format("%02X", controlCode));
+                        continue;
                     }
+                    request.setHeadless();
+                    byteInputStream.reset(decoder.getFrame(), decoder.getFrameLength());
+                    request.readFrom(byteInputStream);
+                    return request;
                 }
             }
-
-            // We will never get here
-            return null;
         }
         catch (IOException ex) {
             // An exception mostly means there is no request. The master should
             // retry the request.
 
             if (logger.isDebugEnabled()) {
-                logger.debug("Failed to read response! {}", ex.getMessage());
+                logger.debug("Failed to read request! {}", ex.getMessage());
             }
 
             return null;
         }
     }
 
+    /**
+     * Reads every response to a request that several meters may answer at
+     * once, e.g. a read of the address with wildcard bytes.
+     * <p>
+     * The first response is awaited for the timeout of the transport. After
+     * each response the line is watched for another one until it has been
+     * quiet for the given time. Answers that overlapped on the line arrive as
+     * frames with a bad checksum or as a frame cut short; these are counted
+     * rather than decoded.
+     *
+     * @param responses List to add the decoded responses to
+     * @param quietTime Silence after a response that ends the read, in milliseconds
+     * @return Number of garbled frames seen, 0 if every answer arrived intact
+     * @throws Dlt645IOException If the port is not open
+     */
+    public int readResponses(List<Dlt645Response> responses, int quietTime) throws Dlt645IOException {
+        open();
+        int savedTimeout = timeout;
+        synchronized (byteInputStream) {
+            long errors = decoder.getErrorCount();
+            int malformed = 0;
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (true) {
+                    try {
+                        readFrame(deadline);
+                    }
+                    catch (IOException e) {
+                        // The line has gone quiet
+                        break;
+                    }
+                    int controlCode = decoder.getControlCode();
+                    if ((controlCode & Dlt645.RESPONSE_FLAG) == 0) {
+                        continue;
+                    }
+                    Dlt645Response response = Dlt645Response.createDlt645Response(controlCode);
+                    response.setHeadless();
+                    byteInputStream.reset(decoder.getFrame(), decoder.getFrameLength());
+                    try {
+                        response.readFrom(byteInputStream);
+                        responses.add(response);
+                    }
+                    catch (IOException e) {
+                        logger.debug("Cannot decode response {} - {}", Dlt645Util.toHex(decoder.getFrame(), 0, decoder.getFrameLength()), e.getMessage());
+                        malformed++;
+                    }
+                    if (timeout != quietTime) {
+                        setTimeout(quietTime);
+                    }
+                    deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(quietTime);
+                }
+                int garbled = (int)(decoder.getErrorCount() - errors) + malformed + (decoder.isInFrame() ? 1 : 0);
+                decoder.reset();
+                return garbled;
+            }
+            finally {
+                if (timeout != savedTimeout) {
+                    setTimeout(savedTimeout);
+                }
+            }
+        }
+    }
+
     /**
      * readResponse - Read the bytes for the response from the slave.
      *
@@ -279,64 +252,63 @@ public class Dlt645RTUTransport extends Dlt645SerialTransport {
      */
     @Override
     protected Dlt645Response readResponseIn() throws Dlt645IOException {
-        boolean done;
-        Dlt645Response response;
-        int dlength;
-
         try {
-            do {
-                // 1. read to function code, create request and read function
-                // specific bytes
-                synchronized (byteInputStream) {
-                    byte[] wakebytes = new byte[4];
-                    readBytes(wakebytes, 4);
-
-                    byte[] firstBytes = new byte[1 + 6 + 1];
-                    readBytes(firstBytes, 8);
-
-                    int fc = readByte();
-                    byteInputOutputStream.reset();
-                    byteInputOutputStream.write(firstBytes);
-                    byteInputOutputStream.writeByte(fc);
-
-                    // create response to acquire length of message
-                    response = Dlt645Response.createDlt645Response(fc);
+            synchronized (byteInputStream) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (true) {
+                    readFrame(deadline);
+                    int controlCode = decoder.getControlCode();
+                    if ((controlCode & Dlt645.RESPONSE_FLAG) == 0) {
+                        // Our own request echoed back or another master on the bus
+                        continue;
+                    }
+                    Dlt645Response response = Dlt645Response.createDlt645Response(controlCode);
                     response.setHeadless();
+                    byteInputStream.reset(decoder.getFrame(), decoder.getFrameLength());
+                    response.readFrom(byteInputStream);
+                    return response;
+                }
+            }
+        }
+        catch (IOException ex) {
+            logFrameTrace();
+            throw new Dlt645IOException("I/O exception - failed to read response for request [%s] - %s", Dlt645Util.toHex(lastRequest), ex.getMessage());
+        }
+    }
 
-                        /*
-                         * With Dlt645 RTU, there is no end frame. Either we
-                         * assume the message is complete as is or we must do
-                         * function specific processing to know the correct
-                         * length. To avoid moving frame timing to the serial
-                         * input functions, we set the timeout and to message
-                         * specific parsing to read a response.
-                         */
-                    getResponse(fc, byteInputOutputStream);
-                    dlength = byteInputOutputStream.size() - 2; // less the crc
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Response: {}", Dlt645Util.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
+    /**
+     * Reads the response to a request frame into a view, without decoding it.
+     * <p>
+     * Frames that do not answer the request, see
+     * {@link Dlt645Correlation#isResponseTo(byte[], int, byte[], int)}, are
+     * dropped. The view is pointed at the frame buffer of the transport and
+     * is only valid until the next read. Transport listeners are not told
+     * about the response, as no response object is created.
+     *
+     * @param request       Frame of the request sent
+     * @param requestOffset Offset of the first start byte of the request
+     * @param view          View to point at the response
+     * @throws Dlt645IOException If no response to the request arrives in time
+     */
+    public void readResponse(byte[] request, int requestOffset, Dlt645FrameView view) throws Dlt645IOException {
+        try {
+            synchronized (byteInputStream) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (true) {
+                    readFrame(deadline);
+                    if (Dlt645Correlation.isResponseTo(request, requestOffset, decoder.getFrame(), 0)) {
+                        view.wrap(decoder.getFrame(), 0, decoder.getFrameLength());
+                        return;
                     }
-                    byteInputStream.reset(inBuffer, dlength);
-
-                    // check CS
-                    int cs = Dlt645Util.calculateCS(inBuffer, 0, dlength -1);
-                    if (cs != Dlt645Util.unsignedByteToInt(inBuffer[dlength])) {
-                        logger.debug("CS should be {}", cs);
-                        throw new IOException("CS Error in received frame: " + dlength + "bytes: " + Dlt645Util.toHex(byteInputStream.getBuffer(), 0, dlength));
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Dropping frame {} that does not answer {}", Dlt645Util.toHex(decoder.getFrame(), 0, decoder.getFrameLength()), Dlt645Util.toHex(request));
                     }
-
-                    // read response
-                    byteInputStream.reset(inBuffer, dlength);
-                    response.readFrom(byteInputStream);
-                    done = true;
                 }
-            } while (!done);
-            return response;
+            }
         }
         catch (IOException ex) {
-            // FIXME: This printout is wrong when reading response from other slave
-            throw new Dlt645IOException("I/O exception - failed to read response for request [%s] - %s", Dlt645Util.toHex(lastRequest), ex.getMessage());
+            logFrameTrace();
+            throw new Dlt645IOException("I/O exception - failed to read response for request [%s] - %s", Dlt645Util.toHex(request), ex.getMessage());
         }
     }
 }
-
@@ -4,12 +4,17 @@ import io.zfunny.j2dlt.dlt645.Dlt645;
 import io.zfunny.j2dlt.dlt645.Dlt645Exception;
 import io.zfunny.j2dlt.dlt645.Dlt645IOException;
 import io.zfunny.j2dlt.dlt645.Dlt645SlaveException;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645FrameView;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
 import io.zfunny.j2dlt.dlt645.msg.ExceptionResponse;
 import io.zfunny.j2dlt.dlt645.net.AbstractSerialConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.List;
+
 public class Dlt645SerialTransaction extends Dlt645Transaction {
 
     private static final Logger logger = LoggerFactory.getLogger(Dlt645SerialTransaction.class);
@@ -62,7 +67,7 @@ public class Dlt645SerialTransaction extends Dlt645Transaction {
 
                 synchronized (this) {
                     transport.writeRequest(request);
-                    response = transport.readResponse();
+                    response = readMatchingResponse();
                     finished = true;
                 }
             } catch (Dlt645IOException e) {
@@ -77,10 +82,107 @@ public class Dlt645SerialTransaction extends Dlt645Transaction {
             throw new Dlt645SlaveException(((ExceptionResponse) response).getExceptionCode());
         }
 
-        if (isCheckingValidity()) {
-            checkValidity();
+        lastTransactionTimestamp = System.nanoTime();
+    }
+
+    /**
+     * Returns true if the transport can hand out response frames, see
+     * {@link #execute(Dlt645FrameView)}
+     *
+     * @return True for an RTU transport
+     */
+    public boolean canReadFrames() {
+        return transport instanceof Dlt645RTUTransport;
+    }
+
+    /**
+     * Executes the request and points a view at the frame of the response
+     * instead of decoding it, see
+     * {@link Dlt645RTUTransport#readResponse(byte[], int, Dlt645FrameView)}.
+     * Attempts are made as by {@link #execute()}, {@link #getResponse()}
+     * returns null afterwards.
+     *
+     * @param view View to point at the response
+     * @throws Dlt645SlaveException If the meter answers with an abnormal response
+     * @throws Dlt645Exception      If no response arrives or the transport cannot read frames
+     */
+    public void execute(Dlt645FrameView view) throws Dlt645Exception {
+        assertExecutable();
+        if (!canReadFrames()) {
+            throw new Dlt645Exception("Transport %s cannot read a response frame", transport.getClass().getSimpleName());
+        }
+        byte[] frame;
+        try {
+            frame = request.getFrame();
+        }
+        catch (IOException e) {
+            throw new Dlt645IOException("Cannot encode request - %s", e.getMessage());
+        }
+
+        int tries = 0;
+        boolean finished = false;
+        do {
+            try {
+                ((Dlt645SerialTransport)transport).waitBetweenFrames(transDelayMS, lastTransactionTimestamp);
+
+                synchronized (this) {
+                    response = null;
+                    transport.writeRequest(request);
+                    ((Dlt645RTUTransport)transport).readResponse(frame, Dlt645.wakeBytes.length, view);
+                    finished = true;
+                }
+            } catch (Dlt645IOException e) {
+                if (++tries >= retries) {
+                    throw e;
+                }
+                logger.debug("Execute try {} error: {}", tries, e.getMessage());
+            }
+        } while (!finished);
+
+        if (view.isAbnormal()) {
+            throw new Dlt645SlaveException(view.getExceptionCode());
+        }
+
+        lastTransactionTimestamp = System.nanoTime();
+    }
+
+    /**
+     * Sends a request that several meters may answer and collects every
+     * answer, see {@link Dlt645RTUTransport#readResponses(List, int)}. The
+     * request is sent once, the first answer is awaited for the timeout of
+     * the transport.
+     *
+     * @param responses List to add the responses to
+     * @param quietTime Silence after a response that ends the read, in milliseconds
+     * @return Number of garbled frames seen, a sign of answers that collided
+     * @throws Dlt645Exception If the request cannot be sent
+     */
+    public int executeAll(List<Dlt645Response> responses, int quietTime) throws Dlt645Exception {
+        assertExecutable();
+        if (!(transport instanceof Dlt645RTUTransport)) {
+            throw new Dlt645Exception("Transport %s cannot read several responses", transport.getClass().getSimpleName());
+        }
+        ((Dlt645SerialTransport)transport).waitBetweenFrames(transDelayMS, lastTransactionTimestamp);
+        int garbled;
+        synchronized (this) {
+            response = null;
+            transport.writeRequest(request);
+            garbled = ((Dlt645RTUTransport)transport).readResponses(responses, quietTime);
+        }
+        lastTransactionTimestamp = System.nanoTime();
+        return garbled;
+    }
+
+    @Override
+    public void send() throws Dlt645Exception {
+        assertExecutable();
+        ((Dlt645SerialTransport)transport).waitBetweenFrames(transDelayMS, lastTransactionTimestamp);
+        synchronized (this) {
+            response = null;
+            transport.writeRequest(request);
         }
 
+        // The meters need the same pause to act on a broadcast as to answer a request
         lastTransactionTimestamp = System.nanoTime();
     }
 }
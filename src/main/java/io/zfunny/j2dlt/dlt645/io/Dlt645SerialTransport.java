@@ -36,6 +36,8 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     private static final String COMM_PORT_IS_NOT_VALID_OR_NOT_OPEN = "Comm port is not valid or not open";
     private AbstractSerialConnection commPort;
     boolean echo = false;
+    private final byte[] singleByte = new byte[1];
+    private byte[] drainBuffer = new byte[Dlt645.MAX_MESSAGE_LENGTH];
     private final Set<AbstractSerialTransportListener> listeners = Collections.synchronizedSet(new HashSet<AbstractSerialTransportListener>());
 
     @Override
@@ -120,7 +122,7 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
         return res;
     }
 
-    private void open() throws Dlt645IOException {
+    void open() throws Dlt645IOException {
         if (commPort != null && !commPort.isOpen()) {
             setTimeout(timeout);
             try {
@@ -162,6 +164,10 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersBeforeRequest() {
+        // Iterating even an empty set costs an iterator per frame
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.beforeRequestRead(commPort);
@@ -170,6 +176,9 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersAfterRequest(Dlt645Request req) {
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.afterRequestRead(commPort, req);
@@ -178,6 +187,9 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersBeforeResponse() {
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.beforeResponseRead(commPort);
@@ -186,6 +198,9 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersAfterResponse(Dlt645Response res) {
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.afterResponseRead(commPort, res);
@@ -194,6 +209,9 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersBeforeWrite(Dlt645Message msg) {
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.beforeMessageWrite(commPort, msg);
@@ -202,6 +220,9 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     private void notifyListenersAfterWrite(Dlt645Message msg) {
+        if (listeners.isEmpty()) {
+            return;
+        }
         synchronized (listeners) {
             for (AbstractSerialTransportListener listener : listeners) {
                 listener.afterMessageWrite(commPort, msg);
@@ -227,10 +248,10 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     protected void readEcho(int len) throws IOException {
-        byte[] echoBuf = new byte[len];
+        byte[] echoBuf = getDrainBuffer(len);
         int echoLen = commPort.readBytes(echoBuf, len);
         if (logger.isDebugEnabled()) {
-            logger.debug("Echo: {}", Dlt645Util.toHex(echoBuf, 0, echoLen));
+            logger.debug("Echo: {}", Dlt645Util.toHex(echoBuf, 0, Math.max(0, echoLen)));
         }
         if (echoLen != len) {
             logger.debug("Error: Transmit echo not received");
@@ -244,13 +265,12 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
 
     protected int readByte() throws IOException {
         if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
+            int cnt = commPort.readBytes(singleByte, 1);
             if (cnt != 1) {
                 throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
             }
             else {
-                return buffer[0] & 0xff;
+                return singleByte[0] & 0xff;
             }
         }
         else {
@@ -258,6 +278,29 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
         }
     }
 
+    /**
+     * Reads whatever the port has received so far with a single call. If
+     * nothing has arrived yet, blocks until the first byte arrives or the
+     * port times out.
+     *
+     * @param buffer Buffer to read into, starting at offset 0
+     * @return Number of bytes read, at least 1
+     * @throws IOException If the port is not open or nothing arrived in time
+     */
+    int readAvailableBytes(byte[] buffer) throws IOException {
+        if (commPort != null && commPort.isOpen()) {
+            int available = commPort.bytesAvailable();
+            int cnt = commPort.readBytes(buffer, available > 0 ? Math.min(available, buffer.length) : 1);
+            if (cnt < 1) {
+                throw new IOException(CANNOT_READ_FROM_SERIAL_PORT + " - timeout");
+            }
+            return cnt;
+        }
+        else {
+            throw new IOException(COMM_PORT_IS_NOT_VALID_OR_NOT_OPEN);
+        }
+    }
+
     void readBytes(byte[] buffer, long bytesToRead) throws IOException {
         if (commPort != null && commPort.isOpen()) {
             int cnt = commPort.readBytes(buffer, bytesToRead);
@@ -281,7 +324,7 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
 
     int readAsciiByte() throws IOException {
         if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
+            byte[] buffer = singleByte;
             int cnt = commPort.readBytes(buffer, 1);
             if (cnt != 1) {
                 throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
@@ -362,9 +405,10 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
     }
 
     void clearInput() throws IOException {
-        if (commPort.bytesAvailable() > 0) {
-            int len = commPort.bytesAvailable();
-            byte[] buf = new byte[len];
+        int len;
+        while ((len = commPort.bytesAvailable()) > 0) {
+            byte[] buf = drainBuffer;
+            len = Math.min(len, buf.length);
             readBytes(buf, len);
             if (logger.isDebugEnabled()) {
                 logger.debug("Clear input: {}", Dlt645Util.toHex(buf, 0, len));
@@ -372,6 +416,20 @@ public abstract class Dlt645SerialTransport extends AbstractDlt645Transport {
         }
     }
 
+    /**
+     * Returns the scratch buffer used to discard input, grown to hold an
+     * echoed frame if needed
+     *
+     * @param len Number of bytes to be read
+     * @return Scratch buffer
+     */
+    private byte[] getDrainBuffer(int len) {
+        if (len > drainBuffer.length) {
+            drainBuffer = new byte[len];
+        }
+        return drainBuffer;
+    }
+
     @Override
     public void close() throws IOException {
         commPort.close();
@@ -72,7 +72,7 @@ public class Dlt645TCPTransaction extends Dlt645Transaction {
                 }
                 transport.writeRequest(request);
 
-                response = transport.readResponse();
+                response = readMatchingResponse();
                 if (logger.isDebugEnabled()) {
                     logger.debug("Read response: {} (try: {}) response transaction ID = {} from {}:{}", response.getHexMessage(), retryCounter, response.getTransactionID(), connection.getAddress(), connection.getPort());
                 }
@@ -89,11 +89,7 @@ public class Dlt645TCPTransaction extends Dlt645Transaction {
                     }
                     keepTrying = true;
                     long sleepTime = getRandomSleepTime(retryCounter);
-                    if (response == null) {
-                        logger.debug("Failed to get any response (try: {}) - retrying after {} milliseconds", retryCounter, sleepTime);
-                    } else {
-                        logger.debug("Failed to get a valid response, transaction IDs do not match (try: {}) - retrying after {} milliseconds", retryCounter, sleepTime);
-                    }
+                    logger.debug("Failed to get any response (try: {}) - retrying after {} milliseconds", retryCounter, sleepTime);
                     Dlt645Util.sleep(sleepTime);
                 }
             } catch (Dlt645IOException ex) {
@@ -121,18 +117,11 @@ public class Dlt645TCPTransaction extends Dlt645Transaction {
     }
 
     private boolean responseIsInValid() {
-        if (response == null) {
-            return true;
-        }
-        else if (!response.isHeadless() && validityCheck) {
-            return request.getTransactionID() != response.getTransactionID();
-        }
-        else {
-            return false;
-        }
+        // Responses to other requests have already been dropped while reading
+        return response == null;
     }
 
-    private synchronized void incrementTransactionID() {
+    private void incrementTransactionID() {
         if (isCheckingValidity()) {
             if (transactionID >= Dlt645.MAX_TRANSACTION_ID) {
                 transactionID = Dlt645.DEFAULT_TRANSACTION_ID;
@@ -28,7 +28,7 @@ public class Dlt645TCPTransport extends AbstractDlt645Transport {
     protected Socket socket = null;
     protected TCPMasterConnection master = null;
     private boolean headless = false;
-    private long lastActivityTimestamp;
+    private volatile long lastActivityTimestamp;
 
     public Dlt645TCPTransport() {
         lastActivityTimestamp = System.nanoTime();
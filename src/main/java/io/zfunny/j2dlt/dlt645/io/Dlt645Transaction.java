@@ -5,18 +5,26 @@ import io.zfunny.j2dlt.dlt645.Dlt645Exception;
 import io.zfunny.j2dlt.dlt645.Dlt645IOException;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Dlt645Transaction {
 
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645Transaction.class);
+
     protected AbstractDlt645Transport transport;
     protected Dlt645Request request;
     protected Dlt645Response response;
     boolean validityCheck = Dlt645.DEFAULT_VALIDITYCHECK;
     int retries = Dlt645.DEFAULT_RETRIES;
     private final Random random = new Random(System.nanoTime());
-    static int transactionID = Dlt645.DEFAULT_TRANSACTION_ID;
+
+    // Only used for the MBAP header of the TCP transport, responses are
+    // matched by Dlt645Correlation. Each transaction counts on its own.
+    int transactionID = Dlt645.DEFAULT_TRANSACTION_ID;
 
     public Dlt645Request getRequest() {
         return request;
@@ -41,6 +49,17 @@ public abstract class Dlt645Transaction {
         this.retries = retries;
     }
 
+    /**
+     * Sets the receive timeout of the transport of this transaction
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        if (transport != null) {
+            transport.setTimeout(timeout);
+        }
+    }
+
     public boolean isCheckingValidity() {
         return validityCheck;
     }
@@ -49,7 +68,7 @@ public abstract class Dlt645Transaction {
         validityCheck = b;
     }
 
-    public synchronized int getTransactionID() {
+    public int getTransactionID() {
         if (transactionID < Dlt645.DEFAULT_TRANSACTION_ID && isCheckingValidity()) {
             transactionID = Dlt645.DEFAULT_TRANSACTION_ID;
         }
@@ -63,16 +82,58 @@ public abstract class Dlt645Transaction {
         return (Dlt645.RETRY_SLEEP_TIME / 2) + (long) (random.nextDouble() * Dlt645.RETRY_SLEEP_TIME * count);
     }
 
-    void checkValidity() throws Dlt645Exception {
-        if (request != null && response != null) {
-            if (!request.getUnitIDString().equals(response.getUnitIDString())) {
-                throw new Dlt645IOException("Unit ID mismatch - Request [%s] Response [%s]", request.getHexMessage(), response.getHexMessage());
+    /**
+     * Reads responses until one answers the request.
+     * <p>
+     * Responses for other meters, functions or data identities, e.g. late
+     * answers to a request that has already timed out, are dropped and the
+     * transport is read again, so they do not cost a retry of the request.
+     * The timeout of the transport is counted from the first read, and every
+     * later read only waits for what is left of it.
+     *
+     * @return Response to the request
+     * @throws Dlt645IOException If no matching response arrives
+     */
+    Dlt645Response readMatchingResponse() throws Dlt645IOException {
+        int savedTimeout = transport.getTimeout();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(savedTimeout);
+        try {
+            Dlt645Response received = transport.readResponse();
+            if (!isCheckingValidity()) {
+                return received;
             }
-            if(request.getFunctionCode() != response.getFunctionCode()) {
-                throw new Dlt645IOException("Function code mismatch - Request [%s] Response [%s]", request.getHexMessage(), response.getHexMessage());
+            while (!Dlt645Correlation.isResponseTo(request, received)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Dropping response {} that does not answer {}", received == null ? null : received.getHexMessage(), request.getHexMessage());
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new Dlt645IOException("No response matching request %s", request.getHexMessage());
+                }
+                transport.setTimeout((int)Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                received = transport.readResponse();
             }
-            // TODO check dataIdentity
+            return received;
+        }
+        finally {
+            if (transport.getTimeout() != savedTimeout) {
+                transport.setTimeout(savedTimeout);
+            }
+        }
+    }
+
+    /**
+     * Sends the request without reading a response, for broadcasts that no
+     * meter answers
+     *
+     * @throws Dlt645Exception If the request cannot be sent
+     */
+    public void send() throws Dlt645Exception {
+        if (request == null || transport == null) {
+            throw new Dlt645Exception("Assertion failed, transaction not executable");
         }
+        response = null;
+        transport.writeRequest(request);
     }
 
     public abstract void execute() throws Dlt645Exception;
@@ -59,7 +59,7 @@ public class Dlt645UDPTransaction extends Dlt645Transaction {
             try {
                 synchronized (this) {
                     transport.writeRequest(request);
-                    response = transport.readResponse();
+                    response = readMatchingResponse();
                     break;
                 }
             } catch (Dlt645IOException ex) {
@@ -76,10 +76,6 @@ public class Dlt645UDPTransaction extends Dlt645Transaction {
             throw new Dlt645SlaveException(((ExceptionResponse)response).getExceptionCode());
         }
 
-        if (isCheckingValidity()) {
-            checkValidity();
-        }
-
         incrementTransactionID();
     }
 
@@ -0,0 +1,163 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Broadcast time synchronisation (control code 0x08).
+ * <p>
+ * The request is sent to {@link Dlt645#BROADCAST_ADDRESS}, every meter on
+ * the bus sets its clock from it and none of them answers. The time is sent
+ * as <tt>ss mm hh DD MM YY</tt> in BCD. A request constructed without a time
+ * carries the clock time of the moment it is encoded, so it can sit in a
+ * queue without going stale.
+ */
+public class BroadcastTimeRequest extends Dlt645Request {
+
+    private static final int DATA_LENGTH = 6;
+
+    private LocalDateTime time;
+
+    /**
+     * Constructs a request that carries the current time when it is sent
+     */
+    public BroadcastTimeRequest() {
+        super();
+
+        setFunctionCode(Dlt645.BROADCAST_TIME);
+        setDataLength(DATA_LENGTH);
+        setUnitID(Dlt645.BROADCAST_ADDRESS);
+    }
+
+    /**
+     * Constructs a request that carries a fixed time
+     *
+     * @param time Time to set the meters to, years 2000 to 2099
+     */
+    public BroadcastTimeRequest(LocalDateTime time) {
+        this();
+
+        setTime(time);
+    }
+
+    /**
+     * Returns the time sent
+     *
+     * @return Time or null if the current time is sent
+     */
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    /**
+     * Sets the time sent
+     *
+     * @param time Time to set the meters to, or null to send the current time
+     */
+    public void setTime(LocalDateTime time) {
+        if (time != null && (time.getYear() < 2000 || time.getYear() > 2099)) {
+            throw new DateTimeException("Year cannot be sent: " + time.getYear());
+        }
+        this.time = time;
+        invalidateFrame();
+    }
+
+    @Override
+    public byte[] getFrame() throws IOException {
+        if (time == null) {
+            invalidateFrame();
+        }
+        return super.getFrame();
+    }
+
+    @Override
+    public Dlt645Response getResponse() {
+        // Nobody answers a broadcast
+        return null;
+    }
+
+    @Override
+    public Dlt645Response createResponse(AbstractDlt645Listener listener) {
+        // Slaves hold no clock and must stay silent
+        return null;
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        for (byte b : getMessage()) {
+            dout.writeByte(b + Dlt645.ADD_PARAM);
+        }
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = din.readUnsignedByte();
+        if (length != DATA_LENGTH) {
+            throw new IOException(String.format("Invalid data length %d for a broadcast time", length));
+        }
+        byte[] bcd = new byte[DATA_LENGTH];
+        din.readFully(bcd, 0, DATA_LENGTH);
+        Dlt645Util.removeOffset(bcd, 0, bcd, 0, DATA_LENGTH);
+        decodeTime(bcd);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        byte[] message = getMessage();
+        return putEncoded(buffer, index, message, 0, message.length);
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length != DATA_LENGTH) {
+            throw new IOException(String.format("Invalid data length %d for a broadcast time", length));
+        }
+        byte[] bcd = new byte[DATA_LENGTH];
+        index = getDecoded(buffer, index + 1, bcd, 0, DATA_LENGTH);
+        decodeTime(bcd);
+        return index;
+    }
+
+    @Override
+    public byte[] getMessage() {
+        LocalDateTime sent = time == null ? LocalDateTime.now() : time;
+        return new byte[] {
+                toBcd(sent.getSecond()),
+                toBcd(sent.getMinute()),
+                toBcd(sent.getHour()),
+                toBcd(sent.getDayOfMonth()),
+                toBcd(sent.getMonthValue()),
+                toBcd(sent.getYear() % 100)
+        };
+    }
+
+    /**
+     * Sets the time from the BCD fields <tt>ss mm hh DD MM YY</tt>
+     */
+    private void decodeTime(byte[] bcd) throws IOException {
+        int[] fields = new int[DATA_LENGTH];
+        for (int i = 0; i < DATA_LENGTH; i++) {
+            fields[i] = ((bcd[i] >> 4) & 0x0F) * 10 + (bcd[i] & 0x0F);
+        }
+        try {
+            time = LocalDateTime.of(2000 + fields[5], fields[4], fields[3], fields[2], fields[1], fields[0]);
+        }
+        catch (DateTimeException e) {
+            throw new IOException(String.format("Invalid broadcast time - %s", e.getMessage()));
+        }
+        invalidateFrame();
+    }
+
+    private static byte toBcd(int value) {
+        return (byte)(((value / 10) << 4) | (value % 10));
+    }
+}
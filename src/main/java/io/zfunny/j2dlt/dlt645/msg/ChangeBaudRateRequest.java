@@ -0,0 +1,148 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Request to change the communication rate of a meter (control code 0x17).
+ * <p>
+ * The data is a single rate feature byte with one bit per rate: D1 600,
+ * D2 1200, D3 2400, D4 4800, D5 9600 and D6 19200 baud. A meter that can
+ * run at the rate answers with the same byte at the rate the request came
+ * in at and then switches, one that cannot answers with
+ * {@link Dlt645#ERROR_BAUD_RATE}. The change must be addressed to a single
+ * meter.
+ */
+public class ChangeBaudRateRequest extends Dlt645Request {
+
+    private int baudRate;
+
+    /**
+     * Constructs an empty request, to be read from a frame
+     */
+    public ChangeBaudRateRequest() {
+        super();
+
+        setFunctionCode(Dlt645.CHANGE_BAUD_RATE);
+        setDataLength(1);
+    }
+
+    /**
+     * Constructs a request to change to a rate
+     *
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     */
+    public ChangeBaudRateRequest(int baudRate) {
+        this();
+
+        setBaudRate(baudRate);
+    }
+
+    /**
+     * Returns the rate feature byte of a baud rate
+     *
+     * @param baudRate Rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     * @return Feature byte with the bit of the rate set
+     * @throws IllegalArgumentException If the rate has no feature bit
+     */
+    public static int toFeatureByte(int baudRate) {
+        int feature = baudRate / 300;
+        if (baudRate % 300 != 0 || feature < 0x02 || feature > 0x40 || Integer.bitCount(feature) != 1) {
+            throw new IllegalArgumentException(String.format("Baud rate %d cannot be negotiated", baudRate));
+        }
+        return feature;
+    }
+
+    /**
+     * Returns the baud rate of a rate feature byte
+     *
+     * @param feature Feature byte
+     * @return Rate, or 0 if the byte does not have exactly one rate bit set
+     */
+    public static int toBaudRate(int feature) {
+        feature &= 0xFF;
+        if (feature < 0x02 || feature > 0x40 || Integer.bitCount(feature) != 1) {
+            return 0;
+        }
+        return feature * 300;
+    }
+
+    /**
+     * Returns the rate asked for
+     *
+     * @return Baud rate
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Sets the rate asked for
+     *
+     * @param baudRate New rate, one of 600, 1200, 2400, 4800, 9600 or 19200
+     */
+    public void setBaudRate(int baudRate) {
+        toFeatureByte(baudRate);
+        this.baudRate = baudRate;
+        invalidateFrame();
+    }
+
+    @Override
+    public Dlt645Response getResponse() {
+        return updateResponseWithHeader(new ChangeBaudRateResponse());
+    }
+
+    @Override
+    public Dlt645Response createResponse(AbstractDlt645Listener listener) {
+        // A listener cannot move its port on its own
+        return createExceptionResponse(Dlt645.ERROR_BAUD_RATE);
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(toFeatureByte(baudRate) + Dlt645.ADD_PARAM);
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = din.readUnsignedByte();
+        if (length != 1) {
+            throw new IOException(String.format("Invalid data length %d for a baud rate change", length));
+        }
+        baudRate = toBaudRate(din.readUnsignedByte() - Dlt645.ADD_PARAM);
+        if (baudRate == 0) {
+            throw new IOException("Invalid rate feature byte for a baud rate change");
+        }
+        invalidateFrame();
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        buffer.put(index++, (byte)(toFeatureByte(baudRate) + Dlt645.ADD_PARAM));
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length != 1) {
+            throw new IOException(String.format("Invalid data length %d for a baud rate change", length));
+        }
+        baudRate = toBaudRate(buffer.get(index + 1) - Dlt645.ADD_PARAM);
+        if (baudRate == 0) {
+            throw new IOException("Invalid rate feature byte for a baud rate change");
+        }
+        invalidateFrame();
+        return index + 2;
+    }
+
+    @Override
+    public byte[] getMessage() {
+        return new byte[] {(byte)toFeatureByte(baudRate)};
+    }
+}
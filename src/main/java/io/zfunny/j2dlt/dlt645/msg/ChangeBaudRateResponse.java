@@ -0,0 +1,83 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Response to a {@link ChangeBaudRateRequest} (control code 0x97), echoing
+ * the rate feature byte of the rate the meter switches to once it has sent
+ * the response.
+ */
+public class ChangeBaudRateResponse extends Dlt645Response {
+
+    private int baudRate;
+
+    public ChangeBaudRateResponse() {
+        super();
+
+        setFunctionCode(Dlt645.CHANGE_BAUD_RATE | Dlt645.RESPONSE_FLAG);
+        setDataLength(1);
+    }
+
+    /**
+     * Constructs a response accepting a rate
+     *
+     * @param baudRate Rate the meter switches to
+     */
+    public ChangeBaudRateResponse(int baudRate) {
+        this();
+
+        ChangeBaudRateRequest.toFeatureByte(baudRate);
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * Returns the rate the meter switches to
+     *
+     * @return Baud rate, or 0 if the meter answered with an invalid feature byte
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(ChangeBaudRateRequest.toFeatureByte(baudRate) + Dlt645.ADD_PARAM);
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = readDataLength(din);
+        if (length != 1) {
+            throw new IOException(String.format("Invalid data length %d for a baud rate response", length));
+        }
+        baudRate = ChangeBaudRateRequest.toBaudRate(din.readUnsignedByte() - Dlt645.ADD_PARAM);
+        setDataLength(length);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        buffer.put(index++, (byte)(ChangeBaudRateRequest.toFeatureByte(baudRate) + Dlt645.ADD_PARAM));
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length != 1) {
+            throw new IOException(String.format("Invalid data length %d for a baud rate response", length));
+        }
+        baudRate = ChangeBaudRateRequest.toBaudRate(buffer.get(index + 1) - Dlt645.ADD_PARAM);
+        setDataLength(length);
+        return index + 2;
+    }
+
+    @Override
+    public byte[] getMessage() {
+        return new byte[] {(byte)ChangeBaudRateRequest.toFeatureByte(baudRate)};
+    }
+}
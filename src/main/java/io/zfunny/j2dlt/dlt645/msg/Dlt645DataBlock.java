@@ -0,0 +1,115 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+/**
+ * The data items returned by a block read, in the order they appear in the
+ * payload.
+ * <p>
+ * A block is addressed by a data identity with one byte set to <tt>FF</tt>,
+ * e.g. <tt>0201FF00</tt> for the voltages of all three phases. The meter
+ * answers with the values of the matching items one after the other, so the
+ * payload is split by the lengths of the items.
+ */
+public class Dlt645DataBlock {
+
+    private final int dataIdentity;
+    private final Dlt645DataItem[] items;
+    private final int length;
+
+    /**
+     * Constructs a block
+     *
+     * @param dataIdentity Block data identity, e.g. <tt>0x0201FF00</tt>
+     * @param items        Items in payload order
+     */
+    public Dlt645DataBlock(int dataIdentity, Dlt645DataItem... items) {
+        this.dataIdentity = dataIdentity;
+        this.items = items.clone();
+        int total = 0;
+        for (Dlt645DataItem item : this.items) {
+            total += item.getLength();
+        }
+        length = total;
+    }
+
+    /**
+     * Returns the block data identity
+     *
+     * @return Data identity
+     */
+    public int getDataIdentity() {
+        return dataIdentity;
+    }
+
+    /**
+     * Returns the number of items in the block
+     *
+     * @return Item count
+     */
+    public int getItemCount() {
+        return items.length;
+    }
+
+    /**
+     * Returns an item of the block
+     *
+     * @param index Position of the item in the payload
+     * @return Item
+     */
+    public Dlt645DataItem getItem(int index) {
+        return items[index];
+    }
+
+    /**
+     * Returns the length of the payload of the whole block
+     *
+     * @return Length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Splits a payload into the mantissas of the items. Items that do not
+     * fit into the payload are not decoded, meters may return fewer tariffs
+     * than the dictionary knows about.
+     *
+     * @param data      Payload with the 0x33 offset removed
+     * @param offset    Offset of the first item
+     * @param len       Length of the payload
+     * @param mantissas Receives the mantissas in item order
+     * @return Number of items decoded
+     */
+    public int decode(byte[] data, int offset, int len, long[] mantissas) {
+        return decode(data, offset, len, mantissas, false);
+    }
+
+    /**
+     * Splits a payload into the mantissas of the items straight from a
+     * received frame, with the 0x33 offset still applied, see
+     * {@link Dlt645FrameView}
+     *
+     * @param frame     Buffer holding the frame
+     * @param offset    Offset of the first item
+     * @param len       Length of the payload
+     * @param mantissas Receives the mantissas in item order
+     * @return Number of items decoded
+     */
+    public int decodeEncoded(byte[] frame, int offset, int len, long[] mantissas) {
+        return decode(frame, offset, len, mantissas, true);
+    }
+
+    private int decode(byte[] data, int offset, int len, long[] mantissas, boolean encoded) {
+        int count = Math.min(items.length, mantissas.length);
+        int pos = offset;
+        int end = offset + len;
+        for (int i = 0; i < count; i++) {
+            Dlt645DataItem item = items[i];
+            if (pos + item.getLength() > end) {
+                return i;
+            }
+            mantissas[i] = encoded ? item.decodeEncoded(data, pos) : item.decode(data, pos);
+            pos += item.getLength();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,178 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import io.zfunny.j2dlt.dlt645.util.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Registry of data items keyed by data identity.
+ * <p>
+ * Lookups are made for every value decoded, so items are kept in an
+ * {@link IntObjectMap}, which looks up primitive keys without locking.
+ * <p>
+ * Blocks are worked out from the registered items the first time they are
+ * asked for and kept in a second map of the same kind.
+ * <p>
+ * {@link #getDefault()} holds the common DL/T 645-2007 items. Applications
+ * can add their own items to it or build a dictionary from scratch.
+ */
+public class Dlt645DataDictionary {
+
+    private static final Dlt645DataDictionary DEFAULT = createDefault();
+
+    private final IntObjectMap<Dlt645DataItem> items = new IntObjectMap<Dlt645DataItem>(64);
+    private final IntObjectMap<Dlt645DataBlock> definedBlocks = new IntObjectMap<Dlt645DataBlock>();
+    private final IntObjectMap<Dlt645DataBlock> blocks = new IntObjectMap<Dlt645DataBlock>();
+
+    /**
+     * Returns the shared dictionary preloaded with the standard items
+     *
+     * @return Default dictionary
+     */
+    public static Dlt645DataDictionary getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds an item, replacing any item with the same data identity
+     *
+     * @param item Item to add
+     */
+    public synchronized void register(Dlt645DataItem item) {
+        items.put(item.getDataIdentity(), item);
+        blocks.clear();
+    }
+
+    /**
+     * Registers the layout of a block explicitly, for blocks whose items are
+     * not simply the registered items matching the block data identity
+     *
+     * @param block Block to add
+     */
+    public synchronized void register(Dlt645DataBlock block) {
+        definedBlocks.put(block.getDataIdentity(), block);
+    }
+
+    /**
+     * Looks up an item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @return Item or null if unknown
+     */
+    public Dlt645DataItem get(int dataIdentity) {
+        return items.get(dataIdentity);
+    }
+
+    /**
+     * Looks up an item
+     *
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @return Item or null if unknown
+     */
+    public Dlt645DataItem get(byte[] dataIdentity) {
+        return get(Dlt645Util.dataIdentityToInt(dataIdentity));
+    }
+
+    /**
+     * Returns the layout of a block. Unless registered explicitly, the block
+     * consists of the registered items whose data identity matches the block
+     * data identity in every byte that is not <tt>FF</tt>, in ascending order.
+     *
+     * @param dataIdentity Block data identity, e.g. <tt>0x0201FF00</tt>
+     * @return Block or null if no registered item matches
+     */
+    public Dlt645DataBlock getBlock(int dataIdentity) {
+        Dlt645DataBlock block = definedBlocks.get(dataIdentity);
+        if (block == null) {
+            block = blocks.get(dataIdentity);
+        }
+        if (block == null) {
+            synchronized (this) {
+                block = blocks.get(dataIdentity);
+                if (block == null) {
+                    block = buildBlock(dataIdentity);
+                    if (block != null) {
+                        blocks.put(dataIdentity, block);
+                    }
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Returns the number of items
+     *
+     * @return Item count
+     */
+    public int size() {
+        return items.size();
+    }
+
+    private Dlt645DataBlock buildBlock(int dataIdentity) {
+        int mask = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            if ((dataIdentity >>> shift & 0xFF) != 0xFF) {
+                mask |= 0xFF << shift;
+            }
+        }
+        List<Dlt645DataItem> members = new ArrayList<Dlt645DataItem>();
+        for (Dlt645DataItem item : items.values()) {
+            if ((item.getDataIdentity() & mask) == (dataIdentity & mask)) {
+                members.add(item);
+            }
+        }
+        if (members.isEmpty()) {
+            return null;
+        }
+        Collections.sort(members, new Comparator<Dlt645DataItem>() {
+            @Override
+            public int compare(Dlt645DataItem a, Dlt645DataItem b) {
+                return Integer.compareUnsigned(a.getDataIdentity(), b.getDataIdentity());
+            }
+        });
+        return new Dlt645DataBlock(dataIdentity, members.toArray(new Dlt645DataItem[members.size()]));
+    }
+
+    private static Dlt645DataDictionary createDefault() {
+        Dlt645DataDictionary dictionary = new Dlt645DataDictionary();
+
+        // Energy
+        dictionary.register(new Dlt645DataItem(0x00000000, "Combined active energy total", "XXXXXX.XX", "kWh", true));
+        String[] tariffs = {"total", "tariff 1", "tariff 2", "tariff 3", "tariff 4"};
+        for (int i = 0; i < tariffs.length; i++) {
+            dictionary.register(new Dlt645DataItem(0x00010000 | i << 8, "Forward active energy " + tariffs[i], "XXXXXX.XX", "kWh"));
+            dictionary.register(new Dlt645DataItem(0x00020000 | i << 8, "Reverse active energy " + tariffs[i], "XXXXXX.XX", "kWh"));
+        }
+        dictionary.register(new Dlt645DataItem(0x00030000, "Combined reactive energy 1 total", "XXXXXX.XX", "kvarh", true));
+        dictionary.register(new Dlt645DataItem(0x00040000, "Combined reactive energy 2 total", "XXXXXX.XX", "kvarh", true));
+
+        // Instantaneous values, total and per phase
+        String[] phases = {"total", "phase A", "phase B", "phase C"};
+        for (int i = 1; i < phases.length; i++) {
+            dictionary.register(new Dlt645DataItem(0x02010000 | i << 8, "Voltage " + phases[i], "XXX.X", "V"));
+            dictionary.register(new Dlt645DataItem(0x02020000 | i << 8, "Current " + phases[i], "XXX.XXX", "A", true));
+        }
+        for (int i = 0; i < phases.length; i++) {
+            dictionary.register(new Dlt645DataItem(0x02030000 | i << 8, "Active power " + phases[i], "XX.XXXX", "kW", true));
+            dictionary.register(new Dlt645DataItem(0x02040000 | i << 8, "Reactive power " + phases[i], "XX.XXXX", "kvar", true));
+            dictionary.register(new Dlt645DataItem(0x02050000 | i << 8, "Apparent power " + phases[i], "XX.XXXX", "kVA", true));
+            dictionary.register(new Dlt645DataItem(0x02060000 | i << 8, "Power factor " + phases[i], "X.XXX", null, true));
+        }
+        dictionary.register(new Dlt645DataItem(0x02800001, "Neutral current", "XXX.XXX", "A", true));
+        dictionary.register(new Dlt645DataItem(0x02800002, "Grid frequency", "XX.XX", "Hz"));
+        dictionary.register(new Dlt645DataItem(0x02800007, "Meter temperature", "XXX.X", "\u00B0C", true));
+
+        // Parameters
+        dictionary.register(new Dlt645DataItem(0x04000101, "Date and week", "YYMMDDWW", null));
+        dictionary.register(new Dlt645DataItem(0x04000102, "Time", "hhmmss", null));
+        dictionary.register(new Dlt645DataItem(0x04000401, "Communication address", "NNNNNNNNNNNN", null));
+        dictionary.register(new Dlt645DataItem(0x04000402, "Meter number", "NNNNNNNNNNNN", null));
+        return dictionary;
+    }
+
+}
@@ -0,0 +1,264 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+
+/**
+ * Definition of a data item identified by a DL/T 645-2007 data identity,
+ * together with the decoder for its value.
+ * <p>
+ * The layout of the value is given by its format as printed in the standard,
+ * e.g. <tt>XXX.X</tt> for a phase voltage or <tt>XXXXXX.XX</tt> for an
+ * energy register. The format is parsed once when the item is created, so
+ * decoding a value is a loop over its BCD bytes that produces a
+ * <tt>long</tt> mantissa. The value is the mantissa divided by
+ * 10<sup>scale</sup>, which keeps decoding free of Strings and BigDecimals.
+ * <p>
+ * Decoders for values that are not BCD can be plugged in by overriding
+ * {@link #decode(byte[], int)}.
+ */
+public class Dlt645DataItem {
+
+    /**
+     * Returned by {@link #decode(byte[], int)} if the value is not valid BCD,
+     * e.g. the <tt>FF</tt> filled values some meters return for unsupported items
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int[] BCD = new int[256];
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        for (int i = 0; i < BCD.length; i++) {
+            int high = i >>> 4;
+            int low = i & 0x0F;
+            BCD[i] = high > 9 || low > 9 ? -1 : high * 10 + low;
+        }
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int dataIdentity;
+    private final String name;
+    private final String format;
+    private final String unit;
+    private final int length;
+    private final int scale;
+    private final boolean signed;
+
+    /**
+     * Constructs an unsigned item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @param name         Name of the item
+     * @param format       Format as printed in the standard, e.g. <tt>XXX.X</tt>
+     * @param unit         Unit of the value, may be null
+     */
+    public Dlt645DataItem(int dataIdentity, String name, String format, String unit) {
+        this(dataIdentity, name, format, unit, false);
+    }
+
+    /**
+     * Constructs an item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02020100</tt>
+     * @param name         Name of the item
+     * @param format       Format as printed in the standard, e.g. <tt>XXX.XXX</tt>
+     * @param unit         Unit of the value, may be null
+     * @param signed       True if the top bit of the most significant byte is a sign bit
+     */
+    public Dlt645DataItem(int dataIdentity, String name, String format, String unit, boolean signed) {
+        int digits = 0;
+        int decimals = -1;
+        for (int i = 0; i < format.length(); i++) {
+            if (format.charAt(i) == '.') {
+                if (decimals >= 0) {
+                    throw new IllegalArgumentException("Invalid format: " + format);
+                }
+                decimals = 0;
+            }
+            else {
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            }
+        }
+        if (digits == 0 || digits % 2 != 0 || digits > 18) {
+            throw new IllegalArgumentException("Invalid format: " + format);
+        }
+        this.dataIdentity = dataIdentity;
+        this.name = name;
+        this.format = format;
+        this.unit = unit;
+        this.length = digits / 2;
+        this.scale = Math.max(0, decimals);
+        this.signed = signed;
+    }
+
+    /**
+     * Returns the data identity
+     *
+     * @return Data identity, e.g. <tt>0x02010100</tt>
+     */
+    public int getDataIdentity() {
+        return dataIdentity;
+    }
+
+    /**
+     * Returns the name of the item
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the format as printed in the standard
+     *
+     * @return Format
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the unit of the value
+     *
+     * @return Unit or null
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the number of bytes the value takes on the wire
+     *
+     * @return Length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of decimals of the value
+     *
+     * @return Power of ten the mantissa is divided by
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Returns true if the value carries a sign bit
+     *
+     * @return True if signed
+     */
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * Decodes the mantissa of the value. The bytes must already have had
+     * 0x33 taken off, as done by {@link ReadResponse}. The least significant
+     * byte comes first, as on the wire.
+     *
+     * @param data   Buffer holding the value
+     * @param offset Offset of the first byte of the value
+     * @return Mantissa or {@link #INVALID}
+     */
+    public long decode(byte[] data, int offset) {
+        return decode(data, offset, 0);
+    }
+
+    /**
+     * Decodes the mantissa of the value straight from a received frame, with
+     * the 0x33 offset still applied, see {@link Dlt645FrameView}
+     *
+     * @param frame  Buffer holding the frame
+     * @param offset Offset of the first byte of the value
+     * @return Mantissa or {@link #INVALID}
+     */
+    public long decodeEncoded(byte[] frame, int offset) {
+        return decode(frame, offset, Dlt645.ADD_PARAM);
+    }
+
+    private long decode(byte[] data, int offset, int bias) {
+        int last = offset + length - 1;
+        int top = (data[last] - bias) & 0xFF;
+        boolean negative = false;
+        if (signed && (top & 0x80) != 0) {
+            negative = true;
+            top &= 0x7F;
+        }
+        long mantissa = BCD[top];
+        if (mantissa < 0) {
+            return INVALID;
+        }
+        for (int i = last - 1; i >= offset; i--) {
+            int digits = BCD[(data[i] - bias) & 0xFF];
+            if (digits < 0) {
+                return INVALID;
+            }
+            mantissa = mantissa * 100 + digits;
+        }
+        return negative ? -mantissa : mantissa;
+    }
+
+    /**
+     * Encodes a mantissa as BCD, the reverse of {@link #decode(byte[], int)}.
+     * The bytes are written without the 0x33 offset.
+     *
+     * @param mantissa Mantissa of the value, e.g. 2222 for 222.2 V
+     * @param data     Buffer to write the value to
+     * @param offset   Offset of the first byte of the value
+     * @throws IllegalArgumentException If the mantissa does not fit the item
+     */
+    public void encode(long mantissa, byte[] data, int offset) {
+        if (mantissa == INVALID || (mantissa < 0 && !signed)) {
+            throw new IllegalArgumentException(String.format("Cannot encode %d as %s", mantissa, this));
+        }
+        long rest = Math.abs(mantissa);
+        for (int i = offset; i < offset + length; i++) {
+            data[i] = (byte)((rest / 10 % 10) << 4 | rest % 10);
+            rest /= 100;
+        }
+        int last = offset + length - 1;
+        if (rest != 0 || (signed && (data[last] & 0x80) != 0)) {
+            throw new IllegalArgumentException(String.format("%d does not fit %s", mantissa, this));
+        }
+        if (mantissa < 0) {
+            data[last] |= (byte)0x80;
+        }
+    }
+
+    /**
+     * Works out the mantissa of a value, rounding to the resolution of the item
+     *
+     * @param value Value, e.g. 222.2 for a voltage
+     * @return Mantissa
+     */
+    public long toMantissa(double value) {
+        return Math.round(value * POWERS_OF_TEN[scale]);
+    }
+
+    /**
+     * Converts a mantissa returned by {@link #decode(byte[], int)} to a double
+     *
+     * @param mantissa Mantissa of the value
+     * @return Value or NaN if the mantissa is {@link #INVALID}
+     */
+    public double toDouble(long mantissa) {
+        if (mantissa == INVALID) {
+            return Double.NaN;
+        }
+        return mantissa / POWERS_OF_TEN[scale];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%08X %s (%s%s)", dataIdentity, name, format, unit == null ? "" : " " + unit);
+    }
+}
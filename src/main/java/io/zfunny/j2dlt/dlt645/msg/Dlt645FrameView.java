@@ -0,0 +1,321 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a received response frame, left where the transport
+ * decoded it.
+ * <p>
+ * A view holds no data of its own, only the buffer, offset and length of
+ * the frame it was last pointed at, and every accessor reads the frame in
+ * place, taking the 0x33 offset off as it goes. Values are decoded straight
+ * from the frame with {@link #getMantissa(Dlt645DataItem)} and
+ * {@link #getMantissas(Dlt645DataBlock, long[])}, so a read can be handled
+ * without creating a response, a copy of its data or any other object. One
+ * view is reused for every frame.
+ * <p>
+ * The frame is only valid until the transport reads the next one, a view
+ * must not be kept beyond the callback it was handed to. Use
+ * {@link #toResponse()} to keep a frame. The checksum and the structure of
+ * the frame have been checked by the transport, the view does not check
+ * them again.
+ */
+public final class Dlt645FrameView {
+
+    private static final int ADDRESS_OFFSET = 1;
+    private static final int CONTROL_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 9;
+    private static final int DATA_OFFSET = 10;
+
+    private byte[] frame;
+    private int offset;
+    private int length;
+
+    /**
+     * Points the view at a frame
+     *
+     * @param frame  Buffer holding the frame
+     * @param offset Offset of the first start byte (0x68) of the frame
+     * @param length Length of the frame up to and including the end byte
+     * @throws IllegalArgumentException If the frame is too short for its data length
+     */
+    public void wrap(byte[] frame, int offset, int length) {
+        if (length < DATA_OFFSET + 2 || offset < 0 || offset + length > frame.length
+                || DATA_OFFSET + (frame[offset + LENGTH_OFFSET] & 0xFF) + 2 > length) {
+            throw new IllegalArgumentException("Not a complete frame");
+        }
+        this.frame = frame;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Detaches the view from its frame
+     */
+    public void clear() {
+        frame = null;
+        offset = 0;
+        length = 0;
+    }
+
+    /**
+     * Returns true if the view points at a frame
+     *
+     * @return True if wrapped
+     */
+    public boolean isWrapped() {
+        return frame != null;
+    }
+
+    /**
+     * Returns the buffer holding the frame
+     *
+     * @return Buffer
+     */
+    public byte[] getBuffer() {
+        return frame;
+    }
+
+    /**
+     * Returns the offset of the first start byte of the frame in the buffer
+     *
+     * @return Offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the frame
+     *
+     * @return Length in bytes, up to and including the end byte
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the meter address
+     *
+     * @param dest       Array to copy to, receives the 6 bytes as sent on the wire
+     * @param destOffset Offset in the array
+     */
+    public void getAddress(byte[] dest, int destOffset) {
+        System.arraycopy(frame, offset + ADDRESS_OFFSET, dest, destOffset, 6);
+    }
+
+    /**
+     * Returns the meter address as a number, with the first address byte on
+     * the wire as the most significant byte
+     *
+     * @return Address
+     */
+    public long getAddressAsLong() {
+        long address = 0;
+        for (int i = ADDRESS_OFFSET; i < ADDRESS_OFFSET + 6; i++) {
+            address = (address << 8) | (frame[offset + i] & 0xFFL);
+        }
+        return address;
+    }
+
+    /**
+     * Returns the control code
+     *
+     * @return Control code, including the response, abnormal and follow-up flags
+     */
+    public int getControlCode() {
+        return frame[offset + CONTROL_OFFSET] & 0xFF;
+    }
+
+    /**
+     * Returns the function code
+     *
+     * @return Control code without the flags
+     */
+    public int getFunctionCode() {
+        return getControlCode() & Dlt645.FUNCTION_CODE_MASK;
+    }
+
+    /**
+     * Returns true if the frame is sent by a meter
+     *
+     * @return True for a response
+     */
+    public boolean isResponse() {
+        return (getControlCode() & Dlt645.RESPONSE_FLAG) != 0;
+    }
+
+    /**
+     * Returns true if the meter refused the request
+     *
+     * @return True for an abnormal response, see {@link #getExceptionCode()}
+     */
+    public boolean isAbnormal() {
+        return (getControlCode() & Dlt645.ABNORMAL_RESPONSE_FLAG) != 0;
+    }
+
+    /**
+     * Returns true if the meter has more frames of the read to send
+     *
+     * @return True if a follow-up frame is due
+     */
+    public boolean hasFollowUp() {
+        return (getControlCode() & Dlt645.FOLLOW_UP_FLAG) != 0;
+    }
+
+    /**
+     * Returns the length of the data field
+     *
+     * @return Length in bytes, including the data identity
+     */
+    public int getDataLength() {
+        return frame[offset + LENGTH_OFFSET] & 0xFF;
+    }
+
+    /**
+     * Returns a byte of the data field
+     *
+     * @param index Index in the data field, the data identity at 0 to 3
+     * @return Byte with the 0x33 offset removed, 0 to 255
+     */
+    public int getDataByte(int index) {
+        if (index < 0 || index >= getDataLength()) {
+            throw new IndexOutOfBoundsException(String.format("Data byte %d of %d", index, getDataLength()));
+        }
+        return (frame[offset + DATA_OFFSET + index] - Dlt645.ADD_PARAM) & 0xFF;
+    }
+
+    /**
+     * Returns true if the data field starts with a data identity
+     *
+     * @return True for a normal response to a read
+     */
+    public boolean hasDataIdentity() {
+        int functionCode = getFunctionCode();
+        return !isAbnormal() && (functionCode == Dlt645.READ_DATA || functionCode == Dlt645.READ_SUB_DATA) && getDataLength() >= 4;
+    }
+
+    /**
+     * Returns the data identity echoed by the meter
+     *
+     * @return Data identity as an int, e.g. <tt>0x02010100</tt>
+     * @throws IllegalStateException If the frame carries no data identity
+     */
+    public int getDataIdentityAsInt() {
+        if (!hasDataIdentity()) {
+            throw new IllegalStateException("Frame has no data identity");
+        }
+        int base = offset + DATA_OFFSET;
+        return ((frame[base + 3] - Dlt645.ADD_PARAM) & 0xFF) << 24 | ((frame[base + 2] - Dlt645.ADD_PARAM) & 0xFF) << 16
+                | ((frame[base + 1] - Dlt645.ADD_PARAM) & 0xFF) << 8 | ((frame[base] - Dlt645.ADD_PARAM) & 0xFF);
+    }
+
+    /**
+     * Returns the offset in the buffer of the value of a read, after the data
+     * identity
+     *
+     * @return Offset
+     */
+    public int getPayloadOffset() {
+        return offset + DATA_OFFSET + (hasDataIdentity() ? 4 : 0);
+    }
+
+    /**
+     * Returns the length of the value of a read, without the data identity
+     * and, for a follow-up frame, the sequence number
+     *
+     * @return Length in bytes
+     */
+    public int getPayloadLength() {
+        if (!hasDataIdentity()) {
+            return getDataLength();
+        }
+        return Math.max(0, getDataLength() - (getFunctionCode() == Dlt645.READ_SUB_DATA ? 5 : 4));
+    }
+
+    /**
+     * Copies the value of a read with the 0x33 offset removed
+     *
+     * @param dest       Array to copy to
+     * @param destOffset Offset in the array
+     * @return Number of bytes copied, {@link #getPayloadLength()}
+     */
+    public int getPayload(byte[] dest, int destOffset) {
+        int len = getPayloadLength();
+        Dlt645Util.removeOffset(frame, getPayloadOffset(), dest, destOffset, len);
+        return len;
+    }
+
+    /**
+     * Returns the sequence number of a follow-up frame
+     *
+     * @return Sequence number, 0 to 255
+     * @throws IllegalStateException If the frame is not a follow-up frame
+     */
+    public int getSequence() {
+        if (getFunctionCode() != Dlt645.READ_SUB_DATA || !hasDataIdentity() || getDataLength() < 5) {
+            throw new IllegalStateException("Frame is not a follow-up frame");
+        }
+        return getDataByte(getDataLength() - 1);
+    }
+
+    /**
+     * Returns the error byte of an abnormal response
+     *
+     * @return Combination of the <tt>Dlt645.ERROR_</tt> bits
+     * @throws IllegalStateException If the frame is not an abnormal response
+     */
+    public int getExceptionCode() {
+        if (!isAbnormal() || getDataLength() < 1) {
+            throw new IllegalStateException("Frame is not an abnormal response");
+        }
+        return getDataByte(0);
+    }
+
+    /**
+     * Decodes the value of a single data item from the frame
+     *
+     * @param item Definition of the item read
+     * @return Mantissa or {@link Dlt645DataItem#INVALID} if the value is not
+     * valid BCD or the frame is too short for it
+     */
+    public long getMantissa(Dlt645DataItem item) {
+        if (getPayloadLength() < item.getLength()) {
+            return Dlt645DataItem.INVALID;
+        }
+        return item.decodeEncoded(frame, getPayloadOffset());
+    }
+
+    /**
+     * Decodes the values of a block read from the frame
+     *
+     * @param block     Definition of the block read
+     * @param mantissas Receives the mantissas in item order
+     * @return Number of items decoded
+     */
+    public int getMantissas(Dlt645DataBlock block, long[] mantissas) {
+        return block.decodeEncoded(frame, getPayloadOffset(), getPayloadLength(), mantissas);
+    }
+
+    /**
+     * Decodes the frame into a response that stays valid once the frame is gone
+     *
+     * @return Response
+     * @throws IOException If the frame cannot be decoded
+     */
+    public Dlt645Response toResponse() throws IOException {
+        Dlt645Response response = Dlt645Response.createDlt645Response(getControlCode());
+        response.setHeadless();
+        response.readFrom(ByteBuffer.wrap(frame, offset, length));
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return frame == null ? "" : Dlt645Util.toHex(frame, offset, offset + length);
+    }
+}
@@ -3,6 +3,7 @@ package io.zfunny.j2dlt.dlt645.msg;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface Dlt645Message {
 
@@ -30,4 +31,24 @@ public interface Dlt645Message {
 
     void readFrom(DataInput din) throws IOException;
 
+    /**
+     * Writes the same bytes as {@link #writeTo(DataOutput)} into a buffer at
+     * its position, which is moved past them. Heap and direct buffers are
+     * written by absolute index, without any stream in between, so any
+     * number of frames can be put one after the other into one buffer.
+     *
+     * @param buffer Buffer to write to
+     * @throws java.nio.BufferOverflowException If the message does not fit
+     */
+    void writeTo(ByteBuffer buffer);
+
+    /**
+     * Reads a message from a buffer at its position, which is moved past
+     * it, the counterpart of {@link #readFrom(DataInput)}
+     *
+     * @param buffer Buffer to read from, positioned at the first start byte
+     * @throws IOException If the frame is cut short or its data is invalid
+     */
+    void readFrom(ByteBuffer buffer) throws IOException;
+
 }
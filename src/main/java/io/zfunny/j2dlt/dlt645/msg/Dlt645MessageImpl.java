@@ -5,11 +5,19 @@ import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public abstract class Dlt645MessageImpl implements Dlt645Message {
 
+    /**
+     * Longest data field a message may carry
+     */
+    protected static final int MAX_DATA_LENGTH = 199;
+
     private int transactionID = Dlt645.DEFAULT_TRANSACTION_ID;
     private int dataLength;
     private String unitIDString;
@@ -42,7 +50,7 @@ public abstract class Dlt645MessageImpl implements Dlt645Message {
     }
 
     public void setDataLength(int length) {
-        if (length >= 200) {
+        if (length > MAX_DATA_LENGTH) {
             throw new IllegalArgumentException("Invalid length: " + length);
         }
 
@@ -64,7 +72,21 @@ public abstract class Dlt645MessageImpl implements Dlt645Message {
     }
 
     public void setUnitID(byte[] unitID) {
-        this.unitID = Arrays.copyOf(unitID, unitID.length);
+        if (unitID != this.unitID) {
+            this.unitID = Arrays.copyOf(unitID, unitID.length);
+        }
+    }
+
+    /**
+     * Returns the array to read an address into. A message that is read
+     * again, e.g. a response reused for every poll of a data item, reads the
+     * new address into the array it already has.
+     *
+     * @return Array of 6 bytes
+     */
+    private byte[] getAddressBuffer() {
+        byte[] current = unitID;
+        return current != null && current.length == 6 ? current : new byte[6];
     }
 
     @Override
@@ -105,11 +127,11 @@ public abstract class Dlt645MessageImpl implements Dlt645Message {
 
     @Override
     public void readFrom(DataInput din) throws IOException {
-        byte[] wakeBytes = new byte[4];
-        din.readFully(wakeBytes, 0, 4);
+        // The wake-up bytes are a transport preamble of varying length and
+        // are stripped before the frame gets here
         din.readUnsignedByte();
 
-        byte[] addressBytes = new byte[6];
+        byte[] addressBytes = getAddressBuffer();
         din.readFully(addressBytes, 0, 6);
         setUnitID(addressBytes);
 
@@ -118,8 +140,140 @@ public abstract class Dlt645MessageImpl implements Dlt645Message {
         readData(din);
     }
 
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < Dlt645.wakeBytes.length + 10 + getDataLength()) {
+            throw new BufferOverflowException();
+        }
+        int index = buffer.position();
+        for (byte b : Dlt645.wakeBytes) {
+            buffer.put(index++, b);
+        }
+        buffer.put(index++, Dlt645.startByte);
+        byte[] address = getUnitID();
+        for (int i = 0; i < 6; i++) {
+            buffer.put(index++, address[i]);
+        }
+        buffer.put(index++, Dlt645.startByte);
+        buffer.put(index++, (byte)getFunctionCode());
+        buffer.put(index++, (byte)getDataLength());
+        buffer.position(writeData(buffer, index));
+    }
+
+    @Override
+    public void readFrom(ByteBuffer buffer) throws IOException {
+        int index = buffer.position();
+        if (buffer.limit() - index < 9) {
+            throw new EOFException("Frame header is cut short");
+        }
+        index++;
+        byte[] addressBytes = getAddressBuffer();
+        for (int i = 0; i < 6; i++) {
+            addressBytes[i] = buffer.get(index++);
+        }
+        setUnitID(addressBytes);
+
+        index++;
+        setFunctionCode(buffer.get(index++) & 0xFF);
+        buffer.position(readData(buffer, index));
+    }
+
     public abstract void writeData(DataOutput dout) throws IOException;
 
     public abstract void readData(DataInput din) throws IOException;
 
+    /**
+     * Writes the data field into a buffer, the counterpart of
+     * {@link #writeData(DataOutput)}
+     *
+     * @param buffer Buffer to write to
+     * @param index  Index of the first data byte, after the length byte
+     * @return Index after the last data byte
+     */
+    public abstract int writeData(ByteBuffer buffer, int index);
+
+    /**
+     * Reads the length byte and the data field from a buffer, the
+     * counterpart of {@link #readData(DataInput)}
+     *
+     * @param buffer Buffer to read from
+     * @param index  Index of the length byte
+     * @return Index after the last data byte
+     * @throws IOException If the field is cut short or invalid
+     */
+    public abstract int readData(ByteBuffer buffer, int index) throws IOException;
+
+    /**
+     * Reads a length byte and checks that the data field it announces is all
+     * in the buffer
+     *
+     * @param buffer Buffer to read from
+     * @param index  Index of the length byte
+     * @return Length of the data field
+     * @throws IOException If the field is too long or cut short
+     */
+    protected static int readDataLength(ByteBuffer buffer, int index) throws IOException {
+        if (index >= buffer.limit()) {
+            throw new EOFException("Frame is cut short before the length byte");
+        }
+        int length = checkDataLength(buffer.get(index) & 0xFF);
+        if (buffer.limit() - index - 1 < length) {
+            throw new EOFException(String.format("Data field of %d bytes is cut short", length));
+        }
+        return length;
+    }
+
+    /**
+     * Reads a length byte from a stream
+     *
+     * @param din Stream to read from
+     * @return Length of the data field
+     * @throws IOException If the field is too long or the stream ends
+     */
+    protected static int readDataLength(DataInput din) throws IOException {
+        return checkDataLength(din.readUnsignedByte());
+    }
+
+    /**
+     * A frame can announce up to 255 bytes, more than any message may carry.
+     * Turning that into an I/O error keeps it a bad response rather than
+     * an unchecked exception out of {@link #setDataLength(int)}.
+     */
+    private static int checkDataLength(int length) throws IOException {
+        if (length > MAX_DATA_LENGTH) {
+            throw new IOException(String.format("Invalid data length %d", length));
+        }
+        return length;
+    }
+
+    /**
+     * Writes bytes with the 0x33 offset added
+     *
+     * @param buffer Buffer to write to
+     * @param index  Index of the first byte
+     * @param data   Bytes without the offset
+     * @param off    Offset of the first byte in the array
+     * @param len    Number of bytes
+     * @return Index after the last byte written
+     */
+    protected static int putEncoded(ByteBuffer buffer, int index, byte[] data, int off, int len) {
+        Dlt645Util.addOffset(data, off, buffer, index, len);
+        return index + len;
+    }
+
+    /**
+     * Reads bytes and removes the 0x33 offset
+     *
+     * @param buffer Buffer to read from
+     * @param index  Index of the first byte
+     * @param dest   Receives the bytes without the offset
+     * @param off    Offset of the first byte in the array
+     * @param len    Number of bytes
+     * @return Index after the last byte read
+     */
+    protected static int getDecoded(ByteBuffer buffer, int index, byte[] dest, int off, int len) {
+        Dlt645Util.removeOffset(buffer, index, dest, off, len);
+        return index + len;
+    }
+
 }
@@ -2,9 +2,17 @@ package io.zfunny.j2dlt.dlt645.msg;
 
 import io.zfunny.j2dlt.dlt645.Dlt645;
 import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.procimg.ProcessImage;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public abstract class Dlt645Request extends Dlt645MessageImpl {
 
+    private volatile byte[] frame;
+
     public static Dlt645Request createDlt645Request(int functionCode, int type) {
         Dlt645Request request;
 
@@ -13,6 +21,9 @@ public abstract class Dlt645Request extends Dlt645MessageImpl {
                 request = new ReadRequest();
                 ((ReadRequest)request).setDataIdentity(Dlt645.dataIdentity[1]); // test
                 break;
+            case Dlt645.READ_SUB_DATA:
+                request = new ReadSubsequentRequest();
+                break;
             default:
                 request = null;
                 break;
@@ -23,10 +34,69 @@ public abstract class Dlt645Request extends Dlt645MessageImpl {
 
     public abstract Dlt645Response getResponse();
 
+    /**
+     * Returns the request exactly as sent on the wire - wake-up bytes, header,
+     * scrambled data, checksum and end byte.
+     * <p>
+     * The frame is encoded on first use and kept until the address or data of
+     * the request changes, so a request that is sent every poll cycle is only
+     * encoded once. The returned array is shared and must not be modified.
+     *
+     * @return Encoded frame
+     * @throws IOException If the request cannot be encoded
+     */
+    public byte[] getFrame() throws IOException {
+        byte[] result = frame;
+        if (result == null) {
+            ByteBuffer out = ByteBuffer.allocate(Dlt645.MAX_MESSAGE_LENGTH + Dlt645.wakeBytes.length + 2);
+            writeTo(out);
+            int len = out.position();
+            out.put((byte)Dlt645Util.calculateCS(out, Dlt645.wakeBytes.length, len - 1));
+            out.put(Dlt645.endByte);
+            result = Arrays.copyOf(out.array(), out.position());
+            frame = result;
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cached frame, to be called whenever a field that is part of the frame changes
+     */
+    protected void invalidateFrame() {
+        frame = null;
+    }
+
+    @Override
+    public void setUnitID(byte[] unitID) {
+        super.setUnitID(unitID);
+        invalidateFrame();
+    }
+
     public abstract Dlt645Response createResponse(AbstractDlt645Listener listener);
 
+    /**
+     * Creates the abnormal response to this request
+     *
+     * @param code Error byte, a combination of the <tt>Dlt645.ERROR_</tt> bits
+     * @return Response
+     */
     public Dlt645Response createExceptionResponse(int code) {
-        return updateResponseWithHeader(new ExceptionResponse(getFunctionCode(), code));
+        return updateResponseWithHeader(new ExceptionResponse(getFunctionCode(), code), true);
+    }
+
+    /**
+     * Returns the process image the listener holds for the address of this request
+     *
+     * @param listener Listener that received the request
+     * @return Process image or null if the listener does not serve the address
+     */
+    protected ProcessImage getProcessImage(AbstractDlt645Listener listener) {
+        try {
+            return listener.getProcessImage(Dlt645Util.bytes2long(getUnitID()));
+        }
+        catch (Exception e) {
+            return null;
+        }
     }
 
     Dlt645Response updateResponseWithHeader(Dlt645Response response) {
@@ -42,7 +112,7 @@ public abstract class Dlt645Request extends Dlt645MessageImpl {
         }
         response.setUnitID(getUnitID());
         if (!ignoreFunctionCode) {
-            response.setFunctionCode(getFunctionCode());
+            response.setFunctionCode(getFunctionCode() | Dlt645.RESPONSE_FLAG);
         }
         return response;
     }
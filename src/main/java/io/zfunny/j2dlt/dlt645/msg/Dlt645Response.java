@@ -19,10 +19,22 @@ public abstract class Dlt645Response extends Dlt645MessageImpl {
     public static Dlt645Response createDlt645Response(int functionCode) {
         Dlt645Response response;
 
-        switch (functionCode) {
+        if ((functionCode & Dlt645.ABNORMAL_RESPONSE_FLAG) != 0) {
+            return new ExceptionResponse();
+        }
+        switch (functionCode & Dlt645.FUNCTION_CODE_MASK) {
             case Dlt645.READ_DATA:
                 response = new ReadResponse();
                 break;
+            case Dlt645.READ_SUB_DATA:
+                response = new ReadSubsequentResponse();
+                break;
+            case Dlt645.READ_ADDRESS:
+                response = new ReadAddressResponse();
+                break;
+            case Dlt645.CHANGE_BAUD_RATE:
+                response = new ChangeBaudRateResponse();
+                break;
             default:
                 // todo check functionCode
                 response = new ExceptionResponse();
@@ -47,5 +59,15 @@ public abstract class Dlt645Response extends Dlt645MessageImpl {
         this.auxiliaryType = auxiliaryType;
     }
 
+    /**
+     * Returns true if the slave flagged that more data follows in further
+     * frames, to be fetched with {@link ReadSubsequentRequest}s
+     *
+     * @return True if follow-up frames are pending
+     */
+    public boolean hasFollowUp() {
+        return (getFunctionCode() & Dlt645.FOLLOW_UP_FLAG) != 0;
+    }
+
 
 }
@@ -5,21 +5,26 @@ import io.zfunny.j2dlt.dlt645.Dlt645;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * Abnormal response of a slave that cannot execute a request. The control
+ * code is that of the request with D7 and D6 set, e.g. 0xD1 for a read, and
+ * the data is a single error byte.
+ */
 public class ExceptionResponse extends Dlt645Response {
 
     private int exceptionCode = -1;
 
     public ExceptionResponse(int fc, int exc) {
-        setDataLength(1);
-        setFunctionCode(fc | Dlt645.EXCEPTION_OFFSET);
+        this(fc);
 
         exceptionCode = exc;
     }
 
     public ExceptionResponse(int fc) {
         setDataLength(1);
-        setFunctionCode(fc | Dlt645.EXCEPTION_OFFSET);
+        setFunctionCode((fc & Dlt645.FUNCTION_CODE_MASK) | Dlt645.RESPONSE_FLAG | Dlt645.ABNORMAL_RESPONSE_FLAG);
     }
 
     public ExceptionResponse() {
@@ -32,12 +37,30 @@ public class ExceptionResponse extends Dlt645Response {
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.writeByte(getExceptionCode());
+        dout.writeByte(getExceptionCode() + Dlt645.ADD_PARAM);
     }
 
     @Override
     public void readData(DataInput din) throws IOException {
-        exceptionCode = din.readUnsignedByte();
+        int length = readDataLength(din);
+        exceptionCode = (din.readUnsignedByte() - Dlt645.ADD_PARAM) & 0xFF;
+        din.skipBytes(length - 1);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        buffer.put(index++, (byte)(getExceptionCode() + Dlt645.ADD_PARAM));
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length < 1) {
+            throw new IOException("Abnormal response without an error byte");
+        }
+        exceptionCode = (buffer.get(index + 1) - Dlt645.ADD_PARAM) & 0xFF;
+        return index + 1 + length;
     }
 
     @Override
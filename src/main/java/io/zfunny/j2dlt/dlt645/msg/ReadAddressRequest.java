@@ -0,0 +1,84 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Request for the address of a meter (control code 0x13).
+ * <p>
+ * The request is sent to an address with {@link Dlt645#WILDCARD} bytes,
+ * every meter whose address matches the other bytes answers with its full
+ * address. Sent to {@link Dlt645#WILDCARD_ADDRESS} it reads the address of
+ * the only meter on a line; with some bytes fixed it narrows a search of a
+ * bus with many meters.
+ */
+public class ReadAddressRequest extends Dlt645Request {
+
+    /**
+     * Constructs a request that every meter answers
+     */
+    public ReadAddressRequest() {
+        super();
+
+        setFunctionCode(Dlt645.READ_ADDRESS);
+        setDataLength(0);
+        setUnitID(Dlt645.WILDCARD_ADDRESS);
+    }
+
+    /**
+     * Constructs a request answered by the meters matching an address pattern
+     *
+     * @param pattern Address with {@link Dlt645#WILDCARD} for the bytes that
+     *                may take any value (6 bytes, as sent on the wire)
+     */
+    public ReadAddressRequest(byte[] pattern) {
+        this();
+
+        setUnitID(pattern);
+    }
+
+    @Override
+    public Dlt645Response getResponse() {
+        return updateResponseWithHeader(new ReadAddressResponse());
+    }
+
+    @Override
+    public Dlt645Response createResponse(AbstractDlt645Listener listener) {
+        if (getProcessImage(listener) == null) {
+            return createExceptionResponse(Dlt645.ERROR_OTHER);
+        }
+        return updateResponseWithHeader(new ReadAddressResponse(getUnitID()));
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        // No data
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = din.readUnsignedByte();
+        din.skipBytes(length);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        // No data
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        return index + 1 + readDataLength(buffer, index);
+    }
+
+    @Override
+    public byte[] getMessage() {
+        return new byte[0];
+    }
+}
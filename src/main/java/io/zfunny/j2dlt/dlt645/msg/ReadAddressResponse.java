@@ -0,0 +1,85 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Response to a {@link ReadAddressRequest} (control code 0x93), carrying
+ * the full address of the meter that answered.
+ */
+public class ReadAddressResponse extends Dlt645Response {
+
+    private byte[] address = new byte[6];
+
+    public ReadAddressResponse() {
+        super();
+
+        setFunctionCode(Dlt645.READ_ADDRESS | Dlt645.RESPONSE_FLAG);
+        setDataLength(6);
+    }
+
+    /**
+     * Constructs a response carrying a meter address
+     *
+     * @param address Meter address (6 bytes, as sent on the wire)
+     */
+    public ReadAddressResponse(byte[] address) {
+        this();
+
+        this.address = Arrays.copyOf(address, 6);
+    }
+
+    /**
+     * Returns the address of the meter that answered
+     *
+     * @return Meter address (6 bytes, as sent on the wire)
+     */
+    public byte[] getAddress() {
+        return Arrays.copyOf(address, 6);
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        for (byte b : address) {
+            dout.writeByte(b + Dlt645.ADD_PARAM);
+        }
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = readDataLength(din);
+        if (length != 6) {
+            throw new IOException(String.format("Invalid data length %d for an address response", length));
+        }
+        din.readFully(address, 0, 6);
+        Dlt645Util.removeOffset(address, 0, address, 0, 6);
+        setDataLength(length);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        return putEncoded(buffer, index, address, 0, 6);
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length != 6) {
+            throw new IOException(String.format("Invalid data length %d for an address response", length));
+        }
+        index = getDecoded(buffer, index + 1, address, 0, 6);
+        setDataLength(length);
+        return index;
+    }
+
+    @Override
+    public byte[] getMessage() {
+        return Arrays.copyOf(address, 6);
+    }
+}
@@ -2,10 +2,13 @@ package io.zfunny.j2dlt.dlt645.msg;
 
 import io.zfunny.j2dlt.dlt645.Dlt645;
 import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.procimg.ProcessImage;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class ReadRequest extends Dlt645Request {
@@ -35,9 +38,14 @@ public class ReadRequest extends Dlt645Request {
 
     @Override
     public Dlt645Response createResponse(AbstractDlt645Listener listener) {
-        ReadResponse response;
-        return null; // todo
-
+        ProcessImage image = getProcessImage(listener);
+        byte[] encoded = image == null ? null : image.getEncodedValue(Dlt645Util.dataIdentityToInt(dataIdentity));
+        if (encoded == null) {
+            return createExceptionResponse(Dlt645.ERROR_NO_DATA);
+        }
+        ReadResponse response = new ReadResponse();
+        response.setEncoded(encoded);
+        return updateResponseWithHeader(response);
     }
 
     public byte[] getDataIdentity() {
@@ -48,6 +56,7 @@ public class ReadRequest extends Dlt645Request {
 
     public void setDataIdentity(byte[] di) {
         dataIdentity = Arrays.copyOf(di, di.length);
+        invalidateFrame();
     }
 
     @Override
@@ -60,7 +69,33 @@ public class ReadRequest extends Dlt645Request {
 
     @Override
     public void readData(DataInput din) throws IOException {
+        int length = din.readUnsignedByte();
+        if (length < 4) {
+            throw new IOException(String.format("Invalid data length %d for a read request", length));
+        }
+        dataIdentity = new byte[4];
         din.readFully(dataIdentity, 0, 4);
+        Dlt645Util.removeOffset(dataIdentity, 0, dataIdentity, 0, 4);
+        // Skip the optional block count and time stamp
+        din.skipBytes(length - 4);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        return putEncoded(buffer, index, dataIdentity, 0, 4);
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length < 4) {
+            throw new IOException(String.format("Invalid data length %d for a read request", length));
+        }
+        dataIdentity = new byte[4];
+        getDecoded(buffer, index + 1, dataIdentity, 0, 4);
+
+        // Skip the optional block count and time stamp
+        return index + 1 + length;
     }
 
     @Override
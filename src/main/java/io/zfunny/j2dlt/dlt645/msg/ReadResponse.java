@@ -1,72 +1,251 @@
 package io.zfunny.j2dlt.dlt645.msg;
 
 import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class ReadResponse extends Dlt645Response {
 
     private int byteCount;
+    private byte[] dataIdentity = new byte[4];
     private byte[] data;
+    private byte[] encoded;
 
     public ReadResponse() {
         super();
-        setFunctionCode(Dlt645.READ_DATA);
+        setFunctionCode(Dlt645.READ_DATA | Dlt645.RESPONSE_FLAG);
     }
 
     public ReadResponse(byte[] data) {
         super();
 
-        setFunctionCode(Dlt645.READ_DATA);
-        setDataLength(data == null ? 0 : (data.length + 1));
+        setFunctionCode(Dlt645.READ_DATA | Dlt645.RESPONSE_FLAG);
+        setData(data);
+    }
 
-        this.data = data == null ? null : Arrays.copyOf(data, data.length);
-        byteCount = data == null ? 0 : data.length;
+    /**
+     * Constructs a response carrying the value of a data item
+     *
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @param data         Value, without the 0x33 offset
+     */
+    public ReadResponse(byte[] dataIdentity, byte[] data) {
+        this(data);
+        setDataIdentity(dataIdentity);
     }
 
     public int getByteCount() {
         return byteCount;
     }
 
+    /**
+     * Returns the data identity the value belongs to
+     *
+     * @return Data identity (4 bytes, as sent on the wire)
+     */
+    public synchronized byte[] getDataIdentity() {
+        unpack();
+        return Arrays.copyOf(dataIdentity, 4);
+    }
+
+    /**
+     * Returns the data identity the value belongs to
+     *
+     * @return Data identity as an int, e.g. <tt>0x02010100</tt>
+     */
+    public synchronized int getDataIdentityAsInt() {
+        unpack();
+        return Dlt645Util.dataIdentityToInt(dataIdentity);
+    }
+
+    public synchronized void setDataIdentity(byte[] dataIdentity) {
+        unpack();
+        this.dataIdentity = Arrays.copyOf(dataIdentity, 4);
+    }
+
+    /**
+     * Returns the value with the 0x33 offset already removed
+     *
+     * @return Copy of the value bytes
+     */
     public synchronized byte[] getData() {
+        unpack();
         byte[] dest = new byte[data.length];
         System.arraycopy(data, 0, dest, 0, dest.length);
         return dest;
     }
 
     public synchronized void setData(byte[] data) {
+        unpack();
         byteCount = data == null ? 0 : data.length;
-        this.data = data == null ? null : Arrays.copyOf(data, data.length);
-        setDataLength(byteCount + 1);
+        this.data = data == null ? new byte[0] : Arrays.copyOf(data, data.length);
+
+        // The data of a read spanning several frames does not fit the
+        // length byte, such a response is never written out as one frame
+        if (byteCount + 4 < 200) {
+            setDataLength(byteCount + 4);
+        }
+    }
+
+    /**
+     * Decodes the value with the item registered for its data identity in
+     * the default dictionary
+     *
+     * @return Mantissa of the value or {@link Dlt645DataItem#INVALID}
+     * @throws IllegalStateException If the data identity is not in the dictionary
+     */
+    public long getMantissa() {
+        return getMantissa(Dlt645DataDictionary.getDefault());
+    }
+
+    /**
+     * Decodes the value with the item registered for its data identity
+     *
+     * @param dictionary Dictionary to look the data identity up in
+     * @return Mantissa of the value or {@link Dlt645DataItem#INVALID}
+     * @throws IllegalStateException If the data identity is not in the dictionary
+     */
+    public long getMantissa(Dlt645DataDictionary dictionary) {
+        Dlt645DataItem item = dictionary.get(getDataIdentityAsInt());
+        if (item == null) {
+            throw new IllegalStateException(String.format("Unknown data identity %08X", getDataIdentityAsInt()));
+        }
+        return getMantissa(item);
+    }
+
+    /**
+     * Decodes the value with the given item
+     *
+     * @param item Item describing the value
+     * @return Mantissa of the value or {@link Dlt645DataItem#INVALID}
+     * @throws IllegalStateException If the value is shorter than the item
+     */
+    public synchronized long getMantissa(Dlt645DataItem item) {
+        if (item.getLength() > byteCount) {
+            throw new IllegalStateException(String.format("%d bytes received for %s", byteCount, item));
+        }
+        unpack();
+        return item.decode(data, 0);
+    }
+
+    /**
+     * Splits the value of a block read into the mantissas of its items
+     *
+     * @param block     Layout of the block
+     * @param mantissas Receives the mantissas in item order
+     * @return Number of items decoded
+     */
+    public synchronized int getMantissas(Dlt645DataBlock block, long[] mantissas) {
+        unpack();
+        return block.decode(data, 0, byteCount, mantissas);
+    }
+
+    /**
+     * Sets the data identity and value from a data field that is already
+     * encoded for the wire, as kept by a process image. The field is written
+     * out as it is and only decoded if the response is inspected.
+     *
+     * @param encoded Data identity and value with the 0x33 offset, shared and
+     *                not to be modified
+     */
+    synchronized void setEncoded(byte[] encoded) {
+        this.encoded = encoded;
+        byteCount = encoded.length - 4;
+        setDataLength(encoded.length);
+    }
+
+    /**
+     * Decodes the data field set with {@link #setEncoded(byte[])}
+     */
+    private void unpack() {
+        if (encoded != null) {
+            dataIdentity = new byte[4];
+            Dlt645Util.removeOffset(encoded, 0, dataIdentity, 0, 4);
+            data = new byte[byteCount];
+            Dlt645Util.removeOffset(encoded, 4, data, 0, byteCount);
+            encoded = null;
+        }
+    }
+
+    /**
+     * Returns the array to read a value into, the current one if the response
+     * is read again and the value has the same length
+     */
+    private byte[] getDataBuffer(int length) {
+        return data != null && data.length == length ? data : new byte[length];
     }
 
     @Override
-    public void writeData(DataOutput dout) throws IOException {
-        dout.writeByte(byteCount);
-        dout.write(data);
+    public synchronized void writeData(DataOutput dout) throws IOException {
+        if (encoded != null) {
+            dout.write(encoded);
+            return;
+        }
+        for (byte b : dataIdentity) {
+            dout.writeByte(b + 0x33);
+        }
+        for (int i = 0; i < byteCount; i++) {
+            dout.writeByte(data[i] + 0x33);
+        }
     }
 
     @Override
-    public void readData(DataInput din) throws IOException {
-        byteCount = din.readUnsignedByte() - 4;
-        byte[] dataIdentity = new byte[4];
+    public synchronized void readData(DataInput din) throws IOException {
+        encoded = null;
+        int length = readDataLength(din);
+        if (length < 4) {
+            throw new IOException(String.format("Invalid data length %d for a read response", length));
+        }
+        byteCount = length - 4;
         din.readFully(dataIdentity, 0, 4);
+        Dlt645Util.removeOffset(dataIdentity, 0, dataIdentity, 0, 4);
 
-        data = new byte[byteCount];
+        data = getDataBuffer(byteCount);
         din.readFully(data, 0, data.length);
+        Dlt645Util.removeOffset(data, 0, data, 0, byteCount);
 
-        setDataLength(byteCount + 1);
+        setDataLength(length);
     }
 
     @Override
-    public byte[] getMessage() {
-        byte[] result = new byte[byteCount + 1];
-        result[0] = (byte)byteCount;
+    public synchronized int writeData(ByteBuffer buffer, int index) {
+        if (encoded != null) {
+            for (byte b : encoded) {
+                buffer.put(index++, b);
+            }
+            return index;
+        }
+        index = putEncoded(buffer, index, dataIdentity, 0, 4);
+        return putEncoded(buffer, index, data, 0, byteCount);
+    }
 
-        System.arraycopy(data, 0, result, 1, byteCount);
+    @Override
+    public synchronized int readData(ByteBuffer buffer, int index) throws IOException {
+        encoded = null;
+        int length = readDataLength(buffer, index);
+        if (length < 4) {
+            throw new IOException(String.format("Invalid data length %d for a read response", length));
+        }
+        byteCount = length - 4;
+        index = getDecoded(buffer, index + 1, dataIdentity, 0, 4);
+        data = getDataBuffer(byteCount);
+        index = getDecoded(buffer, index, data, 0, byteCount);
+
+        setDataLength(length);
+        return index;
+    }
+
+    @Override
+    public synchronized byte[] getMessage() {
+        unpack();
+        byte[] result = new byte[byteCount + 4];
+        System.arraycopy(dataIdentity, 0, result, 0, 4);
+        System.arraycopy(data, 0, result, 4, byteCount);
         return result;
     }
 }
@@ -0,0 +1,108 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Request for the next frame of a read whose response was flagged with
+ * {@link Dlt645#FOLLOW_UP_FLAG} (control code 0x12).
+ * <p>
+ * The first follow-up frame has sequence number 1, the slave echoes the
+ * sequence number at the end of its response.
+ */
+public class ReadSubsequentRequest extends Dlt645Request {
+
+    private byte[] dataIdentity = new byte[4];
+    private int sequence;
+
+    public ReadSubsequentRequest() {
+        super();
+
+        setFunctionCode(Dlt645.READ_SUB_DATA);
+        setDataLength(5);
+    }
+
+    /**
+     * Constructs a request for a follow-up frame
+     *
+     * @param dataIdentity Data identity of the original read (4 bytes, as sent on the wire)
+     * @param sequence     Sequence number of the frame, starting at 1
+     */
+    public ReadSubsequentRequest(byte[] dataIdentity, int sequence) {
+        this();
+
+        this.dataIdentity = Arrays.copyOf(dataIdentity, 4);
+        this.sequence = sequence & 0xFF;
+    }
+
+    @Override
+    public Dlt645Response getResponse() {
+        return updateResponseWithHeader(new ReadSubsequentResponse());
+    }
+
+    @Override
+    public Dlt645Response createResponse(AbstractDlt645Listener listener) {
+        // No multi frame data is held on the slave side
+        return createExceptionResponse(Dlt645.ERROR_NO_DATA);
+    }
+
+    public byte[] getDataIdentity() {
+        return Arrays.copyOf(dataIdentity, 4);
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        for (byte b : dataIdentity) {
+            dout.writeByte(b + 0x33);
+        }
+        dout.writeByte(sequence + 0x33);
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = din.readUnsignedByte();
+        if (length < 5) {
+            throw new IOException(String.format("Invalid data length %d for a follow-up request", length));
+        }
+        din.readFully(dataIdentity, 0, 4);
+        Dlt645Util.removeOffset(dataIdentity, 0, dataIdentity, 0, 4);
+        sequence = (din.readUnsignedByte() - 0x33) & 0xFF;
+        din.skipBytes(length - 5);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        index = putEncoded(buffer, index, dataIdentity, 0, 4);
+        buffer.put(index++, (byte)(sequence + 0x33));
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length < 5) {
+            throw new IOException(String.format("Invalid data length %d for a follow-up request", length));
+        }
+        getDecoded(buffer, index + 1, dataIdentity, 0, 4);
+        sequence = (buffer.get(index + 5) - 0x33) & 0xFF;
+        return index + 1 + length;
+    }
+
+    @Override
+    public byte[] getMessage() {
+        byte[] result = Arrays.copyOf(dataIdentity, 5);
+        result[4] = (byte)sequence;
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package io.zfunny.j2dlt.dlt645.msg;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Response to a {@link ReadSubsequentRequest} (control code 0x92, or 0xB2
+ * if yet more frames follow). The data is followed by the sequence number
+ * of the frame.
+ */
+public class ReadSubsequentResponse extends ReadResponse {
+
+    private int sequence;
+
+    public ReadSubsequentResponse() {
+        super();
+        setFunctionCode(Dlt645.READ_SUB_DATA | Dlt645.RESPONSE_FLAG);
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence & 0xFF;
+    }
+
+    /**
+     * Sets the data of the frame
+     *
+     * @param data Data without the 0x33 offset
+     * @throws IllegalArgumentException If the data does not fit a single frame
+     */
+    @Override
+    public synchronized void setData(byte[] data) {
+        int length = (data == null ? 0 : data.length) + 5;
+        if (length > MAX_DATA_LENGTH) {
+            throw new IllegalArgumentException(String.format("%d data bytes do not fit a follow-up frame", length - 5));
+        }
+        super.setData(data);
+
+        // The sequence number follows the data
+        setDataLength(length);
+    }
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        byte[] dataIdentity = getDataIdentity();
+        byte[] data = getData();
+        for (byte b : dataIdentity) {
+            dout.writeByte(b + 0x33);
+        }
+        for (byte b : data) {
+            dout.writeByte(b + 0x33);
+        }
+        dout.writeByte(sequence + 0x33);
+    }
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int length = readDataLength(din);
+        if (length < 5) {
+            throw new IOException(String.format("Invalid data length %d for a follow-up response", length));
+        }
+        byte[] dataIdentity = new byte[4];
+        din.readFully(dataIdentity, 0, 4);
+        Dlt645Util.removeOffset(dataIdentity, 0, dataIdentity, 0, 4);
+        byte[] data = new byte[length - 5];
+        din.readFully(data, 0, data.length);
+        Dlt645Util.removeOffset(data, 0, data, 0, data.length);
+        sequence = (din.readUnsignedByte() - 0x33) & 0xFF;
+
+        setDataIdentity(dataIdentity);
+        setData(data);
+        setDataLength(length);
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, int index) {
+        byte[] dataIdentity = getDataIdentity();
+        byte[] data = getData();
+        index = putEncoded(buffer, index, dataIdentity, 0, 4);
+        index = putEncoded(buffer, index, data, 0, data.length);
+        buffer.put(index++, (byte)(sequence + 0x33));
+        return index;
+    }
+
+    @Override
+    public int readData(ByteBuffer buffer, int index) throws IOException {
+        int length = readDataLength(buffer, index);
+        if (length < 5) {
+            throw new IOException(String.format("Invalid data length %d for a follow-up response", length));
+        }
+        byte[] dataIdentity = new byte[4];
+        index = getDecoded(buffer, index + 1, dataIdentity, 0, 4);
+        byte[] data = new byte[length - 5];
+        index = getDecoded(buffer, index, data, 0, data.length);
+        sequence = (buffer.get(index++) - 0x33) & 0xFF;
+
+        setDataIdentity(dataIdentity);
+        setData(data);
+        setDataLength(length);
+        return index;
+    }
+}
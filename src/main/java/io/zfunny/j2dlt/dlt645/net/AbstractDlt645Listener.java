@@ -9,7 +9,6 @@ import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
 import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
 import io.zfunny.j2dlt.dlt645.procimg.ProcessImage;
 import io.zfunny.j2dlt.dlt645.slave.Dlt645Slave;
-import io.zfunny.j2dlt.dlt645.slave.Dlt645SlaveFactory;
 import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +24,7 @@ public abstract class AbstractDlt645Listener implements Runnable {
     protected String error;
     protected int timeout = Dlt645.DEFAULT_TIMEOUT;
     protected String threadName;
+    private volatile Dlt645Slave slave;
 
     public abstract void stop();
 
@@ -124,13 +124,33 @@ public abstract class AbstractDlt645Listener implements Runnable {
      * @return Process image associated with this listener and Unit ID
      */
     public ProcessImage getProcessImage(long unitId) {
-        Dlt645Slave slave = Dlt645SlaveFactory.getSlave(this);
+        Dlt645Slave slave = this.slave;
         if (slave != null) {
             return slave.getProcessImage(unitId);
         }
         return null;
     }
 
+    /**
+     * Returns the slave whose process images this listener serves
+     *
+     * @return Slave or null if the listener is not owned by a slave
+     */
+    public Dlt645Slave getSlave() {
+        return slave;
+    }
+
+    /**
+     * Sets the slave whose process images this listener serves. The slave
+     * is held directly so that requests are dispatched without going
+     * through {@link io.zfunny.j2dlt.dlt645.slave.Dlt645SlaveFactory}.
+     *
+     * @param slave Owning slave
+     */
+    public void setSlave(Dlt645Slave slave) {
+        this.slave = slave;
+    }
+
     /**
      * Gets the name of the thread used by the listener
      *
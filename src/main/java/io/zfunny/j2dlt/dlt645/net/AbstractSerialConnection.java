@@ -76,6 +76,20 @@ public abstract class AbstractSerialConnection {
      */
     public abstract int getBaudRate();
 
+    /**
+     * Changes the baud rate of an open connection on the fly, e.g. once the
+     * meters have agreed to a faster rate. The rate is not kept: reopening
+     * the connection goes back to the rate it was configured with.
+     * Connections that cannot change their rate throw an exception, which
+     * is what this default does.
+     *
+     * @param baudRate New baud rate
+     * @throws IOException If the port does not take the rate
+     */
+    public void setBaudRate(int baudRate) throws IOException {
+        throw new IOException(String.format("Changing the baud rate of %s is not supported", getPortName()));
+    }
+
     /**
      * Returns current data bits value
      *
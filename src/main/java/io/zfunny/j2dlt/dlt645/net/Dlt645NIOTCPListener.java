@@ -0,0 +1,481 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP listener that serves all of its connections from a single selector
+ * thread, for slaves that face thousands of concentrators or gateways.
+ * <p>
+ * Unlike {@link Dlt645TCPListener}, a connection does not hold a thread, so
+ * connections beyond a pool size are not starved. Frames are exchanged
+ * headless, as on the serial side of a gateway. Requests for addresses
+ * without a process image are dropped, like a meter on a bus ignores
+ * frames for other meters.
+ * <p>
+ * An idle connection costs its channel and a frame decoder: all reads go
+ * through one buffer owned by the loop and a connection only gets an output
+ * buffer while the peer is not taking its responses. It is not read from
+ * until the backlog has been sent.
+ * <p>
+ * Requests are answered on the loop thread, so process images must not
+ * block. A connection that fails is closed on its own, and when no more
+ * connections can be accepted, e.g. because the process is out of file
+ * descriptors, accepting pauses for a moment while the others are served.
+ */
+public class Dlt645NIOTCPListener extends AbstractDlt645Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(Dlt645NIOTCPListener.class);
+    private static final int BACKLOG = 100;
+    private static final long ACCEPT_PAUSE = 1000;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(Dlt645FrameDecoder.MAX_FRAME_LENGTH * 2);
+    private final ByteBuffer responseBuffer = ByteBuffer.allocate(Dlt645.MAX_MESSAGE_LENGTH + Dlt645.wakeBytes.length + 2);
+    private final List<Connection> connections = new ArrayList<Connection>();
+    private final Queue<Connection> closing = new ConcurrentLinkedQueue<Connection>();
+    private volatile Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private long acceptPausedUntil;
+    private Thread listener;
+    private volatile int maxIdleSeconds;
+    private volatile int maxConnections;
+
+    /**
+     * Constructs a listener on the wildcard address (0.0.0.0), which will
+     * accept connections on all available adapters/interfaces
+     */
+    public Dlt645NIOTCPListener() {
+        this(null);
+    }
+
+    /**
+     * Constructs a listener
+     *
+     * @param addr The interface to use for listening, null for all
+     */
+    public Dlt645NIOTCPListener(InetAddress addr) {
+        address = addr;
+    }
+
+    /**
+     * Sets a maximum time a connection can be idle, i.e. has no input/output,
+     * after which it is closed by the {@link IdleConnectionReaper}. See
+     * {@link Dlt645TCPListener#setMaxIdleSeconds(int)}.
+     *
+     * @param maxIdleSeconds 0 to disable the check, or a positive number to set it
+     */
+    public void setMaxIdleSeconds(int maxIdleSeconds) {
+        if (maxIdleSeconds < 0) {
+            throw new IllegalArgumentException("maxIdleSeconds must be >= 0: " + maxIdleSeconds);
+        }
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    /**
+     * Sets the number of connections served at the same time. Connections
+     * accepted beyond it are closed straight away.
+     *
+     * @param maxConnections 0 for no limit, or a positive number
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections must be >= 0: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Returns the number of open connections
+     *
+     * @return Connection count
+     */
+    public int getConnectionCount() {
+        synchronized (connections) {
+            return connections.size();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        // Set a suitable thread name
+        if (threadName == null || threadName.isEmpty()) {
+            threadName = String.format("Dlt645 NIO TCP Listener [port:%d]", port);
+        }
+        Thread.currentThread().setName(threadName);
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(address, port), BACKLOG);
+            acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            logger.debug("Listening to {} (Port {})", serverChannel.getLocalAddress(), port);
+        }
+
+        // Catch any fatal errors and set the listening flag to false to indicate an error
+        catch (Exception e) {
+            error = String.format("Cannot start NIO TCP listener on port %d - %s", port, e.getMessage());
+            listening = false;
+            closeSelector();
+            return;
+        }
+
+        listener = Thread.currentThread();
+        listening = true;
+        try {
+            while (listening) {
+                selector.select(getSelectTimeout());
+                Connection connection;
+                while ((connection = closing.poll()) != null) {
+                    connection.closeNow();
+                }
+                resumeAccepting();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key == acceptKey) {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                    }
+                    else if (key.attachment() != null) {
+                        handle((Connection)key.attachment());
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            error = String.format("Problem running listener - %s", e.getMessage());
+        }
+        finally {
+            listening = false;
+            for (Connection connection : getConnections()) {
+                connection.closeNow();
+            }
+            closing.clear();
+            closeSelector();
+        }
+    }
+
+    @Override
+    public void stop() {
+        listening = false;
+        try {
+            Selector s = selector;
+            if (s != null) {
+                s.wakeup();
+            }
+            if (listener != null && listener != Thread.currentThread()) {
+                listener.join();
+            }
+        }
+        catch (Exception ex) {
+            logger.error("Error while stopping Dlt645NIOTCPListener", ex);
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            }
+            catch (IOException e) {
+                // Accepting again straight away would only spin until a descriptor is freed
+                logger.warn("Cannot accept connections, pausing for {} ms - {}", ACCEPT_PAUSE, e.getMessage());
+                acceptKey.interestOps(0);
+                acceptPausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_PAUSE);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            register(channel);
+        }
+    }
+
+    private void register(SocketChannel channel) {
+        try {
+            int max = maxConnections;
+            if (max > 0 && getConnectionCount() >= max) {
+                logger.warn("Refusing connection from {}, {} connections open", channel.getRemoteAddress(), max);
+                channel.close();
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            synchronized (connections) {
+                connections.add(connection);
+            }
+            if (maxIdleSeconds > 0) {
+                IdleConnectionReaper.getInstance().register(connection, maxIdleSeconds);
+            }
+            logger.debug("Making new connection {}", connection.remote);
+        }
+        catch (IOException e) {
+            logger.debug("Cannot accept connection - {}", e.getMessage());
+            try {
+                channel.close();
+            }
+            catch (IOException ex) {
+                logger.debug("close()", ex);
+            }
+        }
+    }
+
+    private void resumeAccepting() {
+        if (acceptPausedUntil != 0 && System.nanoTime() - acceptPausedUntil >= 0) {
+            acceptPausedUntil = 0;
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Works out how long the selector may block before accepting resumes
+     *
+     * @return Timeout in milliseconds, 0 meaning no limit
+     */
+    private long getSelectTimeout() {
+        if (acceptPausedUntil == 0) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(acceptPausedUntil - System.nanoTime()) + 1);
+    }
+
+    private void handle(Connection connection) {
+        SelectionKey key = connection.key;
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(connection);
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Closing connection {} - {}", connection.remote, e.getMessage());
+            connection.closeNow();
+        }
+        catch (RuntimeException e) {
+            // Only this connection is dropped, the others are still served
+            logger.error("Closing connection {} after an unexpected failure", connection.remote, e);
+            connection.closeNow();
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int n = connection.channel.read(readBuffer);
+        if (n < 0) {
+            logger.debug("Connection {} closed by peer", connection.remote);
+            connection.closeNow();
+            return;
+        }
+        connection.lastActivity = System.nanoTime();
+        readBuffer.flip();
+        while (connection.decoder.decode(readBuffer)) {
+            Dlt645Response response = createResponse(connection);
+            if (response != null) {
+                connection.send(encode(response));
+            }
+        }
+    }
+
+    /**
+     * Turns the frame held by the decoder of the connection into a request
+     * and works out the response
+     *
+     * @param connection Connection that received the frame
+     * @return Response or null if the frame is not answered
+     */
+    private Dlt645Response createResponse(Connection connection) {
+        Dlt645FrameDecoder decoder = connection.decoder;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request from {}: {}", connection.remote, Dlt645Util.toHex(decoder.getFrame(), 0, decoder.getFrameLength()));
+        }
+        int controlCode = decoder.getControlCode();
+        if ((controlCode & Dlt645.RESPONSE_FLAG) != 0) {
+            return null;
+        }
+        if (getProcessImage(decoder.getAddress()) == null) {
+            logger.debug("Request not meant for us");
+            return null;
+        }
+        Dlt645Request request = Dlt645Request.createDlt645Request(controlCode, 0);
+        if (request == null) {
+            logger.debug("Ignoring request with unsupported control code {}", String.format("%02X", controlCode));
+            return null;
+        }
+        try {
+            request.setHeadless();
+            request.readFrom(ByteBuffer.wrap(decoder.getFrame(), 0, decoder.getFrameLength()));
+            return request.createResponse(this);
+        }
+        catch (Exception e) {
+            logger.debug("Cannot answer request from {} - {}", connection.remote, e.getMessage());
+            return null;
+        }
+    }
+
+    private ByteBuffer encode(Dlt645Response response) {
+        responseBuffer.clear();
+        response.setHeadless();
+        response.writeTo(responseBuffer);
+        int len = responseBuffer.position();
+        responseBuffer.put((byte)Dlt645Util.calculateCS(responseBuffer, Dlt645.wakeBytes.length, len - 1));
+        responseBuffer.put(Dlt645.endByte);
+        responseBuffer.flip();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Response: {}", Dlt645Util.toHex(responseBuffer.array(), 0, responseBuffer.limit()));
+        }
+        return responseBuffer;
+    }
+
+    private List<Connection> getConnections() {
+        synchronized (connections) {
+            return new ArrayList<Connection>(connections);
+        }
+    }
+
+    private void closeSelector() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("close()", e);
+        }
+    }
+
+    /**
+     * State of one accepted connection, only touched by the loop thread
+     * apart from the methods used by the idle reaper
+     */
+    private class Connection implements IdleConnectionReaper.Monitored {
+
+        private final SocketChannel channel;
+        private final SocketAddress remote;
+        private final Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+        private SelectionKey key;
+        private ByteBuffer pending;
+        private volatile long lastActivity = System.nanoTime();
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            remote = channel.getRemoteAddress();
+        }
+
+        /**
+         * Writes a response, keeping whatever the socket does not take
+         */
+        private void send(ByteBuffer data) throws IOException {
+            if (pending == null) {
+                channel.write(data);
+                if (!data.hasRemaining()) {
+                    lastActivity = System.nanoTime();
+                    return;
+                }
+                pending = ByteBuffer.allocate(Math.max(data.remaining(), Dlt645FrameDecoder.MAX_FRAME_LENGTH));
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+            else if (pending.remaining() < data.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(pending.position() + data.remaining() + Dlt645FrameDecoder.MAX_FRAME_LENGTH);
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.put(data);
+        }
+
+        /**
+         * Writes the backlog and goes back to reading once it is gone
+         */
+        private void flush() throws IOException {
+            pending.flip();
+            channel.write(pending);
+            lastActivity = System.nanoTime();
+            if (pending.hasRemaining()) {
+                pending.compact();
+            }
+            else {
+                pending = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        @Override
+        public long getLastActivityTimestamp() {
+            return lastActivity;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return channel.isOpen();
+        }
+
+        /**
+         * Closes the connection from the idle reaper. The close is handed
+         * to the loop thread, so the key is never cancelled while the loop
+         * is using it.
+         */
+        @Override
+        public void close() {
+            Selector s = selector;
+            if (Thread.currentThread() == listener || !listening || s == null) {
+                closeNow();
+                return;
+            }
+            closing.add(this);
+            s.wakeup();
+        }
+
+        /**
+         * Closes the connection, on the loop thread once it runs
+         */
+        private void closeNow() {
+            synchronized (connections) {
+                connections.remove(this);
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.debug("close()", e);
+            }
+        }
+    }
+}
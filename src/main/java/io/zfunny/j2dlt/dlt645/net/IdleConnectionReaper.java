@@ -0,0 +1,177 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes slave connections that have been idle for too long, for all
+ * listeners from a single thread.
+ * <p>
+ * Connections are kept on a hashed timing wheel with one slot per second.
+ * A connection sits in the slot of the second at which it would expire if
+ * nothing happened on it. When the slot comes round its last activity is
+ * checked: it is closed if it really is idle, otherwise it moves to the slot
+ * of its new expiry. A tick therefore only visits the connections due in
+ * that second, and each connection is visited about once per idle limit no
+ * matter how busy it is. Closed connections are dropped when next visited.
+ */
+public class IdleConnectionReaper implements Runnable {
+
+    /**
+     * A connection that can be watched by the reaper
+     */
+    public interface Monitored {
+
+        /**
+         * Returns the time of the last input or output
+         *
+         * @return <tt>System.nanoTime()</tt> of the last activity
+         */
+        long getLastActivityTimestamp();
+
+        /**
+         * Returns true while the connection is open
+         *
+         * @return True if open
+         */
+        boolean isConnected();
+
+        /**
+         * Closes the connection, called from the reaper thread
+         */
+        void close();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(IdleConnectionReaper.class);
+    private static final long TICK = TimeUnit.SECONDS.toNanos(1);
+    private static final int WHEEL_SIZE = 512;
+
+    private static IdleConnectionReaper instance;
+
+    private final List<List<Entry>> wheel = new ArrayList<List<Entry>>(WHEEL_SIZE);
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<Entry>();
+    private List<Entry> spare = new ArrayList<Entry>();
+    private final long start = System.nanoTime();
+    private long tick;
+
+    private IdleConnectionReaper() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<Entry>());
+        }
+    }
+
+    /**
+     * Returns the reaper shared by all listeners, starting its thread on first use
+     *
+     * @return Reaper
+     */
+    public static synchronized IdleConnectionReaper getInstance() {
+        if (instance == null) {
+            instance = new IdleConnectionReaper();
+            Thread thread = new Thread(instance, "Dlt645 Idle Connection Reaper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts watching a connection. This method may be called from any thread.
+     *
+     * @param connection     Connection to watch
+     * @param maxIdleSeconds Seconds of total silence after which the connection is closed
+     */
+    public void register(Monitored connection, int maxIdleSeconds) {
+        if (maxIdleSeconds <= 0) {
+            throw new IllegalArgumentException("maxIdleSeconds must be > 0: " + maxIdleSeconds);
+        }
+        added.add(new Entry(connection, TimeUnit.SECONDS.toNanos(maxIdleSeconds)));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long wait = start + (tick + 1) * TICK - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            tick++;
+            Entry entry;
+            while ((entry = added.poll()) != null) {
+                schedule(entry, entry.connection.getLastActivityTimestamp() + entry.maxIdle);
+            }
+            expire();
+        }
+    }
+
+    /**
+     * Checks the connections in the slot of the current tick
+     */
+    private void expire() {
+        int slot = (int)(tick % WHEEL_SIZE);
+        List<Entry> due = wheel.get(slot);
+        wheel.set(slot, spare);
+        spare = due;
+        long now = System.nanoTime();
+        for (Entry entry : due) {
+            Monitored connection = entry.connection;
+            if (!connection.isConnected()) {
+                continue;
+            }
+            if (entry.tick > tick) {
+                // Due in a later turn of the wheel
+                wheel.get(slot).add(entry);
+                continue;
+            }
+            long idle = now - connection.getLastActivityTimestamp();
+            if (idle > entry.maxIdle) {
+                logger.warn("Watchdog expired: {}, limit: {}", TimeUnit.NANOSECONDS.toSeconds(idle), TimeUnit.NANOSECONDS.toSeconds(entry.maxIdle));
+                try {
+                    connection.close();
+                }
+                catch (RuntimeException e) {
+                    logger.debug("Cannot close idle connection - {}", e.getMessage());
+                }
+            }
+            else {
+                schedule(entry, now - idle + entry.maxIdle);
+            }
+        }
+        due.clear();
+    }
+
+    /**
+     * Puts a connection in the slot of the tick at which it expires
+     */
+    private void schedule(Entry entry, long deadline) {
+        entry.tick = Math.max(tick + 1, (deadline - start + TICK - 1) / TICK);
+        wheel.get((int)(entry.tick % WHEEL_SIZE)).add(entry);
+    }
+
+    /**
+     * A watched connection and the tick at which it is checked next
+     */
+    private static class Entry {
+
+        private final Monitored connection;
+        private final long maxIdle;
+        private long tick;
+
+        private Entry(Monitored connection, long maxIdle) {
+            this.connection = connection;
+            this.maxIdle = maxIdle;
+        }
+    }
+}
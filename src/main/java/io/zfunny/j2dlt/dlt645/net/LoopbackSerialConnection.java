@@ -0,0 +1,308 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
+import io.zfunny.j2dlt.dlt645.io.Dlt645RTUTransport;
+import io.zfunny.j2dlt.dlt645.io.Dlt645SerialTransport;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serial connection to a {@link VirtualMeterBus}, for use wherever a
+ * {@link SerialConnection} would be used with real hardware.
+ * <p>
+ * Received bytes only become readable once they have arrived at the baud
+ * rate they were sent at, and reads block and time out the way a jSerialComm port does
+ * in the timeout mode set with {@link #setComPortTimeouts(int, int, int)}.
+ */
+public class LoopbackSerialConnection extends AbstractSerialConnection {
+
+    private static final int RECEIVE_BUFFER_SIZE = 4096;
+
+    private final VirtualMeterBus bus;
+    private final String name;
+    private final byte[] receiveBuffer = new byte[RECEIVE_BUFFER_SIZE];
+    private final long[] arrivalTimes = new long[RECEIVE_BUFFER_SIZE];
+    private int head;
+    private int count;
+    private long overruns;
+    private Dlt645SerialTransport transport;
+    private volatile boolean open;
+    private volatile boolean echo;
+    private volatile int interCharacterGap;
+    private volatile int baudRate;
+    private int timeoutMode = TIMEOUT_READ_BLOCKING;
+    private int readTimeout = Dlt645.DEFAULT_TIMEOUT;
+    private int timeout = Dlt645.DEFAULT_TIMEOUT;
+
+    LoopbackSerialConnection(VirtualMeterBus bus, String name) {
+        this.bus = bus;
+        this.name = name;
+        baudRate = bus.getBaudRate();
+    }
+
+    /**
+     * Returns the bus the port is attached to
+     *
+     * @return Bus
+     */
+    public VirtualMeterBus getBus() {
+        return bus;
+    }
+
+    /**
+     * Returns true if the port receives its own transmissions
+     *
+     * @return True if echoing
+     */
+    public boolean isEcho() {
+        return echo;
+    }
+
+    /**
+     * Sets whether the port receives its own transmissions, as many RS485
+     * adapters do. The transport is told to read the echo back.
+     *
+     * @param echo True to echo
+     */
+    public synchronized void setEcho(boolean echo) {
+        this.echo = echo;
+        if (transport != null) {
+            transport.setEcho(echo);
+        }
+    }
+
+    /**
+     * Returns the pause the port leaves between characters it sends
+     *
+     * @return Pause in microseconds
+     */
+    public int getInterCharacterGap() {
+        return interCharacterGap;
+    }
+
+    /**
+     * Sets the pause the port leaves between characters it sends
+     *
+     * @param interCharacterGap Pause in microseconds
+     */
+    public void setInterCharacterGap(int interCharacterGap) {
+        this.interCharacterGap = interCharacterGap;
+    }
+
+    /**
+     * Returns the number of received bytes dropped because nobody read them
+     *
+     * @return Dropped bytes
+     */
+    public long getOverruns() {
+        synchronized (bus) {
+            return overruns;
+        }
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        if (!open) {
+            transport = new Dlt645RTUTransport();
+            transport.setEcho(echo);
+            transport.setTimeout(timeout);
+            transport.setCommPort(this);
+            synchronized (bus) {
+                head = 0;
+                count = 0;
+                baudRate = bus.getBaudRate();
+                open = true;
+            }
+            bus.attach(this);
+        }
+    }
+
+    @Override
+    public AbstractDlt645Transport getDlt645Transport() {
+        return transport;
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, long bytesToRead) {
+        int wanted = (int)Math.min(bytesToRead, buffer.length);
+        synchronized (bus) {
+            long deadline = readTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeout) : 0;
+            while (open) {
+                long now = System.nanoTime();
+                int arrived = arrived(now);
+                if (arrived >= wanted || timeoutMode == TIMEOUT_NONBLOCKING
+                        || (arrived > 0 && timeoutMode != TIMEOUT_READ_BLOCKING)) {
+                    return take(buffer, Math.min(arrived, wanted));
+                }
+
+                // Sleep until the byte that completes the read arrives, or
+                // the next byte is sent, or the read times out
+                long wake = deadline;
+                int missing = (timeoutMode == TIMEOUT_READ_BLOCKING ? wanted : 1) - 1;
+                if (missing < count) {
+                    long arrival = arrivalTimes[(head + missing) % RECEIVE_BUFFER_SIZE];
+                    wake = wake == 0 ? arrival : Math.min(wake, arrival);
+                }
+                if (deadline != 0 && now - deadline >= 0) {
+                    return take(buffer, Math.min(arrived, wanted));
+                }
+                try {
+                    if (wake == 0) {
+                        bus.wait();
+                    }
+                    else if (wake - now > 0) {
+                        long nanos = wake - now;
+                        bus.wait(TimeUnit.NANOSECONDS.toMillis(nanos), (int)(nanos % 1000000));
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return take(buffer, Math.min(arrived(System.nanoTime()), wanted));
+                }
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public int writeBytes(byte[] buffer, long bytesToWrite) {
+        if (!open) {
+            return -1;
+        }
+        int len = (int)Math.min(bytesToWrite, buffer.length);
+        bus.transmit(this, baudRate, buffer, 0, len, 0, TimeUnit.MICROSECONDS.toNanos(interCharacterGap));
+        return len;
+    }
+
+    @Override
+    public int bytesAvailable() {
+        synchronized (bus) {
+            return arrived(System.nanoTime());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        bus.detach(this);
+        synchronized (bus) {
+            open = false;
+            count = 0;
+            bus.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a byte put on the bus, called with the bus locked
+     *
+     * @param b    Byte
+     * @param time <tt>System.nanoTime()</tt> at which the byte has arrived
+     */
+    void deliver(byte b, long time) {
+        if (count == RECEIVE_BUFFER_SIZE) {
+            overruns++;
+            return;
+        }
+        int tail = (head + count) % RECEIVE_BUFFER_SIZE;
+        receiveBuffer[tail] = b;
+        arrivalTimes[tail] = time;
+        count++;
+    }
+
+    /**
+     * Counts the queued bytes that have arrived, called with the bus locked
+     */
+    private int arrived(long now) {
+        int arrived = 0;
+        while (arrived < count && arrivalTimes[(head + arrived) % RECEIVE_BUFFER_SIZE] - now <= 0) {
+            arrived++;
+        }
+        return arrived;
+    }
+
+    /**
+     * Removes bytes from the queue, called with the bus locked
+     */
+    private int take(byte[] buffer, int len) {
+        for (int i = 0; i < len; i++) {
+            buffer[i] = receiveBuffer[head];
+            head = (head + 1) % RECEIVE_BUFFER_SIZE;
+        }
+        count -= len;
+        return len;
+    }
+
+    @Override
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) throws IOException {
+        if (baudRate <= 0) {
+            throw new IOException(String.format("Invalid baud rate %d", baudRate));
+        }
+        synchronized (bus) {
+            this.baudRate = baudRate;
+        }
+    }
+
+    @Override
+    public int getNumDataBits() {
+        return bus.getNumDataBits();
+    }
+
+    @Override
+    public int getNumStopBits() {
+        return bus.getNumStopBits();
+    }
+
+    @Override
+    public int getParity() {
+        return bus.getParity();
+    }
+
+    @Override
+    public String getPortName() {
+        return name;
+    }
+
+    @Override
+    public String getDescriptivePortName() {
+        return String.format("Virtual bus port %s (%d baud)", name, baudRate);
+    }
+
+    @Override
+    public void setComPortTimeouts(int newTimeoutMode, int newReadTimeout, int newWriteTimeout) {
+        synchronized (bus) {
+            timeoutMode = newTimeoutMode;
+            readTimeout = newReadTimeout;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized int getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public synchronized void setTimeout(int timeout) {
+        this.timeout = timeout;
+        if (transport != null) {
+            transport.setTimeout(timeout);
+        }
+    }
+
+    @Override
+    public Set<String> getCommPorts() {
+        return Collections.singleton(name);
+    }
+}
@@ -0,0 +1,630 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
+import io.zfunny.j2dlt.dlt645.Dlt645IOException;
+import io.zfunny.j2dlt.dlt645.Dlt645SlaveException;
+import io.zfunny.j2dlt.dlt645.io.Dlt645Correlation;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Request;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ExceptionResponse;
+import io.zfunny.j2dlt.dlt645.util.Dlt645FrameTrace;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking connection to a serial-to-Ethernet gateway.
+ * <p>
+ * Frames are sent headless, exactly as on the RS485 side of the gateway.
+ * The connection is driven by a {@link NIOTCPMasterLoop} which may serve
+ * hundreds of gateways from a single thread. Requests can be submitted from
+ * any thread, they are queued and sent in order.
+ * <p>
+ * By default one request is in flight at a time, as a gateway with a single
+ * bus can only handle one. Gateways that queue requests for several RS485
+ * ports can be given a larger window with {@link #setMaxInFlight(int)}, so
+ * the LAN round trip is not paid for each request in turn. Responses are
+ * then matched to their requests by meter address, function code and data
+ * identity, because DL/T 645 frames carry no transaction ID. A request is
+ * held back while one with the same address, function and data identity is
+ * in flight, so a response always has a single owner. Abnormal responses
+ * carry no data identity and go to the oldest request for the meter and
+ * function, which is the one a meter answers first.
+ * <p>
+ * Apart from {@link #execute(Dlt645Request)} and the setters, all methods
+ * must only be called from the loop thread.
+ */
+public class NIOTCPMasterConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(NIOTCPMasterConnection.class);
+    private static final int WAKE_LENGTH = Dlt645.wakeBytes.length;
+    private static final int TRACE_DUMP_FRAMES = 16;
+
+    private final InetSocketAddress address;
+    private NIOTCPMasterLoop loop;
+    private volatile int timeout = Dlt645.DEFAULT_TIMEOUT;
+    private volatile int retries = Dlt645.DEFAULT_RETRIES;
+    private volatile int maxInFlight = 1;
+    private volatile Dlt645FrameTrace frameTrace;
+    private volatile int frameTraceBusId;
+
+    private final Queue<PendingRequest> inbox = new ConcurrentLinkedQueue<PendingRequest>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ArrayDeque<PendingRequest> queue = new ArrayDeque<PendingRequest>();
+    private final List<PendingRequest> inFlight = new ArrayList<PendingRequest>();
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connecting;
+    private boolean closed;
+    private long connectDeadline = Long.MAX_VALUE;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(Dlt645FrameDecoder.MAX_FRAME_LENGTH * 2);
+    private final Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+
+    /**
+     * Constructs a connection to the given gateway
+     *
+     * @param address Address and port of the gateway
+     */
+    public NIOTCPMasterConnection(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Returns the address of the gateway
+     *
+     * @return Gateway address
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the response timeout in milliseconds
+     *
+     * @return Timeout
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the connect and response timeout in milliseconds
+     *
+     * @param timeout Timeout
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of times a request is sent before it is failed
+     *
+     * @return Number of attempts
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a request is sent before it is failed
+     *
+     * @param retries Number of attempts
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Returns the number of requests that may await a response at the same time
+     *
+     * @return Window size
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the number of requests that may await a response at the same
+     * time. Only gateways that queue requests themselves, e.g. for several
+     * RS485 ports, should be given more than one.
+     *
+     * @param maxInFlight Window size, at least 1
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Records every frame sent to and received from the gateway in a trace
+     *
+     * @param trace Trace to record in, or null to stop recording
+     * @param busId ID of the gateway in the trace
+     */
+    public void setFrameTrace(Dlt645FrameTrace trace, int busId) {
+        frameTraceBusId = busId;
+        frameTrace = trace;
+    }
+
+    /**
+     * Returns the trace frames are recorded in
+     *
+     * @return Trace or null if frames are not recorded
+     */
+    public Dlt645FrameTrace getFrameTrace() {
+        return frameTrace;
+    }
+
+    /**
+     * Returns true if the socket to the gateway is established
+     *
+     * @return True if connected
+     */
+    public boolean isConnected() {
+        SocketChannel ch = channel;
+        return ch != null && ch.isConnected();
+    }
+
+    /**
+     * Queues a request for the gateway. This method may be called from any thread.
+     *
+     * @param request Request to send
+     * @return Future of the response, completed from the loop thread
+     */
+    public CompletableFuture<Dlt645Response> execute(Dlt645Request request) {
+        PendingRequest pending = new PendingRequest(request);
+        NIOTCPMasterLoop l = loop;
+        if (l == null) {
+            pending.future.completeExceptionally(new Dlt645Exception("Connection is not registered with a loop"));
+            return pending.future;
+        }
+        if (!l.isRunning()) {
+            pending.future.completeExceptionally(new Dlt645Exception("Master stopped"));
+            return pending.future;
+        }
+        inbox.add(pending);
+        if (scheduled.compareAndSet(false, true)) {
+            l.schedule(this);
+        }
+        if (!l.isRunning()) {
+            // The loop stopped while it was queued and may not have seen it
+            scheduled.set(false);
+            Dlt645Exception cause = new Dlt645Exception("Master stopped");
+            PendingRequest abandoned;
+            while ((abandoned = inbox.poll()) != null) {
+                abandoned.future.completeExceptionally(cause);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * Closes the connection from any thread, failing all outstanding requests
+     */
+    public void close() {
+        NIOTCPMasterLoop l = loop;
+        if (l != null) {
+            l.remove(this);
+        }
+    }
+
+    void setLoop(NIOTCPMasterLoop loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * Returns the time at which the loop has to call {@link #checkTimeout(Selector, long)}
+     *
+     * @return Deadline in nanoseconds or <tt>Long.MAX_VALUE</tt>
+     */
+    long getDeadline() {
+        if (connecting) {
+            return connectDeadline;
+        }
+        long deadline = Long.MAX_VALUE;
+        for (int i = 0; i < inFlight.size(); i++) {
+            long d = inFlight.get(i).deadline;
+            if (deadline == Long.MAX_VALUE || d - deadline < 0) {
+                deadline = d;
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Moves requests submitted by other threads into the send queue
+     *
+     * @param selector Selector of the loop
+     */
+    void processInbox(Selector selector) {
+        scheduled.set(false);
+        PendingRequest pending;
+        while ((pending = inbox.poll()) != null) {
+            queue.add(pending);
+        }
+        if (closed) {
+            failAll(new Dlt645Exception("Connection closed"));
+        }
+        else {
+            startNext(selector);
+        }
+    }
+
+    /**
+     * Handles a ready key of this connection
+     *
+     * @param selector Selector of the loop
+     */
+    void handle(Selector selector) {
+        SelectionKey k = key;
+        try {
+            if (k.isValid() && k.isConnectable()) {
+                finishConnect(selector);
+            }
+            if (k.isValid() && k.isReadable()) {
+                read(selector);
+            }
+            if (k.isValid() && k.isWritable() && k == key) {
+                write();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("I/O error on {} - {}", address, e.getMessage());
+            closeChannel();
+            failInFlight(new Dlt645IOException("I/O exception on %s - %s", address, e.getMessage()));
+            startNext(selector);
+        }
+        catch (RuntimeException e) {
+            // Only this gateway is dropped, the loop carries on with the others
+            logger.error("Unexpected failure on {}", address, e);
+            closeChannel();
+            failAll(new Dlt645Exception("Unexpected failure on %s - %s", address, e.toString()));
+        }
+    }
+
+    /**
+     * Fails or resends the requests in flight that have timed out
+     *
+     * @param selector Selector of the loop
+     * @param now      Current <tt>System.nanoTime()</tt>
+     */
+    void checkTimeout(Selector selector, long now) {
+        if (connecting) {
+            if (now - connectDeadline >= 0) {
+                closeChannel();
+                failAll(new Dlt645IOException("Connection timed out for %s", address));
+            }
+            return;
+        }
+        for (int i = 0; i < inFlight.size(); i++) {
+            PendingRequest pending = inFlight.get(i);
+            if (now - pending.deadline >= 0 && !retry(pending)) {
+                inFlight.remove(i--);
+                Dlt645FrameTrace trace = frameTrace;
+                if (trace != null && logger.isDebugEnabled()) {
+                    logger.debug("Last frames on {}:\n{}", address, trace.dump(frameTraceBusId, TRACE_DUMP_FRAMES));
+                }
+                pending.future.completeExceptionally(new Dlt645IOException("Timeout waiting for response from %s", address));
+            }
+        }
+        startNext(selector);
+    }
+
+    /**
+     * Closes the socket and fails every queued request
+     *
+     * @param cause Reason given to the callers
+     */
+    void shutdown(Dlt645Exception cause) {
+        closed = true;
+        disconnect(cause);
+    }
+
+    /**
+     * Closes the socket and fails every queued request when the loop stops.
+     * The connection is reopened by the next request once the loop runs again.
+     *
+     * @param cause Reason given to the callers
+     */
+    void disconnect(Dlt645Exception cause) {
+        scheduled.set(false);
+        PendingRequest pending;
+        while ((pending = inbox.poll()) != null) {
+            queue.add(pending);
+        }
+        closeChannel();
+        failAll(cause);
+    }
+
+    /**
+     * Sends queued requests while the window has room
+     */
+    private void startNext(Selector selector) {
+        while (!queue.isEmpty() && inFlight.size() < maxInFlight && !closed) {
+            PendingRequest next = queue.peek();
+            if (next.frame == null) {
+                try {
+                    next.frame = encode(next.request);
+                }
+                catch (IOException e) {
+                    queue.poll();
+                    next.future.completeExceptionally(new Dlt645IOException("Cannot encode request to %s - %s", address, e.getMessage()));
+                    continue;
+                }
+            }
+            if (isInFlight(next)) {
+                // Its response could not be told apart, wait for the other one
+                return;
+            }
+            queue.poll();
+            inFlight.add(next);
+            try {
+                if (channel == null) {
+                    openChannel(selector);
+                }
+                else if (!connecting) {
+                    send(next);
+                }
+            }
+            catch (IOException e) {
+                closeChannel();
+                failInFlight(new Dlt645IOException("Cannot send request to %s - %s", address, e.getMessage()));
+            }
+        }
+    }
+
+    private boolean isInFlight(PendingRequest pending) {
+        for (int i = 0; i < inFlight.size(); i++) {
+            if (inFlight.get(i).sameKey(pending)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void openChannel(Selector selector) throws IOException {
+        logger.debug("Connecting to {}", address);
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        if (channel.connect(address)) {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            sendInFlight();
+        }
+        else {
+            connecting = true;
+            connectDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+    }
+
+    private void finishConnect(Selector selector) throws IOException {
+        if (channel.finishConnect()) {
+            connecting = false;
+            connectDeadline = Long.MAX_VALUE;
+            key.interestOps(SelectionKey.OP_READ);
+            logger.debug("Connected to {}", address);
+            sendInFlight();
+            startNext(selector);
+        }
+    }
+
+    private static byte[] encode(Dlt645Request request) throws IOException {
+        request.setHeadless();
+        return request.getFrame();
+    }
+
+    private void sendInFlight() throws IOException {
+        for (int i = 0; i < inFlight.size(); i++) {
+            send(inFlight.get(i));
+        }
+    }
+
+    private void send(PendingRequest pending) throws IOException {
+        if (inFlight.size() == 1) {
+            // Nothing else is awaited, so anything half received is rubbish
+            decoder.reset();
+        }
+        pending.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending to {}: {}", address, Dlt645Util.toHex(pending.frame));
+        }
+        Dlt645FrameTrace trace = frameTrace;
+        if (trace != null) {
+            trace.record(frameTraceBusId, Dlt645FrameTrace.SENT, pending.frame, 0, pending.frame.length);
+        }
+        outbound.add(ByteBuffer.wrap(pending.frame));
+        write();
+    }
+
+    private void write() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = outbound.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            outbound.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void read(Selector selector) throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            throw new IOException("Connection closed by gateway");
+        }
+        readBuffer.flip();
+        while (decoder.decode(readBuffer)) {
+            onFrame();
+        }
+        readBuffer.compact();
+        startNext(selector);
+    }
+
+    private void onFrame() {
+        byte[] frame = decoder.getFrame();
+        int len = decoder.getFrameLength();
+        Dlt645FrameTrace trace = frameTrace;
+        if (trace != null) {
+            trace.record(frameTraceBusId, Dlt645FrameTrace.RECEIVED, frame, 0, len);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Received from {}: {}", address, Dlt645Util.toHex(frame, 0, len));
+        }
+        PendingRequest done = null;
+        for (int i = 0; i < inFlight.size(); i++) {
+            if (inFlight.get(i).isAnsweredBy(frame)) {
+                done = inFlight.remove(i);
+                break;
+            }
+        }
+        if (done == null) {
+            logger.debug("Dropping stray frame from {}", address);
+            return;
+        }
+        Dlt645Response response = Dlt645Response.createDlt645Response(decoder.getControlCode());
+        response.setHeadless();
+        Dlt645IOException cause = null;
+        try {
+            response.readFrom(ByteBuffer.wrap(frame, 0, len));
+        }
+        catch (IOException e) {
+            cause = new Dlt645IOException("Cannot decode response from %s - %s", address, e.getMessage());
+        }
+        catch (RuntimeException e) {
+            // The request is out of the window already, it must not get lost
+            logger.debug("Cannot decode response from {}", address, e);
+            cause = new Dlt645IOException("Cannot decode response from %s - %s", address, e.toString());
+        }
+        if (cause != null) {
+            if (!retry(done)) {
+                done.future.completeExceptionally(cause);
+            }
+            else {
+                inFlight.add(done);
+            }
+            return;
+        }
+        if (response instanceof ExceptionResponse) {
+            done.future.completeExceptionally(new Dlt645SlaveException(((ExceptionResponse)response).getExceptionCode()));
+        }
+        else {
+            done.future.complete(response);
+        }
+    }
+
+    /**
+     * Sends a request again if it has attempts left
+     *
+     * @param pending Request that was not answered
+     * @return True if it was resent
+     */
+    private boolean retry(PendingRequest pending) {
+        if (++pending.attempt < retries && channel != null && !connecting) {
+            logger.debug("Retrying request to {} (try: {})", address, pending.attempt);
+            try {
+                send(pending);
+                return true;
+            }
+            catch (IOException e) {
+                logger.debug("Cannot resend request to {} - {}", address, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void failInFlight(Dlt645Exception cause) {
+        for (int i = 0; i < inFlight.size(); i++) {
+            inFlight.get(i).future.completeExceptionally(cause);
+        }
+        inFlight.clear();
+    }
+
+    private void failAll(Dlt645Exception cause) {
+        failInFlight(cause);
+        PendingRequest pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    private void closeChannel() {
+        connecting = false;
+        connectDeadline = Long.MAX_VALUE;
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.debug("close()", e);
+            }
+            channel = null;
+        }
+        outbound.clear();
+        decoder.reset();
+        readBuffer.clear();
+    }
+
+    /**
+     * A request waiting for the gateway and the future of its response
+     */
+    private static class PendingRequest {
+
+        private final Dlt645Request request;
+        private final CompletableFuture<Dlt645Response> future = new CompletableFuture<Dlt645Response>();
+        private byte[] frame;
+        private int attempt;
+        private long deadline = Long.MAX_VALUE;
+
+        private PendingRequest(Dlt645Request request) {
+            this.request = request;
+        }
+
+        /**
+         * Returns true if a response would match both requests
+         */
+        private boolean sameKey(PendingRequest other) {
+            return Dlt645Correlation.isSameKey(frame, WAKE_LENGTH, other.frame, WAKE_LENGTH);
+        }
+
+        /**
+         * Checks a received frame against the request
+         *
+         * @param response Frame starting with the first start byte
+         * @return True if the frame answers the request
+         */
+        private boolean isAnsweredBy(byte[] response) {
+            return Dlt645Correlation.isResponseTo(frame, WAKE_LENGTH, response, 0);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import io.zfunny.j2dlt.dlt645.Dlt645Exception;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector based event loop driving any number of {@link NIOTCPMasterConnection}s
+ * from a single thread.
+ * <p>
+ * Other threads hand work to the loop through lock free queues and wake the
+ * selector up, so submitting a request never blocks on I/O.
+ */
+public class NIOTCPMasterLoop implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NIOTCPMasterLoop.class);
+
+    private volatile Selector selector;
+    private final List<NIOTCPMasterConnection> connections = new ArrayList<NIOTCPMasterConnection>();
+    private final Queue<NIOTCPMasterConnection> added = new ConcurrentLinkedQueue<NIOTCPMasterConnection>();
+    private final Queue<NIOTCPMasterConnection> removed = new ConcurrentLinkedQueue<NIOTCPMasterConnection>();
+    private final Queue<NIOTCPMasterConnection> scheduled = new ConcurrentLinkedQueue<NIOTCPMasterConnection>();
+    private volatile boolean running;
+    private Thread thread;
+    private String threadName;
+
+    /**
+     * Starts the loop thread with a new selector. A stopped loop can be
+     * started again, the connections it served are reopened with their next
+     * request.
+     *
+     * @throws IOException If the selector cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (!running) {
+            if (thread == Thread.currentThread()) {
+                throw new IllegalStateException("The loop cannot be started again from its own thread");
+            }
+            // A loop stopped from its own thread may still be closing down
+            joinThread();
+            selector = Selector.open();
+            running = true;
+            thread = new Thread(this, threadName == null ? "Dlt645 NIO TCP Master" : threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the loop thread, closing the socket of every connection and
+     * failing their requests. Called from the loop thread, e.g. by a callback
+     * of a response, it returns at once and the loop stops when the callback
+     * is done.
+     */
+    public void stop() {
+        Thread loopThread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            selector.wakeup();
+            loopThread = thread;
+        }
+
+        // Joined without the lock, so a callback stopping the loop as well does not block
+        if (loopThread != Thread.currentThread()) {
+            join(loopThread);
+        }
+    }
+
+    private void joinThread() {
+        if (thread != null) {
+            join(thread);
+            thread = null;
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns true if the loop thread is running
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Hands a connection over to this loop. This method may be called from any thread.
+     *
+     * @param connection Connection to drive
+     */
+    public void register(NIOTCPMasterConnection connection) {
+        connection.setLoop(this);
+        added.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Returns the number of connections served by this loop
+     *
+     * @return Connection count
+     */
+    public int getConnectionCount() {
+        return connections.size() + added.size();
+    }
+
+    /**
+     * Sets the name of the loop thread
+     *
+     * @param threadName Name to use for the thread
+     */
+    public void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    void remove(NIOTCPMasterConnection connection) {
+        removed.add(connection);
+        wakeup();
+    }
+
+    void schedule(NIOTCPMasterConnection connection) {
+        scheduled.add(connection);
+        wakeup();
+    }
+
+    private void wakeup() {
+        // Not opened before the first start, a closed one ignores the call
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.debug("NIO TCP master loop started");
+        try {
+            while (running) {
+                selector.select(getSelectTimeout());
+                processSelectedKeys();
+                processQueues();
+                checkTimeouts();
+            }
+        }
+        catch (IOException e) {
+            logger.error("NIO TCP master loop failed", e);
+        }
+        finally {
+            // Cleared first, so requests submitted from now on are failed by the caller
+            running = false;
+            NIOTCPMasterConnection connection;
+            while ((connection = added.poll()) != null) {
+                connections.add(connection);
+            }
+            while ((connection = removed.poll()) != null) {
+                if (connections.remove(connection)) {
+                    connection.shutdown(new Dlt645Exception("Connection closed"));
+                }
+            }
+            scheduled.clear();
+            // The connections stay registered for the next start
+            Dlt645Exception cause = new Dlt645Exception("Master stopped");
+            for (NIOTCPMasterConnection registered : connections) {
+                registered.disconnect(cause);
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                logger.debug("close()", e);
+            }
+        }
+        logger.debug("NIO TCP master loop stopped");
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            ((NIOTCPMasterConnection)key.attachment()).handle(selector);
+        }
+    }
+
+    private void processQueues() {
+        NIOTCPMasterConnection connection;
+        while ((connection = added.poll()) != null) {
+            connections.add(connection);
+            connection.processInbox(selector);
+        }
+        while ((connection = removed.poll()) != null) {
+            if (connections.remove(connection)) {
+                connection.shutdown(new Dlt645Exception("Connection closed"));
+            }
+        }
+        while ((connection = scheduled.poll()) != null) {
+            connection.processInbox(selector);
+        }
+    }
+
+    private void checkTimeouts() {
+        long now = System.nanoTime();
+        for (NIOTCPMasterConnection connection : connections) {
+            connection.checkTimeout(selector, now);
+        }
+    }
+
+    /**
+     * Works out how long the selector may block before the earliest request times out
+     *
+     * @return Timeout in milliseconds, 0 meaning no deadline
+     */
+    private long getSelectTimeout() {
+        long now = System.nanoTime();
+        long earliest = Long.MAX_VALUE;
+        for (NIOTCPMasterConnection connection : connections) {
+            long deadline = connection.getDeadline();
+            if (deadline != Long.MAX_VALUE) {
+                earliest = Math.min(earliest, Math.max(0, deadline - now));
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(earliest) + 1);
+    }
+}
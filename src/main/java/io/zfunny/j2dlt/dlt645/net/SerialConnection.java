@@ -51,6 +51,7 @@ public class SerialConnection extends AbstractSerialConnection {
     private SerialPort serialPort;
     private InputStream inputStream;
     private int timeout = Dlt645.DEFAULT_TIMEOUT;
+    private int baudRate;
 
     /**
      * Default constructor
@@ -96,6 +97,7 @@ public class SerialConnection extends AbstractSerialConnection {
             }
         }
         serialPort.closePort();
+        baudRate = 0;
         applyConnectionParameters();
 
         if (Dlt645.SERIAL_ENCODING_ASCII.equals(parameters.getEncoding())) {
@@ -146,7 +148,7 @@ public class SerialConnection extends AbstractSerialConnection {
         // to original state
 
         if (serialPort != null) {
-            serialPort.setComPortParameters(parameters.getBaudRate(), parameters.getDatabits(), parameters.getStopbits(), parameters.getParity());
+            serialPort.setComPortParameters(getBaudRate(), parameters.getDatabits(), parameters.getStopbits(), parameters.getParity());
             serialPort.setFlowControl(parameters.getFlowControlIn() | parameters.getFlowControlOut());
         }
     }
@@ -206,8 +208,16 @@ public class SerialConnection extends AbstractSerialConnection {
     }
 
     @Override
-    public int getBaudRate() {
-        return parameters.getBaudRate();
+    public synchronized int getBaudRate() {
+        return baudRate > 0 ? baudRate : parameters.getBaudRate();
+    }
+
+    @Override
+    public synchronized void setBaudRate(int baudRate) throws IOException {
+        if (serialPort != null && !serialPort.setBaudRate(baudRate)) {
+            throw new IOException(String.format("Port %s cannot be set to %d baud", getPortName(), baudRate));
+        }
+        this.baudRate = baudRate;
     }
 
     @Override
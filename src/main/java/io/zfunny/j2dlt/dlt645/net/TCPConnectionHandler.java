@@ -20,9 +20,6 @@ import io.zfunny.j2dlt.dlt645.io.AbstractDlt645Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
  *
@@ -33,15 +30,11 @@ import java.util.TimerTask;
 public class TCPConnectionHandler implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(TCPConnectionHandler.class);
-    private static final long watchDogResolution = 5000L; // Check connection status every 5 seconds
-    private static final long nanosPerSecond = 1000L * 1000L * 1000L;
 
     private final TCPSlaveConnection connection;
     private final AbstractDlt645Transport transport;
     private final AbstractDlt645Listener listener;
 
-    private final Timer watchDog;
-
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
      *
@@ -54,33 +47,14 @@ public class TCPConnectionHandler implements Runnable {
      * @param connection     an incoming connection.
      * @param maxIdleSeconds 0 or maximum inactivity time for the connection
      */
-    public TCPConnectionHandler(AbstractDlt645Listener listener, TCPSlaveConnection connection, final int maxIdleSeconds) {
+    public TCPConnectionHandler(AbstractDlt645Listener listener, TCPSlaveConnection connection, int maxIdleSeconds) {
         this.listener = listener;
         this.connection = connection;
         transport = this.connection.getDlt645Transport();
 
         if (maxIdleSeconds > 0) {
-            watchDog = new Timer();
-            long checkRate = Math.min(maxIdleSeconds * 1000L, watchDogResolution);
-            watchDog.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    long nanosIdle = System.nanoTime() - TCPConnectionHandler.this.connection.getLastActivityTimestamp();
-                    if (nanosIdle > (maxIdleSeconds * nanosPerSecond)) {
-                        // Watchdog timer elapsed
-                        logger.warn("Watchdog expired: {}, limit: {}", nanosIdle / nanosPerSecond, maxIdleSeconds);
-
-                        // Socket.close() will cause read operation to fail
-                        TCPConnectionHandler.this.connection.close();
-
-                        // Stop the watchdog, it is not needed anymore
-                        watchDog.cancel();
-                    }
-                }
-            }, checkRate, checkRate);
-        }
-        else {
-            watchDog = null;
+            // Socket.close() by the reaper will cause the read operation to fail
+            IdleConnectionReaper.getInstance().register(connection, maxIdleSeconds);
         }
     }
 
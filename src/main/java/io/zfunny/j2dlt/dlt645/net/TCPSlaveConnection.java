@@ -18,14 +18,14 @@ import java.net.Socket;
  * @author Steve O'Hara (4NG)
  * @version 2.0 (March 2016)
  */
-public class TCPSlaveConnection {
+public class TCPSlaveConnection implements IdleConnectionReaper.Monitored {
 
     private static final Logger logger = LoggerFactory.getLogger(TCPSlaveConnection.class);
 
     // instance attributes
     private Socket socket;
     private int timeout = Dlt645.DEFAULT_TIMEOUT;
-    private boolean connected;
+    private volatile boolean connected;
     private Dlt645TCPTransport transport;
 
     /**
@@ -59,7 +59,8 @@ public class TCPSlaveConnection {
     /**
      * Closes this <tt>TCPSlaveConnection</tt>.
      */
-    public void close() {
+    @Override
+    public synchronized void close() {
         if (connected) {
             try {
                 transport.close();
@@ -87,6 +88,7 @@ public class TCPSlaveConnection {
      * @see ModbusTCPTransport#getLastActivityTimestamp()
      * @see System#nanoTime()
      */
+    @Override
     public long getLastActivityTimestamp() {
         return transport.getLastActivityTimestamp();
     }
@@ -168,6 +170,7 @@ public class TCPSlaveConnection {
      *
      * @return <tt>true</tt> if connected, <tt>false</tt> otherwise.
      */
+    @Override
     public boolean isConnected() {
         return connected;
     }
@@ -0,0 +1,354 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import io.zfunny.j2dlt.dlt645.Dlt645;
+import io.zfunny.j2dlt.dlt645.io.BytesInputStream;
+import io.zfunny.j2dlt.dlt645.io.BytesOutputStream;
+import io.zfunny.j2dlt.dlt645.io.Dlt645FrameDecoder;
+import io.zfunny.j2dlt.dlt645.msg.BroadcastTimeRequest;
+import io.zfunny.j2dlt.dlt645.msg.ChangeBaudRateRequest;
+import io.zfunny.j2dlt.dlt645.msg.ChangeBaudRateResponse;
+import io.zfunny.j2dlt.dlt645.msg.Dlt645Response;
+import io.zfunny.j2dlt.dlt645.msg.ExceptionResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadAddressResponse;
+import io.zfunny.j2dlt.dlt645.msg.ReadRequest;
+import io.zfunny.j2dlt.dlt645.msg.ReadResponse;
+import io.zfunny.j2dlt.dlt645.procimg.SimpleProcessImage;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meter on a {@link VirtualMeterBus} that answers reads from a
+ * {@link SimpleProcessImage}.
+ * <p>
+ * Reads of data identities without a value get an abnormal response with
+ * {@link Dlt645#ERROR_NO_DATA}, reads of the address the meter address,
+ * other functions an abnormal response with
+ * {@link Dlt645#ERROR_OTHER}. An offline meter stays silent, as does every
+ * meter for frames sent to the broadcast address. A broadcast time
+ * synchronisation is recorded as the clock of the meter. A change of the
+ * baud rate is accepted up to the highest rate set for the meter, which
+ * answers at the old rate and then moves to the new one.
+ */
+public class VirtualMeter {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualMeter.class);
+
+    private final byte[] address;
+    private final SimpleProcessImage processImage = new SimpleProcessImage();
+    private final Dlt645FrameDecoder decoder = new Dlt645FrameDecoder();
+    private final byte[] received = new byte[1];
+    private final BytesOutputStream out = new BytesOutputStream(Dlt645.MAX_MESSAGE_LENGTH + Dlt645.wakeBytes.length + 2);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong timeSyncCount = new AtomicLong();
+    private volatile LocalDateTime clock;
+    private volatile int responseDelay = 20;
+    private volatile int interCharacterGap;
+    private volatile boolean online = true;
+    private volatile int baudRate;
+    private volatile int maxBaudRate;
+
+    /**
+     * Creates a meter
+     *
+     * @param address Meter address (6 bytes, as sent on the wire)
+     */
+    public VirtualMeter(byte[] address) {
+        if (address == null || address.length != 6) {
+            throw new IllegalArgumentException("Meter address must be 6 bytes");
+        }
+        this.address = Arrays.copyOf(address, 6);
+    }
+
+    /**
+     * Creates a meter
+     *
+     * @param address Meter address as a 12 digit string
+     */
+    public VirtualMeter(String address) {
+        this(Dlt645Util.unitIdString2Bytes(address));
+    }
+
+    /**
+     * Returns the meter address
+     *
+     * @return Address (6 bytes, as sent on the wire)
+     */
+    public byte[] getAddress() {
+        return Arrays.copyOf(address, 6);
+    }
+
+    /**
+     * Returns the values the meter answers with
+     *
+     * @return Process image of the meter
+     */
+    public SimpleProcessImage getProcessImage() {
+        return processImage;
+    }
+
+    /**
+     * Sets the value returned for a data identity
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @param value        Value without the 0x33 offset, or null to remove it
+     */
+    public void setValue(int dataIdentity, byte[] value) {
+        if (value == null) {
+            processImage.removeValue(dataIdentity);
+        }
+        else {
+            processImage.setValue(dataIdentity, value);
+        }
+    }
+
+    /**
+     * Sets the value returned for a data identity
+     *
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @param value        Value without the 0x33 offset, or null to remove it
+     */
+    public void setValue(byte[] dataIdentity, byte[] value) {
+        setValue(Dlt645Util.dataIdentityToInt(dataIdentity), value);
+    }
+
+    /**
+     * Returns the time the meter takes to start answering once a request
+     * has arrived
+     *
+     * @return Delay in milliseconds
+     */
+    public int getResponseDelay() {
+        return responseDelay;
+    }
+
+    /**
+     * Sets the time the meter takes to start answering once a request has
+     * arrived
+     *
+     * @param responseDelay Delay in milliseconds
+     */
+    public void setResponseDelay(int responseDelay) {
+        this.responseDelay = responseDelay;
+    }
+
+    /**
+     * Returns the pause the meter leaves between the characters of a response
+     *
+     * @return Pause in microseconds
+     */
+    public int getInterCharacterGap() {
+        return interCharacterGap;
+    }
+
+    /**
+     * Sets the pause the meter leaves between the characters of a response
+     *
+     * @param interCharacterGap Pause in microseconds
+     */
+    public void setInterCharacterGap(int interCharacterGap) {
+        this.interCharacterGap = interCharacterGap;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Sets whether the meter answers, to simulate meters that are switched
+     * off or disconnected
+     *
+     * @param online True to answer
+     */
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    /**
+     * Returns the rate the meter listens and answers at
+     *
+     * @return Baud rate, 0 until the meter is added to a bus
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Sets the rate the meter listens and answers at, e.g. to simulate a
+     * meter that went back to its power-up rate
+     *
+     * @param baudRate Baud rate
+     */
+    public void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * Returns the highest rate the meter accepts a change to
+     *
+     * @return Baud rate, 0 if the meter refuses every change
+     */
+    public int getMaxBaudRate() {
+        return maxBaudRate;
+    }
+
+    /**
+     * Sets the highest rate the meter accepts a change to
+     *
+     * @param maxBaudRate Baud rate, 0 to refuse every change
+     */
+    public void setMaxBaudRate(int maxBaudRate) {
+        this.maxBaudRate = maxBaudRate;
+    }
+
+    /**
+     * Returns the number of requests addressed to the meter, answered or not
+     *
+     * @return Request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the time last set by a broadcast time synchronisation
+     *
+     * @return Time or null if the meter has not been synchronised
+     */
+    public LocalDateTime getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the number of broadcast time synchronisations the meter received
+     *
+     * @return Synchronisation count
+     */
+    public long getTimeSyncCount() {
+        return timeSyncCount.get();
+    }
+
+    /**
+     * Takes a byte off the bus, called by the bus with the bus locked
+     *
+     * @param b Received byte
+     * @return Response frame to send, or null
+     */
+    byte[] receive(byte b) {
+        received[0] = b;
+        decoder.decode(received, 0, 1);
+        if (!decoder.hasFrame()) {
+            return null;
+        }
+        byte[] frame = decoder.getFrame();
+        int controlCode = decoder.getControlCode();
+        if ((controlCode & Dlt645.RESPONSE_FLAG) != 0) {
+            return null;
+        }
+        if (controlCode == Dlt645.BROADCAST_TIME && online && isBroadcast(frame)) {
+            setClock(frame, decoder.getFrameLength());
+            return null;
+        }
+        if (!isAddressed(frame)) {
+            return null;
+        }
+        requestCount.incrementAndGet();
+        if (!online) {
+            return null;
+        }
+        try {
+            return encode(respond(controlCode, frame, decoder.getFrameLength()));
+        }
+        catch (IOException e) {
+            logger.debug("Cannot answer request {} - {}", Dlt645Util.toHex(frame, 0, decoder.getFrameLength()), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks the address of a frame against the meter address. <tt>AA</tt>
+     * in the frame matches any byte, the broadcast address matches no meter
+     * as nobody may answer it.
+     */
+    private boolean isAddressed(byte[] frame) {
+        boolean broadcast = true;
+        for (int i = 0; i < 6; i++) {
+            int b = frame[1 + i] & 0xFF;
+            if (b != 0x99) {
+                broadcast = false;
+            }
+            if (b != 0xAA && b != (address[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return !broadcast;
+    }
+
+    private static boolean isBroadcast(byte[] frame) {
+        for (int i = 1; i <= 6; i++) {
+            if ((frame[i] & 0xFF) != 0x99) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setClock(byte[] frame, int length) {
+        BroadcastTimeRequest request = new BroadcastTimeRequest();
+        try {
+            request.readFrom(new BytesInputStream(Arrays.copyOf(frame, length)));
+            clock = request.getTime();
+            timeSyncCount.incrementAndGet();
+        }
+        catch (IOException e) {
+            logger.debug("Ignoring broadcast time {} - {}", Dlt645Util.toHex(frame, 0, length), e.getMessage());
+        }
+    }
+
+    private Dlt645Response respond(int controlCode, byte[] frame, int length) throws IOException {
+        int functionCode = controlCode & Dlt645.FUNCTION_CODE_MASK;
+        if (functionCode == Dlt645.READ_DATA) {
+            ReadRequest request = new ReadRequest();
+            request.readFrom(new BytesInputStream(Arrays.copyOf(frame, length)));
+            byte[] value = processImage.getValue(Dlt645Util.dataIdentityToInt(request.getDataIdentity()));
+            if (value != null) {
+                return new ReadResponse(request.getDataIdentity(), value);
+            }
+            return new ExceptionResponse(functionCode, Dlt645.ERROR_NO_DATA);
+        }
+        if (functionCode == Dlt645.READ_ADDRESS) {
+            return new ReadAddressResponse(address);
+        }
+        if (functionCode == Dlt645.CHANGE_BAUD_RATE) {
+            ChangeBaudRateRequest request = new ChangeBaudRateRequest();
+            request.readFrom(new BytesInputStream(Arrays.copyOf(frame, length)));
+            if (request.getBaudRate() > maxBaudRate) {
+                return new ExceptionResponse(functionCode, Dlt645.ERROR_BAUD_RATE);
+            }
+
+            // The bus sends the answer at the rate the request came in at
+            baudRate = request.getBaudRate();
+            return new ChangeBaudRateResponse(baudRate);
+        }
+        return new ExceptionResponse(functionCode, Dlt645.ERROR_OTHER);
+    }
+
+    private byte[] encode(Dlt645Response response) throws IOException {
+        response.setUnitID(address);
+        out.reset();
+        response.writeTo(out);
+        out.writeByte(Dlt645Util.calculateCS(out.getBuffer(), Dlt645.wakeBytes.length, out.size() - 1));
+        out.writeByte(Dlt645.endByte);
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Virtual meter %s", Dlt645Util.toHex(address));
+    }
+}
@@ -0,0 +1,292 @@
+package io.zfunny.j2dlt.dlt645.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated RS485 bus for running masters, slaves and meters without any
+ * hardware.
+ * <p>
+ * Every byte put on the bus reaches all other attached ports and meters
+ * after the time it takes to send it at the bus baud rate, so a transaction
+ * takes as long as it would on a real line. The bus is half duplex: a
+ * transmission starts when the line is free, later ones queue up behind it.
+ * Meters answer after their response delay. Ports can be told to receive
+ * their own transmissions, like RS485 adapters without echo suppression.
+ * Meters that answer the same request are queued one after the other
+ * unless collisions are switched on, in which case their answers overlap.
+ * <p>
+ * Ports and meters start at the rate of the bus and may each be moved to
+ * another rate. Bytes are sent at the rate of the sender and are lost on
+ * receivers set to another rate, as a UART drops the characters it cannot
+ * frame.
+ * <p>
+ * Arrival times are worked out when bytes are sent rather than by a clock
+ * thread, which keeps the bus deterministic: a given sequence of requests
+ * always produces the same bytes at the same offsets.
+ */
+public class VirtualMeterBus {
+
+    private final int baudRate;
+    private final int dataBits;
+    private final int parity;
+    private final int stopBits;
+    private final long characterTime;
+    private final List<LoopbackSerialConnection> ports = new CopyOnWriteArrayList<LoopbackSerialConnection>();
+    private final List<VirtualMeter> meters = new CopyOnWriteArrayList<VirtualMeter>();
+    private long lineFreeAt = System.nanoTime();
+    private long bytesSent;
+    private boolean collisions;
+
+    /**
+     * Creates a bus with the usual DL/T 645 character format of 8 data bits,
+     * even parity and 1 stop bit
+     *
+     * @param baudRate Baud rate, e.g. 2400
+     */
+    public VirtualMeterBus(int baudRate) {
+        this(baudRate, 8, AbstractSerialConnection.EVEN_PARITY, 1);
+    }
+
+    /**
+     * Creates a bus
+     *
+     * @param baudRate Baud rate
+     * @param dataBits Data bits per character
+     * @param parity   Parity, one of the <tt>AbstractSerialConnection</tt> parity values
+     * @param stopBits Stop bits per character
+     */
+    public VirtualMeterBus(int baudRate, int dataBits, int parity, int stopBits) {
+        if (baudRate <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid baud rate %d", baudRate));
+        }
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.parity = parity;
+        this.stopBits = stopBits;
+        characterTime = getCharacterTime(baudRate);
+    }
+
+    /**
+     * Creates a port on this bus for a master or a slave listener
+     *
+     * @param name Port name
+     * @return New port, to be opened before use
+     */
+    public LoopbackSerialConnection createPort(String name) {
+        return new LoopbackSerialConnection(this, name);
+    }
+
+    /**
+     * Attaches a meter to the bus
+     *
+     * @param meter Meter to attach
+     */
+    public void addMeter(VirtualMeter meter) {
+        if (meter.getBaudRate() == 0) {
+            meter.setBaudRate(baudRate);
+        }
+        meters.add(meter);
+    }
+
+    /**
+     * Detaches a meter from the bus
+     *
+     * @param meter Meter to detach
+     */
+    public void removeMeter(VirtualMeter meter) {
+        meters.remove(meter);
+    }
+
+    /**
+     * Returns the meters attached to the bus
+     *
+     * @return Meters
+     */
+    public List<VirtualMeter> getMeters() {
+        return new ArrayList<VirtualMeter>(meters);
+    }
+
+    /**
+     * Returns the rate ports and meters start at
+     *
+     * @return Baud rate
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public int getNumDataBits() {
+        return dataBits;
+    }
+
+    public int getParity() {
+        return parity;
+    }
+
+    public int getNumStopBits() {
+        return stopBits;
+    }
+
+    /**
+     * Returns the time it takes to send one character
+     *
+     * @return Time in nanoseconds
+     */
+    public long getCharacterTime() {
+        return characterTime;
+    }
+
+    /**
+     * Returns the time it takes to send one character at a given rate
+     *
+     * @param baudRate Baud rate
+     * @return Time in nanoseconds
+     */
+    public long getCharacterTime(int baudRate) {
+        int bits = 1 + dataBits + (parity == AbstractSerialConnection.NO_PARITY ? 0 : 1) + stopBits;
+        return TimeUnit.SECONDS.toNanos(bits) / baudRate;
+    }
+
+    /**
+     * Returns true if meters answering at the same time garble each other
+     *
+     * @return True if collisions are simulated
+     */
+    public synchronized boolean isCollisions() {
+        return collisions;
+    }
+
+    /**
+     * Sets whether meters answering the same request at the same time
+     * garble each other, as on a real line, or answer one after the other
+     *
+     * @param collisions True to simulate collisions
+     */
+    public synchronized void setCollisions(boolean collisions) {
+        this.collisions = collisions;
+    }
+
+    /**
+     * Returns the number of bytes sent on the bus so far
+     *
+     * @return Byte count
+     */
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Puts bytes on the bus and delivers them to every attached port and
+     * meter. Responses of meters are sent once the bytes have been delivered.
+     *
+     * @param source    Port or meter sending the bytes
+     * @param rate      Baud rate of the sender
+     * @param data      Bytes to send
+     * @param off       Offset of the first byte
+     * @param len       Number of bytes
+     * @param notBefore <tt>System.nanoTime()</tt> before which the first byte may not start
+     * @param gap       Pause between characters in nanoseconds
+     */
+    synchronized void transmit(Object source, int rate, byte[] data, int off, int len, long notBefore, long gap) {
+        long time = Math.max(Math.max(System.nanoTime(), notBefore), lineFreeAt);
+        long charTime = rate == baudRate ? characterTime : getCharacterTime(rate);
+        List<VirtualMeter> responding = null;
+        List<byte[]> responses = null;
+        List<Integer> rates = null;
+        for (int i = 0; i < len; i++) {
+            time += charTime;
+            byte b = data[off + i];
+            for (LoopbackSerialConnection port : ports) {
+                if ((port != source || port.isEcho()) && port.getBaudRate() == rate) {
+                    port.deliver(b, time);
+                }
+            }
+            for (VirtualMeter meter : meters) {
+
+                // A meter answers at the rate it was asked at, even if the
+                // request moves it to another one
+                int meterRate = meter.getBaudRate();
+                if (meter != source && meterRate == rate) {
+                    byte[] response = meter.receive(b);
+                    if (response != null) {
+                        if (responding == null) {
+                            responding = new ArrayList<VirtualMeter>();
+                            responses = new ArrayList<byte[]>();
+                            rates = new ArrayList<Integer>();
+                        }
+                        responding.add(meter);
+                        responses.add(response);
+                        rates.add(meterRate);
+                    }
+                }
+            }
+            if (i < len - 1) {
+                time += gap;
+            }
+        }
+        lineFreeAt = time;
+        bytesSent += len;
+        notifyAll();
+
+        // Meters answer after the request has fully arrived, one after the
+        // other if several are addressed unless collisions are simulated
+        if (responding != null && collisions && responding.size() > 1) {
+            byte[] merged = merge(responses);
+            VirtualMeter meter = responding.get(0);
+            transmit(meter, rates.get(0), merged, 0, merged.length,
+                    time + TimeUnit.MILLISECONDS.toNanos(meter.getResponseDelay()),
+                    TimeUnit.MICROSECONDS.toNanos(meter.getInterCharacterGap()));
+        }
+        else if (responding != null) {
+            for (int i = 0; i < responding.size(); i++) {
+                VirtualMeter meter = responding.get(i);
+                byte[] response = responses.get(i);
+                transmit(meter, rates.get(i), response, 0, response.length,
+                        time + TimeUnit.MILLISECONDS.toNanos(meter.getResponseDelay()),
+                        TimeUnit.MICROSECONDS.toNanos(meter.getInterCharacterGap()));
+            }
+        }
+    }
+
+    /**
+     * Overlays responses sent at the same time. The line is driven low by
+     * any transmitter sending a zero bit, so the result is the AND of the
+     * bytes, and as long as the longest response.
+     */
+    private static byte[] merge(List<byte[]> responses) {
+        int length = 0;
+        for (byte[] response : responses) {
+            length = Math.max(length, response.length);
+        }
+        byte[] merged = new byte[length];
+        Arrays.fill(merged, (byte)0xFF);
+        for (byte[] response : responses) {
+            for (int i = 0; i < response.length; i++) {
+                merged[i] &= response[i];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Attaches an opened port
+     *
+     * @param port Port to attach
+     */
+    void attach(LoopbackSerialConnection port) {
+        ports.add(port);
+    }
+
+    /**
+     * Detaches a closed port
+     *
+     * @param port Port to detach
+     */
+    void detach(LoopbackSerialConnection port) {
+        ports.remove(port);
+    }
+}
@@ -1,4 +1,29 @@
 package io.zfunny.j2dlt.dlt645.procimg;
 
+/**
+ * Data items a slave serves for one meter address.
+ * <p>
+ * Reads are answered straight from {@link #getEncodedValue(int)}, so an
+ * implementation should keep the encoded form rather than build it per
+ * request.
+ */
 public interface ProcessImage {
+
+    /**
+     * Returns the value of a data item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @return Value without the 0x33 offset, or null if the image does not hold the item
+     */
+    byte[] getValue(int dataIdentity);
+
+    /**
+     * Returns the data field of the read response for a data item: the data
+     * identity followed by the value, both with the 0x33 offset added. The
+     * array is shared and must not be modified.
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @return Encoded data field, or null if the image does not hold the item
+     */
+    byte[] getEncodedValue(int dataIdentity);
 }
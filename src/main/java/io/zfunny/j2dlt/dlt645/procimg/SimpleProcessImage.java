@@ -0,0 +1,119 @@
+package io.zfunny.j2dlt.dlt645.procimg;
+
+import io.zfunny.j2dlt.dlt645.msg.Dlt645DataItem;
+import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import io.zfunny.j2dlt.dlt645.util.IntObjectMap;
+
+/**
+ * Process image holding its data items in an {@link IntObjectMap} keyed by
+ * data identity.
+ * <p>
+ * Values are encoded for the wire when they are set, so a read is served
+ * with one lookup of a primitive key and no copying or BCD conversion.
+ * Values can be changed at any time, also while a slave is serving reads.
+ */
+public class SimpleProcessImage implements ProcessImage {
+
+    /**
+     * Longest value that fits a single response frame
+     */
+    public static final int MAX_VALUE_LENGTH = 195;
+
+    private final IntObjectMap<byte[]> encodedValues = new IntObjectMap<byte[]>(64);
+
+    @Override
+    public byte[] getValue(int dataIdentity) {
+        byte[] encoded = encodedValues.get(dataIdentity);
+        if (encoded == null) {
+            return null;
+        }
+        byte[] value = new byte[encoded.length - 4];
+        Dlt645Util.removeOffset(encoded, 4, value, 0, value.length);
+        return value;
+    }
+
+    @Override
+    public byte[] getEncodedValue(int dataIdentity) {
+        return encodedValues.get(dataIdentity);
+    }
+
+    /**
+     * Sets the value of a data item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @param value        Value without the 0x33 offset, least significant byte first
+     * @throws IllegalArgumentException If the value does not fit a response frame
+     */
+    public void setValue(int dataIdentity, byte[] value) {
+        if (value.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException(String.format("Value of %08X is %d bytes long, at most %d fit a frame", dataIdentity, value.length, MAX_VALUE_LENGTH));
+        }
+        byte[] encoded = new byte[4 + value.length];
+        byte[] di = Dlt645Util.intToDataIdentity(dataIdentity);
+        Dlt645Util.addOffset(di, 0, encoded, 0, 4);
+        Dlt645Util.addOffset(value, 0, encoded, 4, value.length);
+        encodedValues.put(dataIdentity, encoded);
+    }
+
+    /**
+     * Sets the value of a data item
+     *
+     * @param dataIdentity Data identity (4 bytes, as sent on the wire)
+     * @param value        Value without the 0x33 offset, least significant byte first
+     */
+    public void setValue(byte[] dataIdentity, byte[] value) {
+        setValue(Dlt645Util.dataIdentityToInt(dataIdentity), value);
+    }
+
+    /**
+     * Sets the value of a data item from its mantissa
+     *
+     * @param item     Item describing the value
+     * @param mantissa Mantissa, e.g. 2222 for 222.2 V
+     * @throws IllegalArgumentException If the mantissa does not fit the item
+     */
+    public void setValue(Dlt645DataItem item, long mantissa) {
+        byte[] value = new byte[item.getLength()];
+        item.encode(mantissa, value, 0);
+        setValue(item.getDataIdentity(), value);
+    }
+
+    /**
+     * Sets the value of a data item, rounded to the resolution of the item
+     *
+     * @param item  Item describing the value
+     * @param value Value, e.g. 222.2 for a voltage
+     * @throws IllegalArgumentException If the value does not fit the item
+     */
+    public void setValue(Dlt645DataItem item, double value) {
+        setValue(item, item.toMantissa(value));
+    }
+
+    /**
+     * Removes a data item
+     *
+     * @param dataIdentity Data identity, e.g. <tt>0x02010100</tt>
+     * @return True if the image held the item
+     */
+    public boolean removeValue(int dataIdentity) {
+        return encodedValues.remove(dataIdentity) != null;
+    }
+
+    /**
+     * Returns the data identities held by the image
+     *
+     * @return Data identities in no particular order
+     */
+    public int[] getDataIdentities() {
+        return encodedValues.keys();
+    }
+
+    /**
+     * Returns the number of data items held by the image
+     *
+     * @return Item count
+     */
+    public int size() {
+        return encodedValues.size();
+    }
+}
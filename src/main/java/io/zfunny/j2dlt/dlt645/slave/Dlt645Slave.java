@@ -2,18 +2,18 @@ package io.zfunny.j2dlt.dlt645.slave;
 
 import io.zfunny.j2dlt.dlt645.Dlt645Exception;
 import io.zfunny.j2dlt.dlt645.net.AbstractDlt645Listener;
+import io.zfunny.j2dlt.dlt645.net.Dlt645NIOTCPListener;
 import io.zfunny.j2dlt.dlt645.net.Dlt645SerialListener;
 import io.zfunny.j2dlt.dlt645.net.Dlt645TCPListener;
 import io.zfunny.j2dlt.dlt645.net.Dlt645UDPListener;
 import io.zfunny.j2dlt.dlt645.procimg.ProcessImage;
 import io.zfunny.j2dlt.dlt645.util.Dlt645Util;
+import io.zfunny.j2dlt.dlt645.util.LongObjectMap;
 import io.zfunny.j2dlt.dlt645.util.SerialParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Dlt645Slave {
     private static final Logger logger = LoggerFactory.getLogger(Dlt645Slave.class);
@@ -25,7 +25,8 @@ public class Dlt645Slave {
     private boolean isRunning;
     private Thread listenerThread;
 
-    private final Map<Long, ProcessImage> processImages = new HashMap<Long, ProcessImage>();
+    // Looked up by listener threads for every request, changed at any time
+    private final LongObjectMap<ProcessImage> processImages = new LongObjectMap<ProcessImage>();
 
     /**
      * Creates a TCP Dlt645 slave
@@ -52,6 +53,19 @@ public class Dlt645Slave {
         this(Dlt645SlaveType.TCP, address, port, poolSize, null, useRtuOverTcp, maxIdleSeconds);
     }
 
+    /**
+     * Creates a TCP Dlt645 slave that serves all connections from one
+     * selector thread
+     *
+     * @param address         IP address to listen on
+     * @param port            Port to listen on
+     * @param maxConnections  0 or maximum number of connections served at the same time
+     * @param maxIdleSeconds  0 or maximum inactivity time for a connection
+     */
+    protected Dlt645Slave(InetAddress address, int port, int maxConnections, int maxIdleSeconds) {
+        this(Dlt645SlaveType.TCP, port, null, createNIOTCPListener(maxConnections, maxIdleSeconds), address);
+    }
+
     /**
      * Creates a UDP Dlt645 slave
      *
@@ -97,28 +111,68 @@ public class Dlt645Slave {
      * @param maxIdleSeconds Maximum idle seconds for TCP connection
      */
     private Dlt645Slave(Dlt645SlaveType type, InetAddress address, int port, int poolSize, SerialParameters serialParams, boolean useRtuOverTcp, int maxIdleSeconds) {
+        this(type, port, serialParams, createListener(type, poolSize, serialParams, useRtuOverTcp, maxIdleSeconds), address);
+    }
+
+    /**
+     * Sets up a slave around its listener
+     *
+     * @param type         Type of slave
+     * @param port         Port to listen on if IP type
+     * @param serialParams Serial parameters for serial type slaves
+     * @param listener     Listener serving the slave
+     * @param address      IP address to listen on
+     */
+    private Dlt645Slave(Dlt645SlaveType type, int port, SerialParameters serialParams, AbstractDlt645Listener listener, InetAddress address) {
         this.type = type == null ? Dlt645SlaveType.TCP : type;
         this.port = port;
         this.serialParams = serialParams;
+        this.listener = listener;
 
-        // Create the listener
+        listener.setAddress(address);
+        listener.setPort(port);
+        listener.setTimeout(0);
+        listener.setSlave(this);
+    }
 
-        logger.debug("Creating {} listener", this.type);
-        if (this.type.is(Dlt645SlaveType.UDP)) {
-            listener = new Dlt645UDPListener();
+    /**
+     * Creates an appropriate type of listener
+     *
+     * @param type           Type of slave to create
+     * @param poolSize       Pool size for TCP slaves
+     * @param serialParams   Serial parameters for serial type slaves
+     * @param useRtuOverTcp  True if the RTU protocol should be used over TCP
+     * @param maxIdleSeconds Maximum idle seconds for TCP connection
+     * @return Listener
+     */
+    private static AbstractDlt645Listener createListener(Dlt645SlaveType type, int poolSize, SerialParameters serialParams, boolean useRtuOverTcp, int maxIdleSeconds) {
+        logger.debug("Creating {} listener", type == null ? Dlt645SlaveType.TCP : type);
+        if (type != null && type.is(Dlt645SlaveType.UDP)) {
+            return new Dlt645UDPListener();
         }
-        else if (this.type.is(Dlt645SlaveType.TCP)) {
+        else if (type == null || type.is(Dlt645SlaveType.TCP)) {
             Dlt645TCPListener tcpListener = new Dlt645TCPListener(poolSize, useRtuOverTcp);
             tcpListener.setMaxIdleSeconds(maxIdleSeconds);
-            listener = tcpListener;
+            return tcpListener;
         }
         else {
-            listener = new Dlt645SerialListener(serialParams);
+            return new Dlt645SerialListener(serialParams);
         }
+    }
 
-        listener.setAddress(address);
-        listener.setPort(port);
-        listener.setTimeout(0);
+    /**
+     * Creates a listener that serves all connections from one selector thread
+     *
+     * @param maxConnections 0 or maximum number of connections served at the same time
+     * @param maxIdleSeconds 0 or maximum inactivity time for a connection
+     * @return Listener
+     */
+    private static AbstractDlt645Listener createNIOTCPListener(int maxConnections, int maxIdleSeconds) {
+        logger.debug("Creating NIO TCP listener");
+        Dlt645NIOTCPListener nioListener = new Dlt645NIOTCPListener();
+        nioListener.setMaxConnections(maxConnections);
+        nioListener.setMaxIdleSeconds(maxIdleSeconds);
+        return nioListener;
     }
 
     /**
@@ -155,7 +209,7 @@ public class Dlt645Slave {
      * @param unitId Unit ID of the associated image
      * @return Process image
      */
-    public ProcessImage removeProcessImage(int unitId) {
+    public ProcessImage removeProcessImage(long unitId) {
         return processImages.remove(unitId);
     }
 
@@ -170,6 +224,15 @@ public class Dlt645Slave {
         return processImages.put(unitId, processImage);
     }
 
+    /**
+     * Returns the number of Unit IDs the slave serves
+     *
+     * @return Process image count
+     */
+    public int getProcessImageCount() {
+        return processImages.size();
+    }
+
     /**
      * Returns the serial parameters of this slave if it is a Serial type
      *
@@ -89,6 +89,28 @@ public class Dlt645SlaveFactory {
         }
     }
 
+    /**
+     * Creates a TCP Dlt645 slave that serves all of its connections from one
+     * selector thread, or returns the one already allocated to this port
+     *
+     * @param address        IP address to listen on
+     * @param port           Port to listen on
+     * @param maxConnections 0 or maximum number of connections served at the same time
+     * @param maxIdleSeconds 0 or maximum idle seconds for a connection
+     * @return new or existing TCP Dlt645 slave associated with the port
+     */
+    public static synchronized Dlt645Slave createNIOTCPSlave(InetAddress address, int port, int maxConnections, int maxIdleSeconds) {
+        String key = Dlt645SlaveType.TCP.getKey(port);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            Dlt645Slave slave = new Dlt645Slave(address, port, maxConnections, maxIdleSeconds);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
     /**
      * Creates a UDP Dlt645 slave or returns the one already allocated to this port
      *
@@ -203,13 +225,8 @@ public class Dlt645SlaveFactory {
      * @param listener Listener used for this slave
      * @return Null or Dlt645Slave
      */
-    public static synchronized Dlt645Slave getSlave(AbstractDlt645Listener listener) {
-        for (Dlt645Slave slave : slaves.values()) {
-            if (slave.getListener().equals(listener)) {
-                return slave;
-            }
-        }
-        return null;
+    public static Dlt645Slave getSlave(AbstractDlt645Listener listener) {
+        return listener == null ? null : listener.getSlave();
     }
 
 }
@@ -0,0 +1,310 @@
+package io.zfunny.j2dlt.dlt645.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Record of the most recent frames sent and received, kept in memory so the
+ * traffic of a bus can be looked at after a failure without logging every
+ * frame.
+ * <p>
+ * The trace is a ring of preallocated slots. Recording a frame copies its
+ * bytes into the next slot with a nanosecond timestamp, the direction and
+ * the ID of the bus, and neither locks nor allocates: a writer claims its
+ * slot with one atomic increment, so any number of buses and threads can
+ * share a trace. Once the ring is full the oldest frames are overwritten.
+ * Frames longer than a slot are cut short, their full length is kept.
+ * <p>
+ * Nothing is formatted while recording, frames are only turned into hex
+ * when the trace is read with {@link #snapshot()} or {@link #dump()}.
+ * Reading runs alongside the writers: every slot carries the sequence
+ * number of its frame, which is withdrawn while the slot is written, so a
+ * frame overwritten while it is read is detected and left out. The ring
+ * should hold more frames than there are threads recording at the same
+ * time, or a slow writer may be lapped by another.
+ */
+public final class Dlt645FrameTrace {
+
+    /**
+     * Direction of a frame written to the bus
+     */
+    public static final int SENT = 0;
+
+    /**
+     * Direction of a frame read from the bus
+     */
+    public static final int RECEIVED = 1;
+
+    private final int capacity;
+    private final int slotSize;
+    private final byte[] data;
+    private final long[] timestamps;
+    private final int[] lengths;
+    private final int[] busIds;
+    private final byte[] directions;
+
+    // Sequence number + 1 of the frame in each slot, negative while it is written
+    private final AtomicLongArray sequences;
+    private final AtomicLong next = new AtomicLong();
+
+    // Pair of clocks to turn timestamps into wall clock time
+    private final long baseNanos = System.nanoTime();
+    private final long baseMillis = System.currentTimeMillis();
+
+    /**
+     * Creates a trace with slots long enough for any frame
+     *
+     * @param capacity Number of frames kept, rounded up to a power of two
+     */
+    public Dlt645FrameTrace(int capacity) {
+        this(capacity, 256);
+    }
+
+    /**
+     * Creates a trace
+     *
+     * @param capacity Number of frames kept, rounded up to a power of two
+     * @param slotSize Number of bytes kept of each frame
+     */
+    public Dlt645FrameTrace(int capacity, int slotSize) {
+        if (capacity < 1 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Invalid trace capacity: " + capacity);
+        }
+        if (slotSize < 1) {
+            throw new IllegalArgumentException("Invalid trace slot size: " + slotSize);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.slotSize = slotSize;
+        data = new byte[this.capacity * slotSize];
+        timestamps = new long[this.capacity];
+        lengths = new int[this.capacity];
+        busIds = new int[this.capacity];
+        directions = new byte[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Returns the number of frames kept
+     *
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes kept of each frame
+     *
+     * @return Slot size
+     */
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * Returns the number of frames recorded since the trace was created,
+     * including those already overwritten
+     *
+     * @return Frame count
+     */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    /**
+     * Records a frame
+     *
+     * @param busId     ID of the bus the frame went over
+     * @param direction {@link #SENT} or {@link #RECEIVED}
+     * @param frame     Buffer holding the frame
+     * @param offset    Offset of the frame in the buffer
+     * @param length    Length of the frame
+     */
+    public void record(int busId, int direction, byte[] frame, int offset, int length) {
+        long seq = next.getAndIncrement();
+        int slot = (int)seq & (capacity - 1);
+        // Read as well as written, so a reader's check of the slot orders before the writes below
+        sequences.getAndSet(slot, -(seq + 1));
+        timestamps[slot] = System.nanoTime();
+        busIds[slot] = busId;
+        directions[slot] = (byte)direction;
+        lengths[slot] = length;
+        System.arraycopy(frame, offset, data, slot * slotSize, Math.min(length, slotSize));
+        sequences.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * Copies the frames held, oldest first
+     *
+     * @return Frames
+     */
+    public List<Frame> snapshot() {
+        return snapshot(-1, capacity);
+    }
+
+    /**
+     * Copies the most recent frames of a bus, oldest first
+     *
+     * @param busId     ID of the bus, or -1 for all buses
+     * @param maxFrames Maximum number of frames to return
+     * @return Frames
+     */
+    public List<Frame> snapshot(int busId, int maxFrames) {
+        long end = next.get();
+        long start = Math.max(0, end - capacity);
+        List<Frame> frames = new ArrayList<Frame>();
+        // Walks back from the newest frame so the limit keeps the latest ones
+        for (long seq = end - 1; seq >= start && frames.size() < maxFrames; seq--) {
+            int slot = (int)seq & (capacity - 1);
+            if (sequences.get(slot) != seq + 1) {
+                continue;
+            }
+            long timestamp = timestamps[slot];
+            int bus = busIds[slot];
+            int direction = directions[slot];
+            int length = lengths[slot];
+            byte[] bytes = Arrays.copyOfRange(data, slot * slotSize, slot * slotSize + Math.min(length, slotSize));
+            // A plain read could be ordered before the copy. Like a load fence,
+            // the compare and set keeps the copy ahead of it, and a writer that
+            // claims the slot after it cannot have changed what was copied.
+            if (!sequences.compareAndSet(slot, seq + 1, seq + 1)) {
+                // Overwritten while it was copied
+                continue;
+            }
+            if (busId == -1 || bus == busId) {
+                frames.add(new Frame(seq, toEpochMicros(timestamp), bus, direction, length, bytes));
+            }
+        }
+        List<Frame> ordered = new ArrayList<Frame>(frames.size());
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            ordered.add(frames.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Formats the frames held, one line per frame, oldest first
+     *
+     * @return Frames as hex
+     */
+    public String dump() {
+        return dump(-1, capacity);
+    }
+
+    /**
+     * Formats the most recent frames of a bus, one line per frame, oldest first
+     *
+     * @param busId     ID of the bus, or -1 for all buses
+     * @param maxFrames Maximum number of frames to return
+     * @return Frames as hex
+     */
+    public String dump(int busId, int maxFrames) {
+        StringBuilder out = new StringBuilder();
+        for (Frame frame : snapshot(busId, maxFrames)) {
+            out.append(frame).append('\n');
+        }
+        return out.toString();
+    }
+
+    private long toEpochMicros(long nanoTime) {
+        return baseMillis * 1000 + (nanoTime - baseNanos) / 1000;
+    }
+
+    /**
+     * Frame copied out of a trace
+     */
+    public static final class Frame {
+
+        private final long sequence;
+        private final long epochMicros;
+        private final int busId;
+        private final int direction;
+        private final int length;
+        private final byte[] bytes;
+
+        private Frame(long sequence, long epochMicros, int busId, int direction, int length, byte[] bytes) {
+            this.sequence = sequence;
+            this.epochMicros = epochMicros;
+            this.busId = busId;
+            this.direction = direction;
+            this.length = length;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the position of the frame among all frames recorded
+         *
+         * @return Sequence number, starting at 0
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns when the frame was recorded
+         *
+         * @return Wall clock time in microseconds since the epoch
+         */
+        public long getTimeMicros() {
+            return epochMicros;
+        }
+
+        /**
+         * Returns the ID of the bus the frame went over
+         *
+         * @return Bus ID
+         */
+        public int getBusId() {
+            return busId;
+        }
+
+        /**
+         * Returns the direction of the frame
+         *
+         * @return {@link #SENT} or {@link #RECEIVED}
+         */
+        public int getDirection() {
+            return direction;
+        }
+
+        /**
+         * Returns the length of the frame
+         *
+         * @return Length in bytes, which may be more than was kept
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the bytes kept of the frame
+         *
+         * @return Frame bytes, cut short if the frame did not fit its slot
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns true if the frame did not fit its slot
+         *
+         * @return True if cut short
+         */
+        public boolean isTruncated() {
+            return bytes.length < length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tF %<tT.%06d bus %d %s %s%s", epochMicros / 1000, epochMicros % 1000000, busId,
+                    direction == SENT ? ">>" : "<<", Dlt645Util.toHex(bytes), isTruncated() ? String.format(" ... (%d bytes)", length) : "");
+        }
+    }
+}
@@ -7,11 +7,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class Dlt645Util {
     private static final Logger logger = LoggerFactory.getLogger(Dlt645Util.class);
 
+    // Every other byte of a long, to add bytes in pairs into 16 bit lanes
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+
+    // Shortest run of bytes that is copied before the 0x33 offset is changed in place
+    private static final int BULK_COPY_LENGTH = 64;
+
     private Dlt645Util() {}
 
     public static String toHex(Dlt645Message msg) {
@@ -97,11 +104,139 @@ public class Dlt645Util {
     public static int calculateCS(byte[] byteArray, int start, int end) {
         int ret = 0;
         for (int i = start; i <= end; i++) {
-            ret += (byteArray[i] % 256);
+            ret += byteArray[i];
         }
         return ret & 0xFF;
     }
 
+    /**
+     * Calculates the checksum of a frame held in a heap or direct buffer.
+     * <p>
+     * The frame is read a long at a time. The bytes of each long are added
+     * in pairs into four 16 bit lanes, which are folded into the sum every
+     * 1024 bytes, before a lane can overflow.
+     *
+     * @param buffer Buffer holding the frame
+     * @param start  Index of the first start byte
+     * @param end    Index of the last byte before the checksum
+     * @return Checksum
+     */
+    public static int calculateCS(ByteBuffer buffer, int start, int end) {
+        int ret = 0;
+        int i = start;
+        while (end + 1 - i >= 8) {
+            int stop = Math.min(i + 1024, end + 1) - 7;
+            long lanes = 0;
+            for (; i < stop; i += 8) {
+                long word = buffer.getLong(i);
+                lanes += (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+            }
+            lanes = (lanes & 0x0000FFFF0000FFFFL) + ((lanes >>> 16) & 0x0000FFFF0000FFFFL);
+            ret += (int)lanes + (int)(lanes >>> 32);
+        }
+        for (; i <= end; i++) {
+            ret += buffer.get(i);
+        }
+        return ret & 0xFF;
+    }
+
+    /**
+     * Adds the 0x33 offset to a run of data bytes, as sent on the wire.
+     * Source and destination may be the same array.
+     * <p>
+     * The offset is added by a plain loop over a single array, which the JIT
+     * compiles into vector instructions. A loop reading one array and writing
+     * another is not vectorised, so longer runs are copied first and then
+     * changed in place.
+     *
+     * @param src     Bytes without the offset
+     * @param srcOff  Offset of the first byte in the source
+     * @param dest    Receives the bytes with the offset
+     * @param destOff Offset of the first byte in the destination
+     * @param len     Number of bytes
+     */
+    public static void addOffset(byte[] src, int srcOff, byte[] dest, int destOff, int len) {
+        if (len >= BULK_COPY_LENGTH && (src != dest || srcOff != destOff)) {
+            System.arraycopy(src, srcOff, dest, destOff, len);
+            src = dest;
+            srcOff = destOff;
+        }
+        for (int i = 0; i < len; i++) {
+            dest[destOff + i] = (byte)(src[srcOff + i] + Dlt645.ADD_PARAM);
+        }
+    }
+
+    /**
+     * Removes the 0x33 offset from a run of data bytes received. Source and
+     * destination may be the same array.
+     *
+     * @param src     Bytes with the offset
+     * @param srcOff  Offset of the first byte in the source
+     * @param dest    Receives the bytes without the offset
+     * @param destOff Offset of the first byte in the destination
+     * @param len     Number of bytes
+     */
+    public static void removeOffset(byte[] src, int srcOff, byte[] dest, int destOff, int len) {
+        if (len >= BULK_COPY_LENGTH && (src != dest || srcOff != destOff)) {
+            System.arraycopy(src, srcOff, dest, destOff, len);
+            src = dest;
+            srcOff = destOff;
+        }
+        for (int i = 0; i < len; i++) {
+            dest[destOff + i] = (byte)(src[srcOff + i] - Dlt645.ADD_PARAM);
+        }
+    }
+
+    /**
+     * Writes a run of data bytes into a buffer with the 0x33 offset added.
+     * Heap buffers are written through their array.
+     *
+     * @param src    Bytes without the offset
+     * @param srcOff Offset of the first byte in the source
+     * @param buffer Buffer to write to, its position is not changed
+     * @param index  Index of the first byte in the buffer
+     * @param len    Number of bytes
+     * @throws IndexOutOfBoundsException If the bytes do not fit before the limit
+     */
+    public static void addOffset(byte[] src, int srcOff, ByteBuffer buffer, int index, int len) {
+        if (index < 0 || len > buffer.limit() - index) {
+            throw new IndexOutOfBoundsException(String.format("%d bytes at %d do not fit a limit of %d", len, index, buffer.limit()));
+        }
+        if (buffer.hasArray()) {
+            addOffset(src, srcOff, buffer.array(), buffer.arrayOffset() + index, len);
+        }
+        else {
+            for (int i = 0; i < len; i++) {
+                buffer.put(index + i, (byte)(src[srcOff + i] + Dlt645.ADD_PARAM));
+            }
+        }
+    }
+
+    /**
+     * Reads a run of data bytes from a buffer and removes the 0x33 offset.
+     * Heap buffers are read through their array.
+     *
+     * @param buffer  Buffer to read from, its position is not changed
+     * @param index   Index of the first byte in the buffer
+     * @param dest    Receives the bytes without the offset
+     * @param destOff Offset of the first byte in the destination
+     * @param len     Number of bytes
+     * @throws IndexOutOfBoundsException If the bytes run past the limit
+     */
+    public static void removeOffset(ByteBuffer buffer, int index, byte[] dest, int destOff, int len) {
+        if (index < 0 || len > buffer.limit() - index) {
+            throw new IndexOutOfBoundsException(String.format("%d bytes at %d run past a limit of %d", len, index, buffer.limit()));
+        }
+        if (buffer.hasArray()) {
+            removeOffset(buffer.array(), buffer.arrayOffset() + index, dest, destOff, len);
+        }
+        else {
+            for (int i = 0; i < len; i++) {
+                dest[destOff + i] = (byte)(buffer.get(index + i) - Dlt645.ADD_PARAM);
+            }
+        }
+    }
+
     /**
      * Converts a byte[4] binary int value to a primitive int.<br>
      * The value returned is:
@@ -244,4 +379,38 @@ public class Dlt645Util {
         return result;
     }
 
+    /**
+     * Packs a data identity as sent on the wire (DI0 first) into an int that
+     * reads like the printed identifier, e.g. the bytes <tt>00 01 01 02</tt>
+     * become <tt>0x02010100</tt>
+     *
+     * @param data   Buffer holding the data identity
+     * @param offset Offset of DI0
+     * @return Data identity as an int
+     */
+    public static int dataIdentityToInt(byte[] data, int offset) {
+        return (data[offset + 3] & 0xff) << 24 | (data[offset + 2] & 0xff) << 16 | (data[offset + 1] & 0xff) << 8 | (data[offset] & 0xff);
+    }
+
+    /**
+     * Packs a data identity as sent on the wire (DI0 first) into an int
+     *
+     * @param dataIdentity Data identity (4 bytes)
+     * @return Data identity as an int
+     * @see #dataIdentityToInt(byte[], int)
+     */
+    public static int dataIdentityToInt(byte[] dataIdentity) {
+        return dataIdentityToInt(dataIdentity, 0);
+    }
+
+    /**
+     * Unpacks a data identity into the byte order used on the wire (DI0 first)
+     *
+     * @param dataIdentity Data identity as an int, e.g. <tt>0x02010100</tt>
+     * @return Data identity (4 bytes)
+     */
+    public static byte[] intToDataIdentity(int dataIdentity) {
+        return new byte[]{(byte)dataIdentity, (byte)(dataIdentity >>> 8), (byte)(dataIdentity >>> 16), (byte)(dataIdentity >>> 24)};
+    }
+
 }
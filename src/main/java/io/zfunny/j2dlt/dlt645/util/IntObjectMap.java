@@ -0,0 +1,116 @@
+package io.zfunny.j2dlt.dlt645.util;
+
+import java.util.List;
+
+/**
+ * Map from primitive int keys to objects, for lookups that happen on every
+ * frame such as data identities.
+ * <p>
+ * The keys are widened to long and held in a {@link LongObjectMap}, so the
+ * map has the same lock free reads and neither boxes the key.
+ * <p>
+ * Null values are not allowed.
+ *
+ * @param <V> Value type
+ * @see LongObjectMap
+ */
+public class IntObjectMap<V> {
+
+    private final LongObjectMap<V> map;
+
+    /**
+     * Creates an empty map
+     */
+    public IntObjectMap() {
+        map = new LongObjectMap<V>();
+    }
+
+    /**
+     * Creates an empty map sized for a number of keys
+     *
+     * @param expectedSize Number of keys expected
+     */
+    public IntObjectMap(int expectedSize) {
+        map = new LongObjectMap<V>(expectedSize);
+    }
+
+    /**
+     * Looks up a value
+     *
+     * @param key Key
+     * @return Value or null if the key is not in the map
+     */
+    public V get(int key) {
+        return map.get(key);
+    }
+
+    /**
+     * Returns true if the key is in the map
+     *
+     * @param key Key
+     * @return True if present
+     */
+    public boolean containsKey(int key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Adds a value or replaces the value of a key
+     *
+     * @param key   Key
+     * @param value Value, not null
+     * @return Previous value or null
+     */
+    public V put(int key, V value) {
+        return map.put(key, value);
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key Key
+     * @return Removed value or null if the key was not in the map
+     */
+    public V remove(int key) {
+        return map.remove(key);
+    }
+
+    /**
+     * Removes all keys
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * Returns the number of keys
+     *
+     * @return Key count
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the keys in table order
+     *
+     * @return Copy of the keys
+     */
+    public int[] keys() {
+        long[] wide = map.keys();
+        int[] result = new int[wide.length];
+        for (int i = 0; i < wide.length; i++) {
+            result[i] = (int)wide[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values in table order
+     *
+     * @return Copy of the values
+     */
+    public List<V> values() {
+        return map.values();
+    }
+}
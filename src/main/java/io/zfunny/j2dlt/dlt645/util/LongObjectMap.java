@@ -0,0 +1,253 @@
+package io.zfunny.j2dlt.dlt645.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Map from primitive long keys to objects, for lookups that happen on every
+ * frame such as meter addresses. It stays lock free for readers when meters
+ * are added or removed while a slave is serving requests.
+ * <p>
+ * Keys are held in an open addressed array with linear probing, so a lookup
+ * neither boxes the key nor follows entry objects. Reads take no lock.
+ * Writers are serialised and change the table in place: a new key is
+ * written before its value, and a removed key keeps its slot with a
+ * tombstone value. A slot therefore never changes its key while the table
+ * is in use, so a reader either sees a complete entry or none. The table
+ * is only rebuilt when live keys and tombstones fill half of it.
+ * <p>
+ * Null values are not allowed.
+ *
+ * @param <V> Value type
+ * @see IntObjectMap
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile Table table;
+
+    /**
+     * Creates an empty map
+     */
+    public LongObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Creates an empty map sized for a number of keys
+     *
+     * @param expectedSize Number of keys expected
+     */
+    public LongObjectMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Looks up a value
+     *
+     * @param key Key
+     * @return Value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table t = table;
+        int i = t.indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object value = t.values.get(i);
+        return value == TOMBSTONE ? null : (V)value;
+    }
+
+    /**
+     * Returns true if the key is in the map
+     *
+     * @param key Key
+     * @return True if present
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Adds a value or replaces the value of a key
+     *
+     * @param key   Key
+     * @param value Value, not null
+     * @return Previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        Table t = table;
+        int i = t.indexOf(key);
+        if (i >= 0) {
+            Object previous = t.values.getAndSet(i, value);
+            if (previous == TOMBSTONE) {
+                t.size++;
+                return null;
+            }
+            return (V)previous;
+        }
+        if ((t.used + 1) * 2 > t.keys.length) {
+            t = t.rebuild(capacityFor(t.size + 1));
+            table = t;
+        }
+        t.insert(key, value);
+        return null;
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key Key
+     * @return Removed value or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key) {
+        Table t = table;
+        int i = t.indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object previous = t.values.getAndSet(i, TOMBSTONE);
+        if (previous == TOMBSTONE) {
+            return null;
+        }
+        t.size--;
+        return (V)previous;
+    }
+
+    /**
+     * Removes all keys
+     */
+    public synchronized void clear() {
+        table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the number of keys
+     *
+     * @return Key count
+     */
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * Returns the keys in table order
+     *
+     * @return Copy of the keys
+     */
+    public long[] keys() {
+        Table t = table;
+        long[] result = new long[t.keys.length];
+        int n = 0;
+        for (int i = 0; i < t.keys.length; i++) {
+            if (t.isLive(i)) {
+                result[n++] = t.keys[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the values in table order
+     *
+     * @return Copy of the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        Table t = table;
+        List<V> result = new ArrayList<V>(t.size);
+        for (int i = 0; i < t.keys.length; i++) {
+            Object value = t.values.get(i);
+            if (value != null && value != TOMBSTONE) {
+                result.add((V)value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a power of two capacity that keeps the table at most half full
+     */
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads keys such as BCD addresses and data identities, which differ
+     * mostly in their low bytes, over the whole table
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * Slots hold a key once their value is set and keep it until the table
+     * is replaced
+     */
+    private static class Table {
+
+        private final long[] keys;
+        private final AtomicReferenceArray<Object> values;
+        private final int mask;
+        private volatile int size;
+        private int used;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<Object>(capacity);
+            mask = capacity - 1;
+        }
+
+        int indexOf(long key) {
+            int i = hash(key) & mask;
+            while (values.get(i) != null) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        boolean isLive(int i) {
+            Object value = values.get(i);
+            return value != null && value != TOMBSTONE;
+        }
+
+        Table rebuild(int capacity) {
+            Table next = new Table(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (isLive(i)) {
+                    next.insert(keys[i], values.get(i));
+                }
+            }
+            return next;
+        }
+
+        void insert(long key, Object value) {
+            int i = hash(key) & mask;
+            while (values.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values.set(i, value);
+            size++;
+            used++;
+        }
+    }
+}